@@ -0,0 +1,54 @@
+package bloodbank;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.openjdk.jmh.annotations.*;
+
+// =================================================== Account Benchmarks ===================================================
+// Login, account creation and session lookup through the headless account methods, with a pre-populated
+// account store. Login and creation include the PBKDF2 hash; a session lookup is what every later server
+// command pays instead.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms2g", "-Xmx2g" })
+public class AccountBenchmark {
+    @Param({ "1000", "100000", "1000000" })
+    public int accounts;
+
+    private final AtomicLong nextNewAccount = new AtomicLong();
+    private String[] tokens;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        // Hashing a million passwords would take far longer than the benchmark, so every account shares one credential
+        AccountStore store = BloodBankManagementSystem.accountStore();
+        String credential = store.hashPassword("secret");
+        for (int i = 0; i < accounts; i++) {
+            store.restore("donor" + i, credential);
+        }
+        tokens = new String[1000];
+        for (int i = 0; i < tokens.length; i++) {
+            tokens[i] = store.openSession("donor" + i);
+        }
+    }
+
+    @Benchmark
+    public boolean login() {
+        return BloodBankManagementSystem.authenticate("donor" + ThreadLocalRandom.current().nextInt(accounts), "secret");
+    }
+
+    @Benchmark
+    public boolean createAccount() {
+        return BloodBankManagementSystem.registerAccount("new" + nextNewAccount.getAndIncrement(), "secret");
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public String resumeSession() {
+        return BloodBankManagementSystem.accountStore().sessionUser(tokens[ThreadLocalRandom.current().nextInt(tokens.length)]);
+    }
+}
@@ -0,0 +1,58 @@
+package bloodbank;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+// =================================================== Allocation Benchmarks ===================================================
+// Reserve-then-release of a 900 ml request for a random recipient type against one shared BloodBank, at 1, 4 and
+// 16 threads. Every reservation is released, so the stock stays constant and the FEFO heaps stay warm.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms4g", "-Xmx4g" })
+public class AllocationBenchmark {
+    @Param({ "1000", "100000", "1000000" })
+    public int inventorySize;
+
+    private BloodBank bloodBank;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        bloodBank = BenchmarkInventory.build(inventorySize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        bloodBank.close();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void reserveRelease1Thread(Blackhole blackhole) {
+        reserveRelease(blackhole);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void reserveRelease4Threads(Blackhole blackhole) {
+        reserveRelease(blackhole);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public void reserveRelease16Threads(Blackhole blackhole) {
+        reserveRelease(blackhole);
+    }
+
+    private void reserveRelease(Blackhole blackhole) {
+        BloodType recipient = BloodType.ofOrdinal(ThreadLocalRandom.current().nextInt(BloodType.values().length));
+        DonationAllocator.Reservation reservation = bloodBank.reserve(recipient, 900, true, 60_000);
+        if (reservation != null) {
+            blackhole.consume(bloodBank.releaseReservation(reservation.getId()));
+        }
+    }
+}
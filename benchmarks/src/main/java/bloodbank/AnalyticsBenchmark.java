@@ -0,0 +1,43 @@
+package bloodbank;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+// =================================================== Analytics Benchmarks ===================================================
+// Cost of the trends report (kept incrementally, so flat in the inventory size) and of a daily intake backfill
+// over the whole 35-day history of the benchmark inventory (a parallel scan of the store, linear in its size).
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AnalyticsBenchmark {
+    @Param({ "1000", "100000", "1000000" })
+    public int inventorySize;
+
+    private BloodBank bloodBank;
+    private long to;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        bloodBank = BenchmarkInventory.build(inventorySize);
+        to = System.currentTimeMillis();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        bloodBank.close();
+    }
+
+    @Benchmark
+    public List<DonationAnalytics.Trend> trends() {
+        return bloodBank.getTrends();
+    }
+
+    @Benchmark
+    public DonationAnalytics.IntakeHistory dailyHistory() {
+        return bloodBank.getIntakeHistory(to - TimeUnit.DAYS.toMillis(35), to, DonationAnalytics.DAY_HOURS);
+    }
+}
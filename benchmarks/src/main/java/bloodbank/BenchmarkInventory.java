@@ -0,0 +1,42 @@
+package bloodbank;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// =================================================== Benchmark Inventory ===================================================
+// Builds a BloodBank with a given number of donations through the headless batch path (no console output).
+// Mix: blood types round-robin, every tenth donation an emergency one, 50,000 distinct donor names, whole blood
+// collected evenly over the last 35 days less an hour (so about 1/35 of the inventory expires within any given day).
+final class BenchmarkInventory {
+    static final String[] TYPES = { "A+", "B+", "AB+", "O+", "A-", "B-", "AB-", "O-" };
+
+    private BenchmarkInventory() {
+    }
+
+    static BloodBank build(int donations) {
+        BloodBank bloodBank = new BloodBank();
+        List<BloodDonation> batch = new ArrayList<>(65536);
+        for (int i = 0; i < donations; i++) {
+            batch.add(donation(i));
+            if (batch.size() == 65536) {
+                bloodBank.addValidatedDonations(batch);
+                batch.clear();
+            }
+        }
+        bloodBank.addValidatedDonations(batch);
+        return bloodBank;
+    }
+
+    private static final long COLLECTION_SPREAD_MILLIS = TimeUnit.DAYS.toMillis(35) - TimeUnit.HOURS.toMillis(1);
+
+    static BloodDonation donation(int i) {
+        String type = TYPES[i & 7];
+        String name = "Donor " + (i % 50_000);
+        long collectedAt = System.currentTimeMillis() - (i * 7_919L) % COLLECTION_SPREAD_MILLIS;
+        if (i % 10 == 0) {
+            return new EmergencyDonation(name, type, 450, true, BloodComponent.WHOLE_BLOOD, collectedAt);
+        }
+        return new RegularDonation(name, type, 450, 18 + i % 40, BloodComponent.WHOLE_BLOOD, collectedAt);
+    }
+}
@@ -0,0 +1,89 @@
+package bloodbank;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+// =================================================== BloodBank Operation Benchmarks ===================================================
+// Single-threaded cost of the core BloodBank operations against inventories from 1K to 10M donations.
+// Quick run: java -jar benchmarks/target/benchmarks.jar BloodBankBenchmark -p inventorySize=1000,100000 -f 1 -wi 2 -i 3
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms6g", "-Xmx6g" })
+public class BloodBankBenchmark {
+    private static final long SIX_HOURS_MILLIS = TimeUnit.HOURS.toMillis(6);
+
+    @Param({ "1000", "100000", "1000000", "10000000" })
+    public int inventorySize;
+
+    private BloodBank bloodBank;
+    private StringBuilder listing;
+    private BloodType[] types;
+    private DonationPage page;
+    private StringWriter pageOutput;
+    private String middleToken;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        bloodBank = BenchmarkInventory.build(inventorySize);
+        listing = new StringBuilder();
+        types = BloodType.values();
+        page = new DonationPage(20);
+        pageOutput = new StringWriter();
+        middleToken = Integer.toString(inventorySize / 2);
+    }
+
+    // The inventory keeps growing during the run; at these sizes the drift is a small fraction of the inventory
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        bloodBank.close();
+    }
+
+    @Benchmark
+    public boolean addDonation() {
+        int i = ThreadLocalRandom.current().nextInt(1 << 20);
+        return bloodBank.acceptDonation(BenchmarkInventory.donation(i));
+    }
+
+    @Benchmark
+    public List<BloodDonation> findCompatibleRegular() {
+        return bloodBank.getCompatibleDonations(randomType(), DonationKind.REGULAR);
+    }
+
+    @Benchmark
+    public List<BloodDonation> findCompatibleEmergency() {
+        return bloodBank.getCompatibleDonations(randomType(), DonationKind.EMERGENCY);
+    }
+
+    // Rendering only, to a reused buffer instead of the console
+    @Benchmark
+    public int renderEmergencyList() {
+        listing.setLength(0);
+        return bloodBank.renderDonations(DonationKind.EMERGENCY, listing);
+    }
+
+    // One 20-row page from the middle of the regular list, rendered to a reused buffer
+    @Benchmark
+    public int renderRegularPage() throws IOException {
+        bloodBank.listDonations(DonationKind.REGULAR, null, middleToken, page);
+        pageOutput.getBuffer().setLength(0);
+        page.render(pageOutput, listing);
+        return page.size();
+    }
+
+    // Dashboard query: units of one blood type expiring within the next 6 hours
+    @Benchmark
+    public List<BloodDonation> expiringSoon() {
+        return bloodBank.getExpiringSoon(randomType(), SIX_HOURS_MILLIS);
+    }
+
+    private BloodType randomType() {
+        return types[ThreadLocalRandom.current().nextInt(types.length)];
+    }
+}
@@ -0,0 +1,62 @@
+package bloodbank;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import org.openjdk.jmh.annotations.*;
+
+// =================================================== Event Stream Benchmarks ===================================================
+// Cost of publishing a donation event (1 and 16 threads) with no consumer, a consumer that keeps up, one that
+// sleeps 1 ms per batch (lapped over and over): intake should cost the same in those three. "gated" is the slow
+// consumer with BACKPRESSURE, so most events are refused at intake (the cost of a refusal).
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EventStreamBenchmark {
+    @Param({ "none", "fast", "slow", "gated" })
+    public String consumer;
+
+    private DonationEvents events;
+    private DonationEvents.Consumer subscription;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        events = new DonationEvents(1 << 16);
+        if (consumer.equals("fast")) {
+            subscription = events.subscribe("fast", 0, 256, DonationEvents.Policy.DROP_OLDEST, (event, endOfBatch) -> {
+            });
+        } else if (consumer.equals("slow") || consumer.equals("gated")) {
+            DonationEvents.Policy policy = consumer.equals("slow") ? DonationEvents.Policy.DROP_OLDEST : DonationEvents.Policy.BACKPRESSURE;
+            subscription = events.subscribe(consumer, 0, 256, policy, (event, endOfBatch) -> {
+                if (endOfBatch) {
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+                }
+            });
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (subscription != null) {
+            subscription.close();
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public long publish1Thread() {
+        return publish();
+    }
+
+    @Benchmark
+    @Threads(16)
+    public long publish16Threads() {
+        return publish();
+    }
+
+    private long publish() {
+        return events.publish(null, BloodType.O_NEG, DonationKind.REGULAR, "Donor", 450, 30, BloodComponent.WHOLE_BLOOD, 1_700_000_000_000L);
+    }
+}
@@ -0,0 +1,53 @@
+package bloodbank;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+// =================================================== Metrics Benchmarks ===================================================
+// Cost of the instrumentation with metrics on and off: a bare start/record pair (1 and 16 threads, so stripe
+// contention shows) and an instrumented compatibility lookup against a 1,000-donation inventory.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MetricsBenchmark {
+    @Param({ "true", "false" })
+    public boolean metricsEnabled;
+
+    private BloodBank bloodBank;
+    private BankMetrics metrics;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        bloodBank = BenchmarkInventory.build(1000);
+        metrics = bloodBank.getMetrics();
+        metrics.setEnabled(metricsEnabled);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        bloodBank.close();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void record1Thread() {
+        metrics.record(BankMetrics.Operation.FIND, metrics.start());
+    }
+
+    @Benchmark
+    @Threads(16)
+    public void record16Threads() {
+        metrics.record(BankMetrics.Operation.FIND, metrics.start());
+    }
+
+    @Benchmark
+    public List<BloodDonation> findCompatible() {
+        BloodType recipient = BloodType.ofOrdinal(ThreadLocalRandom.current().nextInt(BloodType.values().length));
+        return bloodBank.getCompatibleDonations(recipient, DonationKind.EMERGENCY);
+    }
+}
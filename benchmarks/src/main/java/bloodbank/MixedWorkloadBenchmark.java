@@ -0,0 +1,60 @@
+package bloodbank;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+// =================================================== Mixed Workload Benchmarks ===================================================
+// 80% emergency-stock compatibility lookups and 20% donation adds against one shared BloodBank, at 1, 4 and 16
+// threads, to show how the per-blood-type locking scales under concurrent readers and writers
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms4g", "-Xmx4g" })
+public class MixedWorkloadBenchmark {
+    @Param({ "1000", "100000", "1000000" })
+    public int inventorySize;
+
+    private BloodBank bloodBank;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        bloodBank = BenchmarkInventory.build(inventorySize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        bloodBank.close();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void mixed1Thread(Blackhole blackhole) {
+        mixed(blackhole);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void mixed4Threads(Blackhole blackhole) {
+        mixed(blackhole);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public void mixed16Threads(Blackhole blackhole) {
+        mixed(blackhole);
+    }
+
+    private void mixed(Blackhole blackhole) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (random.nextInt(5) == 0) {
+            blackhole.consume(bloodBank.acceptDonation(BenchmarkInventory.donation(random.nextInt(1 << 20))));
+        } else {
+            BloodType type = BloodType.ofOrdinal(random.nextInt(BloodType.values().length));
+            blackhole.consume(bloodBank.getCompatibleDonations(type, DonationKind.EMERGENCY));
+        }
+    }
+}
@@ -0,0 +1,326 @@
+package bloodbank;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+// =================================================== Account Store ===================================================
+// Donor accounts shared by the console and every server session.
+//
+// - Accounts are spread over shards by username hash, each shard with its own read/write lock, so logins and
+//   registrations of different users rarely touch the same lock. Password hashing always happens outside the locks.
+// - Passwords are stored as salted PBKDF2-HMAC-SHA256 credentials ("pbkdf2$<iterations>$<salt>$<hash>", Base64).
+//   Plaintext passwords from older journals and snapshots are still accepted; the caller re-hashes them on the
+//   next successful login (see needsRehash).
+// - A successful login opens a session: a random token kept in a bounded cache with a fixed lifetime, so a
+//   client that presents its token is not put through the slow hash again.
+// - Failed attempts are counted per account. After MAX_FAILED_ATTEMPTS in a row the account is locked for a
+//   while (doubling with every further failure); the state lives on the account itself, so throttling one user
+//   never blocks another.
+class AccountStore {
+    static final int MAX_FAILED_ATTEMPTS = 5;
+    private static final long LOCKOUT_NANOS = TimeUnit.SECONDS.toNanos(30);
+    private static final int SHARDS = 32;
+    private static final String SCHEME = "pbkdf2";
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+
+    private final Shard[] shards = new Shard[SHARDS];
+    private final int iterations;
+    private final SecureRandom random = new SecureRandom();
+    // Hashed when a username is unknown, so a miss costs the same time as a wrong password
+    private final String dummyCredential;
+
+    private final ConcurrentHashMap<String, Session> sessions = new ConcurrentHashMap<>();
+    // Sessions in the order they were opened, which is also expiry order (every session has the same lifetime)
+    private final ConcurrentLinkedQueue<Session> sessionOrder = new ConcurrentLinkedQueue<>();
+    private final int maxSessions;
+    private final long sessionNanos;
+
+    public AccountStore(int iterations, int maxSessions, long sessionTtl, TimeUnit unit) {
+        if (iterations <= 0 || maxSessions <= 0 || sessionTtl <= 0) {
+            throw new IllegalArgumentException("iterations, session cache size and session lifetime must be positive");
+        }
+        for (int i = 0; i < SHARDS; i++) {
+            shards[i] = new Shard();
+        }
+        this.iterations = iterations;
+        this.maxSessions = maxSessions;
+        this.sessionNanos = unit.toNanos(sessionTtl);
+        this.dummyCredential = hashPassword("");
+    }
+
+    // Settings from system properties: bloodbank.passwordIterations, bloodbank.sessionCacheSize, bloodbank.sessionMinutes
+    public static AccountStore fromSystemProperties() {
+        return new AccountStore(
+                Integer.getInteger("bloodbank.passwordIterations", 100_000),
+                Integer.getInteger("bloodbank.sessionCacheSize", 10_000),
+                Long.getLong("bloodbank.sessionMinutes", 30), TimeUnit.MINUTES);
+    }
+
+    // ======================================== Accounts ========================================
+    public boolean contains(String username) {
+        Shard shard = shard(username);
+        shard.lock.readLock().lock();
+        try {
+            return shard.accounts.containsKey(username);
+        } finally {
+            shard.lock.readLock().unlock();
+        }
+    }
+
+    // Adds an account with an already hashed credential; returns false when the username is taken
+    public boolean add(String username, String credential) {
+        Shard shard = shard(username);
+        shard.lock.writeLock().lock();
+        try {
+            if (shard.accounts.containsKey(username)) {
+                return false;
+            }
+            shard.accounts.put(username, new Account(credential));
+            return true;
+        } finally {
+            shard.lock.writeLock().unlock();
+        }
+    }
+
+    // Takes back an account that was added but could not be journaled
+    public void remove(String username) {
+        Shard shard = shard(username);
+        shard.lock.writeLock().lock();
+        try {
+            shard.accounts.remove(username);
+        } finally {
+            shard.lock.writeLock().unlock();
+        }
+    }
+
+    // Re-inserts an account read back from the journal or a snapshot (replaces an older credential)
+    public void restore(String username, String credential) {
+        Shard shard = shard(username);
+        shard.lock.writeLock().lock();
+        try {
+            Account account = shard.accounts.get(username);
+            if (account == null) {
+                shard.accounts.put(username, new Account(credential));
+            } else {
+                account.credential = credential;
+            }
+        } finally {
+            shard.lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        int total = 0;
+        for (Shard shard : shards) {
+            shard.lock.readLock().lock();
+            try {
+                total += shard.accounts.size();
+            } finally {
+                shard.lock.readLock().unlock();
+            }
+        }
+        return total;
+    }
+
+    // Username -> stored credential, for snapshots
+    public Map<String, String> credentials() {
+        Map<String, String> credentials = new HashMap<>();
+        for (Shard shard : shards) {
+            shard.lock.readLock().lock();
+            try {
+                for (Map.Entry<String, Account> entry : shard.accounts.entrySet()) {
+                    credentials.put(entry.getKey(), entry.getValue().credential);
+                }
+            } finally {
+                shard.lock.readLock().unlock();
+            }
+        }
+        return credentials;
+    }
+
+    // ======================================== Verification ========================================
+    // True while the account is locked after too many failed attempts
+    public boolean isThrottled(String username) {
+        Account account = account(username);
+        return account != null && account.isLocked(System.nanoTime());
+    }
+
+    // Checks a password, counting failures towards the lockout. False for an unknown user, a wrong password or
+    // a throttled account.
+    public boolean verify(String username, String password) {
+        Account account = account(username);
+        if (account == null) {
+            matches(dummyCredential, password);
+            return false;
+        }
+        if (account.isLocked(System.nanoTime())) {
+            return false;
+        }
+        if (!matches(account.credential, password)) {
+            account.recordFailure(System.nanoTime());
+            return false;
+        }
+        account.failures.set(0);
+        return true;
+    }
+
+    // True when the stored credential is a plaintext password or uses fewer iterations than configured;
+    // after a successful login the caller hashes the password again and stores it with restore
+    public boolean needsRehash(String username) {
+        Account account = account(username);
+        if (account == null) {
+            return false;
+        }
+        String[] parts = account.credential.split("\\$");
+        return parts.length != 4 || !parts[0].equals(SCHEME) || Integer.parseInt(parts[1]) < iterations;
+    }
+
+    // ======================================== Sessions ========================================
+    // Opens a session for an authenticated user and returns its token
+    public String openSession(String username) {
+        byte[] bytes = new byte[16];
+        random.nextBytes(bytes);
+        long now = System.nanoTime();
+        Session session = new Session(Base64.getUrlEncoder().withoutPadding().encodeToString(bytes), username, now + sessionNanos);
+        sessions.put(session.token, session);
+        sessionOrder.add(session);
+        evictSessions(now);
+        return session.token;
+    }
+
+    // User of a live session, or null when the token is unknown, logged out or expired
+    public String sessionUser(String token) {
+        if (token == null) {
+            return null;
+        }
+        Session session = sessions.get(token);
+        if (session == null) {
+            return null;
+        }
+        if (session.expiresAt - System.nanoTime() <= 0) {
+            sessions.remove(token, session);
+            return null;
+        }
+        return session.username;
+    }
+
+    public void closeSession(String token) {
+        if (token != null) {
+            sessions.remove(token);
+        }
+    }
+
+    public int sessionCount() {
+        return sessions.size();
+    }
+
+    // Drops sessions from the old end of the queue while they are expired, logged out or over the cache size
+    private void evictSessions(long now) {
+        Session oldest;
+        while ((oldest = sessionOrder.peek()) != null
+                && (oldest.expiresAt - now <= 0 || sessions.size() > maxSessions || sessions.get(oldest.token) != oldest)) {
+            if (sessionOrder.remove(oldest)) {
+                sessions.remove(oldest.token, oldest);
+            }
+        }
+    }
+
+    // ======================================== Password hashing ========================================
+    public String hashPassword(String password) {
+        byte[] salt = new byte[SALT_BYTES];
+        random.nextBytes(salt);
+        Base64.Encoder base64 = Base64.getEncoder();
+        return SCHEME + "$" + iterations + "$" + base64.encodeToString(salt) + "$" + base64.encodeToString(pbkdf2(password, salt, iterations));
+    }
+
+    // Constant-time comparison; anything not in the PBKDF2 format is a plaintext password from an older version
+    private static boolean matches(String credential, String password) {
+        String[] parts = credential.split("\\$");
+        if (parts.length != 4 || !parts[0].equals(SCHEME)) {
+            return MessageDigest.isEqual(credential.getBytes(StandardCharsets.UTF_8),
+                    password.getBytes(StandardCharsets.UTF_8));
+        }
+        Base64.Decoder base64 = Base64.getDecoder();
+        byte[] expected = base64.decode(parts[3]);
+        return MessageDigest.isEqual(expected, pbkdf2(password, base64.decode(parts[2]), Integer.parseInt(parts[1])));
+    }
+
+    private static byte[] pbkdf2(String password, byte[] salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, HASH_BITS);
+        try {
+            return SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256").generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("PBKDF2WithHmacSHA256 is not available", e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    // ======================================== Internals ========================================
+    private Account account(String username) {
+        Shard shard = shard(username);
+        shard.lock.readLock().lock();
+        try {
+            return shard.accounts.get(username);
+        } finally {
+            shard.lock.readLock().unlock();
+        }
+    }
+
+    private Shard shard(String username) {
+        int h = username.hashCode();
+        return shards[(h ^ (h >>> 16)) & (SHARDS - 1)];
+    }
+
+    private static class Shard {
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private final Map<String, Account> accounts = new HashMap<>();
+    }
+
+    private static class Account {
+        private volatile String credential;
+        private final AtomicInteger failures = new AtomicInteger();
+        private volatile long lockedUntil;
+
+        Account(String credential) {
+            this.credential = credential;
+        }
+
+        boolean isLocked(long now) {
+            return failures.get() >= MAX_FAILED_ATTEMPTS && lockedUntil - now > 0;
+        }
+
+        // 30 s lockout from the fifth failure in a row, doubling with each further failure (up to 16 min)
+        void recordFailure(long now) {
+            int failed = failures.incrementAndGet();
+            if (failed >= MAX_FAILED_ATTEMPTS) {
+                lockedUntil = now + (LOCKOUT_NANOS << Math.min(failed - MAX_FAILED_ATTEMPTS, 5));
+            }
+        }
+    }
+
+    private static class Session {
+        private final String token;
+        private final String username;
+        private final long expiresAt;
+
+        Session(String token, String username, long expiresAt) {
+            this.token = token;
+            this.username = username;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package bloodbank;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import javax.management.*;
+
+// =================================================== Bank Metrics ===================================================
+// Per-operation latency histograms and throughput, rejection counters by reason, and inventory gauges for one
+// BloodBank. Read through a plain-text dump (donor menu, METRICS server command) or JMX (MBean
+// "bloodbank:type=Metrics", registered by export()).
+//
+// Instrumented code brackets an operation with start() and record(). With instrumentation switched off
+// (-Dbloodbank.metrics=false, METRICS OFF, or the JMX attribute Enabled) that is one volatile read: start() returns 0
+// without reading the clock and record() ignores a 0 start. Recording itself never allocates or locks.
+class BankMetrics {
+    enum Operation { ADD, FIND, LIST, EXPIRING, RESERVE, COMMIT, LOGIN, DONOR }
+
+    enum Rejection { INVALID_TYPE, UNDERAGE, OVERAGE, INVALID_AMOUNT, OVER_AMOUNT_LIMIT, NOT_URGENT, EXPIRED, TOO_SOON, LOGIN_FAILED, INSUFFICIENT_STOCK }
+
+    static final String OBJECT_NAME = "bloodbank:type=Metrics";
+    private static final double[] QUANTILES = { 0.50, 0.90, 0.99, 0.999 };
+    private static final String[] QUANTILE_NAMES = { "P50", "P90", "P99", "P999" };
+
+    private final LatencyHistogram[] latencies = new LatencyHistogram[Operation.values().length];
+    private final LongAdder[] rejections = new LongAdder[Rejection.values().length];
+    // Inventory gauges in registration order, read only when dumped or exported
+    private final Map<String, LongSupplier> gauges = Collections.synchronizedMap(new LinkedHashMap<>());
+    private volatile boolean enabled = Boolean.parseBoolean(System.getProperty("bloodbank.metrics", "true"));
+    private volatile long resetAt = System.nanoTime();
+
+    BankMetrics() {
+        for (int i = 0; i < latencies.length; i++) {
+            latencies[i] = new LatencyHistogram();
+        }
+        for (int i = 0; i < rejections.length; i++) {
+            rejections[i] = new LongAdder();
+        }
+    }
+
+    // ======================================== Recording (hot path) ========================================
+    // Start time for record(), or 0 when instrumentation is off
+    public long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    public void record(Operation operation, long start) {
+        if (start != 0) {
+            latencies[operation.ordinal()].record(System.nanoTime() - start);
+        }
+    }
+
+    public void reject(Rejection reason) {
+        if (enabled) {
+            rejections[reason.ordinal()].increment();
+        }
+    }
+
+    // ======================================== Control ========================================
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public void reset() {
+        for (LatencyHistogram histogram : latencies) {
+            histogram.reset();
+        }
+        for (LongAdder counter : rejections) {
+            counter.reset();
+        }
+        resetAt = System.nanoTime();
+    }
+
+    // Adds (or replaces) a gauge; the supplier is called on every dump or JMX read, so it must be cheap and thread-safe
+    public void gauge(String name, LongSupplier value) {
+        gauges.put(name, value);
+    }
+
+    // ======================================== Reading ========================================
+    public LatencyHistogram.Snapshot latency(Operation operation) {
+        return latencies[operation.ordinal()].snapshot();
+    }
+
+    public long rejections(Rejection reason) {
+        return rejections[reason.ordinal()].sum();
+    }
+
+    // One line per operation, rejection reason and gauge:
+    //   latency <op> count=<n> rate=<n>/s p50=<us>us p90=... p99=... p999=... max=<us>us mean=<us>us
+    //   rejected <reason> <n>
+    //   gauge <name> <value>
+    public void dump(StringBuilder out) {
+        double seconds = Math.max(1e-9, (System.nanoTime() - resetAt) / 1e9);
+        out.append("metrics ").append(enabled ? "on" : "off").append(", ").append(format(seconds)).append(" s since reset\n");
+        for (Operation operation : Operation.values()) {
+            LatencyHistogram.Snapshot snapshot = latency(operation);
+            out.append("latency ").append(operation.name().toLowerCase(Locale.ROOT))
+                    .append(" count=").append(snapshot.count())
+                    .append(" rate=").append(format(snapshot.count() / seconds)).append("/s");
+            for (int q = 0; q < QUANTILES.length; q++) {
+                out.append(' ').append(QUANTILE_NAMES[q].toLowerCase(Locale.ROOT)).append('=')
+                        .append(micros(snapshot.percentile(QUANTILES[q]))).append("us");
+            }
+            out.append(" max=").append(micros(snapshot.max())).append("us")
+                    .append(" mean=").append(format(snapshot.mean() / 1e3)).append("us\n");
+        }
+        for (Rejection reason : Rejection.values()) {
+            out.append("rejected ").append(reason.name().toLowerCase(Locale.ROOT)).append(' ').append(rejections(reason)).append('\n');
+        }
+        synchronized (gauges) {
+            for (Map.Entry<String, LongSupplier> gauge : gauges.entrySet()) {
+                out.append("gauge ").append(gauge.getKey()).append(' ').append(gauge.getValue().getAsLong()).append('\n');
+            }
+        }
+    }
+
+    private static String micros(long nanos) {
+        return format(nanos / 1e3);
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.1f", value);
+    }
+
+    // ======================================== JMX ========================================
+    // Registers this instance as the platform MBean "bloodbank:type=Metrics", replacing an earlier registration
+    public void export() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(OBJECT_NAME);
+        if (server.isRegistered(name)) {
+            server.unregisterMBean(name);
+        }
+        server.registerMBean(new Exporter(), name);
+    }
+
+    // Attributes: Enabled (writable); <Operation>Count, <Operation>P50Micros ... P999Micros, <Operation>MaxMicros and
+    // <Operation>MeanMicros per operation (e.g. AddP99Micros); Rejected<Reason> per rejection reason; one attribute
+    // per gauge under its gauge name. Operation: reset().
+    private class Exporter implements DynamicMBean {
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            if (attribute.equals("Enabled")) {
+                return enabled;
+            }
+            for (Rejection reason : Rejection.values()) {
+                if (attribute.equals("Rejected" + camel(reason.name()))) {
+                    return rejections(reason);
+                }
+            }
+            LongSupplier gauge = gauges.get(attribute);
+            if (gauge != null) {
+                return gauge.getAsLong();
+            }
+            for (Operation operation : Operation.values()) {
+                String prefix = camel(operation.name());
+                if (!attribute.startsWith(prefix)) {
+                    continue;
+                }
+                String statistic = attribute.substring(prefix.length());
+                LatencyHistogram.Snapshot snapshot = latency(operation);
+                if (statistic.equals("Count")) {
+                    return snapshot.count();
+                } else if (statistic.equals("MaxMicros")) {
+                    return snapshot.max() / 1e3;
+                } else if (statistic.equals("MeanMicros")) {
+                    return snapshot.mean() / 1e3;
+                }
+                for (int q = 0; q < QUANTILES.length; q++) {
+                    if (statistic.equals(QUANTILE_NAMES[q] + "Micros")) {
+                        return snapshot.percentile(QUANTILES[q]) / 1e3;
+                    }
+                }
+            }
+            throw new AttributeNotFoundException(attribute);
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException, InvalidAttributeValueException {
+            if (!attribute.getName().equals("Enabled")) {
+                throw new AttributeNotFoundException(attribute.getName() + " is read-only");
+            }
+            if (!(attribute.getValue() instanceof Boolean)) {
+                throw new InvalidAttributeValueException("Enabled must be a boolean");
+            }
+            setEnabled((Boolean) attribute.getValue());
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            AttributeList values = new AttributeList();
+            for (String attribute : attributes) {
+                try {
+                    values.add(new Attribute(attribute, getAttribute(attribute)));
+                } catch (AttributeNotFoundException e) {
+                    // Unknown names are left out, as the DynamicMBean contract allows
+                }
+            }
+            return values;
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            AttributeList applied = new AttributeList();
+            for (Attribute attribute : attributes.asList()) {
+                try {
+                    setAttribute(attribute);
+                    applied.add(attribute);
+                } catch (JMException e) {
+                    // Read-only or invalid values are left out
+                }
+            }
+            return applied;
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+            if (actionName.equals("reset") && (params == null || params.length == 0)) {
+                reset();
+                return null;
+            }
+            throw new ReflectionException(new NoSuchMethodException(actionName));
+        }
+
+        // Rebuilt on every call so gauges added after export() show up
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            List<MBeanAttributeInfo> attributes = new ArrayList<>();
+            attributes.add(new MBeanAttributeInfo("Enabled", "boolean", "Instrumentation switched on", true, true, true));
+            for (Operation operation : Operation.values()) {
+                String prefix = camel(operation.name());
+                attributes.add(attribute(prefix + "Count", "long", "Completed " + operation + " operations since reset"));
+                for (String quantile : QUANTILE_NAMES) {
+                    attributes.add(attribute(prefix + quantile + "Micros", "double", operation + " latency " + quantile + " (microseconds)"));
+                }
+                attributes.add(attribute(prefix + "MaxMicros", "double", operation + " largest latency (microseconds)"));
+                attributes.add(attribute(prefix + "MeanMicros", "double", operation + " mean latency (microseconds)"));
+            }
+            for (Rejection reason : Rejection.values()) {
+                attributes.add(attribute("Rejected" + camel(reason.name()), "long", "Requests rejected: " + reason));
+            }
+            synchronized (gauges) {
+                for (String gauge : gauges.keySet()) {
+                    attributes.add(attribute(gauge, "long", "Inventory gauge"));
+                }
+            }
+            MBeanOperationInfo reset = new MBeanOperationInfo("reset", "Clears histograms and counters", new MBeanParameterInfo[0], "void",
+                    MBeanOperationInfo.ACTION);
+            return new MBeanInfo(BankMetrics.class.getName(), "Blood bank operation metrics", attributes.toArray(new MBeanAttributeInfo[0]),
+                    null, new MBeanOperationInfo[] { reset }, null);
+        }
+
+        private MBeanAttributeInfo attribute(String name, String type, String description) {
+            return new MBeanAttributeInfo(name, type, description, true, false, false);
+        }
+    }
+
+    // INSUFFICIENT_STOCK -> InsufficientStock
+    private static String camel(String name) {
+        StringBuilder out = new StringBuilder(name.length());
+        for (String word : name.split("_")) {
+            out.append(word.charAt(0)).append(word.substring(1).toLowerCase(Locale.ROOT));
+        }
+        return out.toString();
+    }
+}
@@ -0,0 +1,602 @@
+package bloodbank;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.util.*;
+
+// =================================================== Blood bank Class ===================================================
+class BloodBank implements BloodBankOperations, AutoCloseable { // Interface 
+    // Columnar store partitioned by blood type, indexed by donation kind inside each partition
+    private DonationStore store;
+    // FEFO reservations of units for transfusion requests
+    private DonationAllocator allocator;
+    // Write-ahead journal for accepted donations (null when running without persistence)
+    private DonationJournal journal;
+    // Console input for the interactive menus; created on first use so headless callers never touch System.in
+    private Scanner scanner;
+    // Buffered console output for listings (one flush per page instead of one write per line)
+    private Writer console;
+    // Rows shown per page in the List Donations menu
+    private final int pageSize = Math.max(1, Integer.getInteger("bloodbank.pageSize", 10));
+    // Latency, rejection and inventory metrics of the operations below
+    private final BankMetrics metrics = new BankMetrics();
+    // Donation history per donor, for name search and minimum intervals between donations
+    private final DonorRegistry donors = new DonorRegistry();
+    // Change feed of accepted and rejected donations for downstream consumers; intake never waits for them
+    private final DonationEvents events = new DonationEvents(Integer.getInteger("bloodbank.eventBufferSize", 1 << 16));
+    // Sliding-window intake trends and stock forecast, fed by every donation stored below
+    private final DonationAnalytics analytics;
+
+    public BloodBank() {
+        this(new DonationStore());
+    }
+
+    // Used when starting from a snapshot
+    public BloodBank(DonationStore store) {
+        this.store = store;
+        this.allocator = new DonationAllocator(store);
+        donors.load(store);
+        analytics = new DonationAnalytics(store.stock(), Clock.systemUTC());
+        analytics.seed(store);
+        for (BloodType type : BloodType.values()) {
+            // Same expiry step as the stock listing, so a gauge never counts units past their shelf life
+            metrics.gauge("stock." + type.label() + ".units", () -> getStockLevels().units(type));
+            metrics.gauge("stock." + type.label() + ".ml", () -> getStockLevels().ml(type));
+        }
+        metrics.gauge("reservations.pending", () -> {
+            expireReservations();
+            return allocator.pendingCount();
+        });
+        metrics.gauge("donations.recorded", store::nextSequence);
+        metrics.gauge("donors.registered", donors::donorCount);
+        metrics.gauge("events.published", events::nextSequence);
+        metrics.gauge("events.refused", events::refusedAtIntake);
+    }
+
+    // Share the program's Scanner instead of opening a second one on System.in
+    public void setScanner(Scanner scanner) {
+        this.scanner = scanner;
+    }
+
+    private Scanner scanner() {
+        if (scanner == null) {
+            scanner = new Scanner(System.in);
+        }
+        return scanner;
+    }
+
+    @Override
+    public void addDonation(BloodDonation donation) {
+        boolean accepted;
+        try {
+            accepted = acceptDonation(donation);
+        } catch (UncheckedIOException e) {
+            System.out.println(TextColor.RED + "\n\t\t\t\t--- Donation not saved: " + e.getMessage() + " ---" + TextColor.RESET);
+            return;
+        }
+        if (accepted) {
+            System.out.println(TextColor.GREEN + "\n\t\t\t\t--- Donation added successfully! ---" + TextColor.RESET);
+        } else {
+            System.out.println(TextColor.RED + "\n\t\t\t\t--- Donation failed ---");
+            System.out.println("\n\t\t\t\tRequirements:");
+            System.out.println("\t\t\t\t- Must Be 18+ Years old to donate");
+            System.out.println("\t\t\t\t- Donation Amount Limit is 470 mL");
+            System.out.println("\t\t\t\t- Unit must still be within its shelf life");
+            System.out.println("\t\t\t\t- Donor must have recovered from their last donation" + TextColor.RESET);
+            long nextEligibleAt = donors.nextEligibleAt(donation.getDonorName());
+            if (nextEligibleAt > donation.getCollectedAt()) {
+                System.out.println(TextColor.YELLOW + "\t\t\t\t  " + donation.getDonorName() + " can donate again from "
+                    + BloodComponent.formatTime(nextEligibleAt) + TextColor.RESET);
+            }
+        }
+    }
+
+    // Headless add: validates and stores without console output; safe to call from many threads
+    public boolean acceptDonation(BloodDonation donation) {
+        long start = metrics.start();
+        try {
+            return storeDonation(donation);
+        } finally {
+            metrics.record(BankMetrics.Operation.ADD, start);
+        }
+    }
+
+    private boolean storeDonation(BloodDonation donation) {
+        BloodType type = BloodType.parse(donation.getBloodType());
+        if (type == null || !donation.isEligibleToDonate(donors) || donation.isExpired(System.currentTimeMillis())) {
+            BankMetrics.Rejection reason = rejectionOf(donation, type);
+            metrics.reject(reason);
+            events.publish(reason, type, donation);
+            return false;
+        }
+        DonationKind kind = DonationKind.of(donation);
+        // Checked again and recorded atomically: another session may have added a donation by the same donor
+        if (!donors.tryRecord(donation.getDonorName(), type, kind, donation.getComponent(), donation.getDonationAmount(), donation.getCollectedAt())) {
+            metrics.reject(BankMetrics.Rejection.TOO_SOON);
+            events.publish(BankMetrics.Rejection.TOO_SOON, type, donation);
+            return false;
+        }
+        int extra = DonationStore.extraOf(donation);
+        // Set once the row is in the store (the listener runs after the row is added, before it is journaled)
+        boolean[] added = new boolean[1];
+        try {
+            if (journal == null) {
+                store.add(type, kind, donation.getDonorName(), donation.getDonationAmount(), extra, donation.getComponent(), donation.getCollectedAt());
+            } else {
+                long stamp = journal.beginMutation();
+                try {
+                    store.add(type, kind, donation.getDonorName(), donation.getDonationAmount(), extra, donation.getComponent(), donation.getCollectedAt(),
+                            (index, sequence) -> {
+                                added[0] = true;
+                                journal.appendDonation(type, kind, donation.getDonorName(), donation.getDonationAmount(), extra,
+                                        donation.getComponent(), donation.getCollectedAt(), sequence);
+                            });
+                } finally {
+                    journal.endMutation(stamp);
+                }
+            }
+        } catch (RuntimeException e) {
+            // Never stored (the journal refused the mutation): take the history record back, or the donor would be
+            // held to the recovery interval of a donation the bank does not have
+            if (!added[0]) {
+                donors.forget(donation.getDonorName(), type, kind, donation.getComponent(), donation.getDonationAmount(), donation.getCollectedAt());
+            }
+            throw e;
+        }
+        analytics.record(type, kind, donation.getDonationAmount(), donation.getCollectedAt());
+        // Published once stored (and journaled), so a consumer never hears of a donation the bank could still lose
+        events.publish(null, type, donation);
+        return true;
+    }
+
+    // First failed check, in the order the Donation failed message lists the requirements
+    private BankMetrics.Rejection rejectionOf(BloodDonation donation, BloodType type) {
+        if (type == null) {
+            return BankMetrics.Rejection.INVALID_TYPE;
+        }
+        if (donation instanceof RegularDonation) {
+            int age = ((RegularDonation) donation).getAge();
+            if (age < 18) {
+                return BankMetrics.Rejection.UNDERAGE;
+            } else if (age > 65) {
+                return BankMetrics.Rejection.OVERAGE;
+            }
+        } else if (donation instanceof EmergencyDonation && !((EmergencyDonation) donation).isUrgent()) {
+            return BankMetrics.Rejection.NOT_URGENT;
+        }
+        if (donation.getDonationAmount() <= 0) {
+            return BankMetrics.Rejection.INVALID_AMOUNT;
+        } else if (donation.getDonationAmount() > 470) {
+            return BankMetrics.Rejection.OVER_AMOUNT_LIMIT;
+        }
+        return donation.isEligibleToDonate() && !donation.isEligibleToDonate(donors) ? BankMetrics.Rejection.TOO_SOON : BankMetrics.Rejection.EXPIRED;
+    }
+
+    // Batch add for donations that were already validated, intervals included: each blood type partition is locked
+    // once and the whole batch is journaled under one mutation stamp. Returns the number of donations added.
+    public int addValidatedDonations(List<BloodDonation> donations) {
+        for (BloodDonation donation : donations) {
+            donors.record(donation.getDonorName(), BloodType.parse(donation.getBloodType()), DonationKind.of(donation), donation.getComponent(),
+                    donation.getDonationAmount(), donation.getCollectedAt());
+        }
+        return storeBatch(donations);
+    }
+
+    // Bulk import: donations that passed every other check, in file order. Each is checked against its donor's
+    // intervals (earlier rows of the same import included); the indexes of those that are too soon are added to
+    // tooSoon and the rest are stored as one batch. Returns the number of donations added.
+    public int addImportedDonations(List<BloodDonation> donations, IntList tooSoon) {
+        List<BloodDonation> allowed = new ArrayList<>(donations.size());
+        for (int i = 0; i < donations.size(); i++) {
+            BloodDonation donation = donations.get(i);
+            if (donors.tryRecord(donation.getDonorName(), BloodType.parse(donation.getBloodType()), DonationKind.of(donation),
+                    donation.getComponent(), donation.getDonationAmount(), donation.getCollectedAt())) {
+                allowed.add(donation);
+            } else {
+                tooSoon.add(i);
+                metrics.reject(BankMetrics.Rejection.TOO_SOON);
+                events.publish(BankMetrics.Rejection.TOO_SOON, BloodType.parse(donation.getBloodType()), donation);
+            }
+        }
+        return storeBatch(allowed);
+    }
+
+    // The donations were recorded in the donor registry by the caller; those that never reach the store are taken
+    // back out of it if the journal fails part way
+    private int storeBatch(List<BloodDonation> donations) {
+        EnumMap<BloodType, List<BloodDonation>> byType = new EnumMap<>(BloodType.class);
+        for (BloodDonation donation : donations) {
+            byType.computeIfAbsent(BloodType.parse(donation.getBloodType()), type -> new ArrayList<>()).add(donation);
+        }
+        List<Map.Entry<BloodType, List<BloodDonation>>> groups = new ArrayList<>(byType.entrySet());
+        int group = 0;
+        // Rows of the current group already in the store (the listener runs once each row is added)
+        int[] added = new int[1];
+        long stamp = 0;
+        boolean gated = false;
+        try {
+            if (journal != null) {
+                stamp = journal.beginMutation();
+                gated = true;
+            }
+            for (; group < groups.size(); group++) {
+                BloodType type = groups.get(group).getKey();
+                List<BloodDonation> batch = groups.get(group).getValue();
+                added[0] = 0;
+                store.addAll(type, batch, journal == null ? null : (index, sequence) -> {
+                    added[0] = index + 1;
+                    BloodDonation donation = batch.get(index);
+                    journal.appendDonation(type, DonationKind.of(donation), donation.getDonorName(), donation.getDonationAmount(),
+                            DonationStore.extraOf(donation), donation.getComponent(), donation.getCollectedAt(), sequence);
+                });
+            }
+        } catch (RuntimeException e) {
+            for (int unstored = group; unstored < groups.size(); unstored++) {
+                List<BloodDonation> batch = groups.get(unstored).getValue();
+                for (int i = unstored == group ? added[0] : 0; i < batch.size(); i++) {
+                    BloodDonation donation = batch.get(i);
+                    donors.forget(donation.getDonorName(), groups.get(unstored).getKey(), DonationKind.of(donation), donation.getComponent(),
+                            donation.getDonationAmount(), donation.getCollectedAt());
+                }
+            }
+            throw e;
+        } finally {
+            if (gated) {
+                journal.endMutation(stamp);
+            }
+        }
+        analytics.recordAll(donations);
+        for (BloodDonation donation : donations) {
+            events.publish(null, BloodType.parse(donation.getBloodType()), donation);
+        }
+        return donations.size();
+    }
+
+    // Headless rendering of one kind's donations in the console list format; returns the number rendered
+    public int renderDonations(DonationKind kind, StringBuilder out) {
+        long start = metrics.start();
+        expireReservations();
+        int[] rendered = new int[1];
+        store.forEach(kind, (type, k, donorName, amount, extra, component, collectedAt) -> {
+            DonationPage.appendRow(out, type, donorName, amount, component, collectedAt + component.shelfLifeMillis());
+            rendered[0]++;
+        });
+        metrics.record(BankMetrics.Operation.LIST, start);
+        return rendered[0];
+    }
+
+    // Cursor-based listing: fills page with the donations of one kind after the given resume token
+    // (null or "" for the first page), optionally limited to one blood type (type == null for all)
+    public void listDonations(DonationKind kind, BloodType type, String token, DonationPage page) {
+        long start = metrics.start();
+        expireReservations();
+        store.page(kind, type, DonationPage.afterSequence(token), page);
+        metrics.record(BankMetrics.Operation.LIST, start);
+    }
+
+    public List<BloodDonation> getDonations(DonationKind kind) {
+        long start = metrics.start();
+        expireReservations();
+        List<BloodDonation> donations = store.donations(kind);
+        metrics.record(BankMetrics.Operation.LIST, start);
+        return donations;
+    }
+
+    @Override
+    public void listDonations() {
+        while (true) {
+            System.out.print(TextColor.BLUE);
+            System.out.println("\n\t\t\t\t=========================================");
+            System.out.println("\t\t\t\t---        List Donations Menu        ---");
+            System.out.println("\t\t\t\t=========================================");
+            System.out.print(TextColor.CYAN);
+            System.out.println("\t\t\t\t1. View Regular Donations");
+            System.out.println("\t\t\t\t2. View Emergency Donations");
+            System.out.println("\t\t\t\t3. Return to Donor Menu");
+            System.out.print(TextColor.YELLOW);
+            System.out.print("\t\t\t\tEnter your choice: ");
+            // Error Handling
+            int choice = -1;
+            Scanner scanner = scanner();
+            try {
+                choice = scanner.nextInt();
+                scanner.nextLine();
+            } catch (InputMismatchException e) {
+                System.out.println(TextColor.RED + "\n\t\t\t\t--- Invalid input. Please enter a valid number ---" + TextColor.RESET);
+                scanner.nextLine();
+                continue;
+            }
+            switch (choice) {
+                case 1:
+                    browseDonations(DonationKind.REGULAR, "Regular", readTypeFilter());
+                    break;
+                case 2:
+                    browseDonations(DonationKind.EMERGENCY, "Emergency", readTypeFilter());
+                    break;
+                case 3:
+                    return;
+                default:
+                    System.out.println(TextColor.RED + "\n\t\t\t\t--- Invalid choice. Please try again ---" + TextColor.RESET);
+            }
+        }
+    }
+
+    // Blood type to list, or null for all types
+    private BloodType readTypeFilter() {
+        while (true) {
+            System.out.print(TextColor.YELLOW + "\t\t\t\tFilter by blood type (A+, A-, B+, B-, AB+, AB-, O+, O-) or press Enter for all: " + TextColor.RESET);
+            String input = scanner().nextLine().trim();
+            if (input.isEmpty()) {
+                return null;
+            }
+            BloodType type = BloodType.parse(input);
+            if (type != null) {
+                return type;
+            }
+            System.out.println(TextColor.RED + "\n\t\t\t\t--- Invalid blood type. Blood type (A+, A-, B+, B-, AB+, AB-, O+ or O-) ---" + TextColor.RESET);
+        }
+    }
+
+    // Shows one page at a time with next/previous navigation. Previous pages are reached through a stack of
+    // the tokens each page started from, so going back is the same cheap lookup as going forward.
+    private void browseDonations(DonationKind kind, String label, BloodType type) {
+        DonationPage page = new DonationPage(pageSize);
+        StringBuilder buffer = new StringBuilder();
+        Deque<String> previousTokens = new ArrayDeque<>();
+        String token = "";
+        int pageNumber = 1;
+        String filter = type == null ? "" : " (" + type.label() + ")";
+        while (true) {
+            listDonations(kind, type, token, page);
+            if (page.size() == 0 && pageNumber == 1) {
+                System.out.println(TextColor.RED + "\n\t\t\t\t--- No " + label.toLowerCase() + " donations recorded ---" + TextColor.RESET);
+                return;
+            }
+            System.out.println("\n\t\t\t\t" + label + " Donations" + filter + " - Page " + pageNumber + ":\n");
+            try {
+                Writer out = console();
+                page.render(out, buffer);
+                out.flush();
+            } catch (IOException e) {
+                System.out.println(TextColor.RED + "\n\t\t\t\t--- Could not print donations: " + e.getMessage() + " ---" + TextColor.RESET);
+                return;
+            }
+            boolean hasPrevious = !previousTokens.isEmpty();
+            if (!page.hasMore() && !hasPrevious) {
+                return;
+            }
+            System.out.print(TextColor.YELLOW + "\n\t\t\t\t" + (page.hasMore() ? "[N] Next page  " : "")
+                + (hasPrevious ? "[P] Previous page  " : "") + "[R] Return: " + TextColor.RESET);
+            String input = scanner().nextLine().trim();
+            if (input.equalsIgnoreCase("N") && page.hasMore()) {
+                previousTokens.push(token);
+                token = page.nextToken(token);
+                pageNumber++;
+            } else if (input.equalsIgnoreCase("P") && hasPrevious) {
+                token = previousTokens.pop();
+                pageNumber--;
+            } else if (input.equalsIgnoreCase("R")) {
+                return;
+            } else {
+                System.out.println(TextColor.RED + "\n\t\t\t\t--- Invalid choice. Please try again ---" + TextColor.RESET);
+            }
+        }
+    }
+
+    private Writer console() {
+        if (console == null) {
+            console = new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16);
+        }
+        return console;
+    }
+
+    @Override
+    public void findCompatibleDonations(String requiredBloodType) {
+        BloodType recipientType = BloodType.parse(requiredBloodType);
+        while (recipientType == null) {
+            System.out.println(TextColor.RED + "\n\t\t\t\t--- Invalid blood type. Blood type (A+, A-, B+, B-, AB+, AB-, O+ or O-) ---" + TextColor.RESET);
+            recipientType = BloodType.parse(scanner().nextLine());
+        }
+        System.out.println("\n\t\t\t\tCompatible Donations for " + recipientType.label() + ":");
+        boolean found = false;
+        for (DonationKind kind : DonationKind.values()) {
+            for (BloodDonation donation : getCompatibleDonations(recipientType, kind)) {
+                System.out.println("\n\t\t\t\t" + donation);
+                found = true;
+            }
+        }
+        if (!found) {
+            System.out.println(TextColor.RED + "\n\t\t\t\t--- No compatible donations found ---" + TextColor.RESET);
+        }
+    }
+
+    // Only touches the buckets of donor types the recipient can receive, for the requested kind: the bits of the
+    // recipient's donor mask are the partition indexes
+    public List<BloodDonation> getCompatibleDonations(BloodType recipientType, DonationKind kind) {
+        long start = metrics.start();
+        expireReservations();
+        List<BloodDonation> matches = new ArrayList<>();
+        for (int mask = recipientType.donorMask() & 0xFF; mask != 0; mask &= mask - 1) {
+            matches.addAll(store.donations(BloodType.ofOrdinal(Integer.numberOfTrailingZeros(mask)), kind));
+        }
+        metrics.record(BankMetrics.Operation.FIND, start);
+        return matches;
+    }
+
+    // Compatible units of one kind (kind == null for both), soonest expiry first, at most limit of them; what another
+    // site asks for when it searches this one (see FederatedInventory). Each partition hands over only its first
+    // limit units, so the merge sorts a few dozen views instead of the whole compatible stock.
+    public List<BloodDonation> getCompatibleUnits(BloodType recipientType, DonationKind kind, int limit) {
+        long start = metrics.start();
+        expireReservations();
+        List<BloodDonation> units = new ArrayList<>();
+        for (int mask = recipientType.donorMask() & 0xFF; mask != 0; mask &= mask - 1) {
+            BloodType donorType = BloodType.ofOrdinal(Integer.numberOfTrailingZeros(mask));
+            for (DonationKind each : DonationKind.values()) {
+                if (kind == null || kind == each) {
+                    units.addAll(store.soonestExpiring(donorType, each, limit));
+                }
+            }
+        }
+        units.sort(Comparator.comparingLong(BloodDonation::getExpiresAt));
+        metrics.record(BankMetrics.Operation.FIND, start);
+        return units.size() > limit ? new ArrayList<>(units.subList(0, Math.max(0, limit))) : units;
+    }
+
+    // ======================================== Stock levels ========================================
+    // Running totals of the available stock; reading a level is O(1) and takes no lock
+    public StockLevels getStockLevels() {
+        expireReservations();
+        store.expireDue();
+        return store.stock();
+    }
+
+    // Low-stock alert for one blood type (ml over both kinds, 0 = off); fires on crossing, see StockLevels
+    public void setLowStockThreshold(BloodType type, long thresholdMl) {
+        store.setLowStockThreshold(type, thresholdMl);
+    }
+
+    public void setStockListener(StockLevels.Listener listener) {
+        store.stock().setListener(listener);
+    }
+
+    // ======================================== Allocation ========================================
+    // Reserves compatible units totalling at least requiredMl, soonest expiry first and the recipient's own type
+    // first; emergency stock only when allowed. Returns null (nothing reserved) when stock is insufficient.
+    public DonationAllocator.Reservation reserve(BloodType recipient, int requiredMl, boolean allowEmergency, long timeoutMillis) {
+        long start = metrics.start();
+        DonationAllocator.Reservation reservation = allocator.reserve(recipient, requiredMl, allowEmergency, timeoutMillis);
+        metrics.record(BankMetrics.Operation.RESERVE, start);
+        if (reservation == null) {
+            metrics.reject(BankMetrics.Rejection.INSUFFICIENT_STOCK);
+        }
+        return reservation;
+    }
+
+    public List<BloodDonation> getReservedUnits(DonationAllocator.Reservation reservation) {
+        return allocator.units(reservation);
+    }
+
+    // Issues a reservation's units; false if it is unknown, timed out or a unit expired (it is then released)
+    public boolean commitReservation(long id) {
+        long start = metrics.start();
+        if (journal == null) {
+            boolean issued = allocator.commit(id, null);
+            metrics.record(BankMetrics.Operation.COMMIT, start);
+            return issued;
+        }
+        long stamp = journal.beginMutation();
+        try {
+            return allocator.commit(id, journal::appendIssue);
+        } finally {
+            journal.endMutation(stamp);
+            metrics.record(BankMetrics.Operation.COMMIT, start);
+        }
+    }
+
+    public boolean releaseReservation(long id) {
+        return allocator.release(id);
+    }
+
+    // Returns the units of timed-out reservations to stock (at most one sweep per second, see DonationAllocator).
+    // The listing, lookup, stock and gauge paths call it, so a reservation nobody comes back for is still released
+    // when the bank is next looked at; the server also runs it on its scheduler.
+    public int expireReservations() {
+        return allocator.expireReservations();
+    }
+
+    public void setJournal(DonationJournal journal) {
+        this.journal = journal;
+    }
+
+    // Available units (both kinds) expiring within the given time, soonest first; type == null for all types.
+    // Cheap enough to call on every dashboard refresh: only the expiry wheel slots inside the window are read.
+    public List<BloodDonation> getExpiringSoon(BloodType type, long withinMillis) {
+        long start = metrics.start();
+        expireReservations();
+        List<BloodDonation> expiring = store.expiringSoon(type, withinMillis);
+        metrics.record(BankMetrics.Operation.EXPIRING, start);
+        return expiring;
+    }
+
+    public BankMetrics getMetrics() {
+        return metrics;
+    }
+
+    // Accepted and rejected donations, for consumers that subscribe or replay from a sequence
+    public DonationEvents getEvents() {
+        return events;
+    }
+
+    // ======================================== Analytics ========================================
+    // Intake over the last day and week and the stock forecast, per blood type; O(1) per type
+    public List<DonationAnalytics.Trend> getTrends() {
+        expireReservations();
+        store.expireDue();
+        return analytics.trends();
+    }
+
+    // Intake per bucket over the whole stored history between two times (parallel scan of the store)
+    public DonationAnalytics.IntakeHistory getIntakeHistory(long fromMillis, long toMillis, int bucketHours) {
+        return DonationAnalytics.history(store, fromMillis, toMillis, bucketHours);
+    }
+
+    // ======================================== Donors ========================================
+    // Type-ahead: donor names starting with the prefix (ignoring case), alphabetically, at most limit
+    public List<String> searchDonors(String prefix, int limit) {
+        long start = metrics.start();
+        List<String> names = donors.search(prefix, limit);
+        metrics.record(BankMetrics.Operation.DONOR, start);
+        return names;
+    }
+
+    // The donor's donations, oldest first, or null when nobody by that name has donated
+    public DonorRegistry.History getDonorHistory(String donorName) {
+        long start = metrics.start();
+        DonorRegistry.History history = donors.history(donorName);
+        metrics.record(BankMetrics.Operation.DONOR, start);
+        return history;
+    }
+
+    // When the donor may donate again after their latest donation (epoch millis; 0 when they never donated)
+    public long getNextEligibleAt(String donorName) {
+        return donors.nextEligibleAt(donorName);
+    }
+
+    // Re-inserts a donation read back from the journal (already validated, so no checks or output);
+    // sequence is the journaled sequence number, or -1 when the record has none
+    public void restoreDonation(BloodType type, DonationKind kind, String donorName, int amount, int extra, BloodComponent component, long collectedAt,
+            int sequence) {
+        store.restore(type, kind, donorName, amount, extra, component, collectedAt, sequence);
+        donors.record(donorName, type, kind, component, amount, collectedAt);
+        analytics.record(type, kind, amount, collectedAt);
+    }
+
+    // Replays an allocator commit from the journal
+    public void restoreIssue(BloodType type, int sequence) {
+        store.markIssued(type, sequence);
+    }
+
+    public void writeSnapshot(Path path, Map<String, String> accounts, long journalEpoch) throws IOException {
+        DonationSnapshot.write(path, store, accounts, journalEpoch);
+    }
+
+    // Stops the threads of event consumers still subscribed to getEvents() (the bank starts none of its own), so a
+    // bank that is done with leaves nothing running. The journal is owned and closed by the caller.
+    @Override
+    public void close() {
+        events.close();
+    }
+
+    // Close the scanner when done (e.g., in a destructor or main program exit)
+    public void closeScanner() {
+        if (scanner != null) {
+            scanner.close();
+        }
+    }
+}
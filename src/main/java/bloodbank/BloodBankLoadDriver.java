@@ -0,0 +1,127 @@
+package bloodbank;
+
+import java.io.*;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.*;
+
+// =================================================== Load Driver ===================================================
+// Opens many concurrent sessions against a blood bank server over loopback and reports throughput and latency.
+// Usage: java BloodBankLoadDriver [sessions] [commandsPerSession] [host:port]
+// Without host:port an embedded server with an empty, non-persistent BloodBank is started on a free port.
+public class BloodBankLoadDriver {
+    private static final String[] TYPES = { "A+", "B+", "AB+", "O+", "A-", "B-", "AB-", "O-" };
+
+    public static void main(String[] args) throws Exception {
+        int sessions = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int commands = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+        String host = "127.0.0.1";
+        int port;
+        BloodBankServer embedded = null;
+        BloodBank embeddedBank = null;
+        if (args.length > 2) {
+            String[] address = args[2].split(":");
+            host = address[0];
+            port = Integer.parseInt(address[1]);
+        } else {
+            embeddedBank = new BloodBank();
+            embedded = new BloodBankServer(embeddedBank, 0);
+            embedded.start();
+            port = embedded.port();
+        }
+
+        long[][] latencies = new long[sessions][];
+        ExecutorService clients = BloodBankServer.newSessionExecutor();
+        CountDownLatch ready = new CountDownLatch(sessions);
+        CountDownLatch go = new CountDownLatch(1);
+        Future<?>[] results = new Future<?>[sessions];
+        for (int s = 0; s < sessions; s++) {
+            final int session = s;
+            final String serverHost = host;
+            results[s] = clients.submit(() -> {
+                latencies[session] = runSession(serverHost, port, session, commands, ready, go);
+                return null;
+            });
+        }
+        ready.await();
+        long start = System.nanoTime();
+        go.countDown();
+        for (Future<?> result : results) {
+            result.get();
+        }
+        long elapsed = System.nanoTime() - start;
+        clients.shutdown();
+        if (embedded != null) {
+            embedded.close();
+            embeddedBank.close();
+        }
+
+        long[] all = new long[sessions * commands];
+        for (int s = 0; s < sessions; s++) {
+            System.arraycopy(latencies[s], 0, all, s * commands, commands);
+        }
+        Arrays.sort(all);
+        System.out.printf("Sessions: %d, commands per session: %d%n", sessions, commands);
+        System.out.printf("Throughput: %.0f commands/s%n", all.length / (elapsed / 1e9));
+        System.out.printf("Latency (us): p50=%.1f p90=%.1f p99=%.1f max=%.1f%n",
+                percentile(all, 0.50), percentile(all, 0.90), percentile(all, 0.99), all[all.length - 1] / 1e3);
+    }
+
+    // Registers and logs in, waits for every session to be connected, then runs the command mix:
+    // 70% regular adds, 10% emergency adds, 20% emergency-only compatibility lookups
+    private static long[] runSession(String host, int port, int session, int commands, CountDownLatch ready, CountDownLatch go) throws Exception {
+        long[] latencies = new long[commands];
+        try (Socket socket = new Socket(host, port);
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             BufferedWriter out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+            socket.setTcpNoDelay(true);
+            String user = "load" + session;
+            call(in, out, "REGISTER " + user + " secret");
+            if (!call(in, out, "LOGIN " + user + " secret").startsWith("OK")) {
+                throw new IllegalStateException("Login failed for " + user);
+            }
+            ready.countDown();
+            go.await();
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int i = 0; i < commands; i++) {
+                String type = TYPES[random.nextInt(TYPES.length)];
+                int pick = random.nextInt(10);
+                String command;
+                if (pick < 7) {
+                    command = "ADD REGULAR " + type + " 450 " + (18 + random.nextInt(40)) + " Donor " + session + "-" + i;
+                } else if (pick < 8) {
+                    command = "ADD EMERGENCY " + type + " 450 true Donor " + session + "-" + i;
+                } else {
+                    command = "FIND " + type + " EMERGENCY";
+                }
+                long start = System.nanoTime();
+                String reply = call(in, out, command);
+                latencies[i] = System.nanoTime() - start;
+                if (reply.startsWith("ERR")) {
+                    throw new IllegalStateException(command + " -> " + reply);
+                }
+            }
+            call(in, out, "QUIT");
+        }
+        return latencies;
+    }
+
+    // Sends one command and reads up to and including the OK/ERR line
+    private static String call(BufferedReader in, BufferedWriter out, String command) throws IOException {
+        out.write(command);
+        out.write('\n');
+        out.flush();
+        String line;
+        while ((line = in.readLine()) != null) {
+            if (line.startsWith("OK") || line.startsWith("ERR")) {
+                return line;
+            }
+        }
+        throw new EOFException("Server closed the connection");
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        return sorted[Math.min(sorted.length - 1, (int) (p * sorted.length))] / 1e3;
+    }
+}
@@ -0,0 +1,953 @@
+package bloodbank;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.management.JMException;
+
+// =================================================== Main System ===================================================
+public class BloodBankManagementSystem {
+    // Shared by the console and every server session
+    private static AccountStore accounts = AccountStore.fromSystemProperties();
+    private static DonationJournal journal;
+    private static Path snapshotPath = Paths.get(System.getProperty("bloodbank.snapshot", "bloodbank.snapshot"));
+    // Metrics of the running bank; logins are timed here because accounts are shared, not owned by the bank
+    private static BankMetrics metrics = new BankMetrics();
+    // Low-stock alerts waiting to be shown (queued by the store, printed by the menu or the server's scheduler)
+    private static final ConcurrentLinkedQueue<String> stockAlerts = new ConcurrentLinkedQueue<>();
+    // Names shown per step of the donor type-ahead
+    private static final int DONOR_MATCHES = 10;
+    // Other sites searched by the donor menu (-Dbloodbank.sites), null when none are configured
+    private static FederatedInventory otherSites;
+    // Units asked from each site per search
+    private static final int SITE_UNITS = 10;
+    // Trends screen: weeks of intake shown, and forecasts below this many days are shown in red
+    private static final int TREND_WEEKS = 8;
+    private static final double TREND_WARN_DAYS = 3;
+    // How long the console holds a reservation while waiting for the confirmation
+    private static final long RESERVATION_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(Long.getLong("bloodbank.reservationSeconds", 300));
+    // ======================================== Entry Point of program =======================================`
+    public static void main(String[] args) {
+        int port = BloodBankServer.DEFAULT_PORT;
+        if (args.length > 1 && args[0].equals("--server")) {
+            port = parsePort(args[1]);
+            if (port < 0) {
+                System.err.println("Usage: --server [port], port 0 to 65535 (default " + BloodBankServer.DEFAULT_PORT + ")");
+                return;
+            }
+        }
+        DonationSnapshot snapshot = loadSnapshot();
+        BloodBank bloodBank = snapshot == null ? new BloodBank() : new BloodBank(new DonationStore(snapshot));
+        if (snapshot != null) {
+            for (Map.Entry<String, String> account : snapshot.accounts().entrySet()) {
+                accounts.restore(account.getKey(), account.getValue());
+            }
+        }
+        openJournal(bloodBank, snapshot == null ? 0 : snapshot.journalEpoch());
+        watchStock(bloodBank);
+        exportMetrics(bloodBank);
+        try {
+            otherSites = FederatedInventory.fromSystemProperties();
+        } catch (IllegalArgumentException e) {
+            System.out.println(TextColor.RED + "\n\t\t\t\t--- Other sites ignored: " + e.getMessage() + " ---" + TextColor.RESET);
+        }
+        if (args.length > 1 && args[0].equals("--import")) {
+            importDonations(bloodBank, args[1]);
+            bloodBank.close();
+            closeJournal();
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--server")) {
+            runServer(bloodBank, port);
+            return;
+        }
+        if (args.length > 1 && args[0].equals("--script")) {
+            runScript(bloodBank, args[1]);
+            bloodBank.close();
+            closeJournal();
+            return;
+        }
+        Scanner scanner = new Scanner(System.in);
+        bloodBank.setScanner(scanner);
+
+        while (true) {
+            compactJournalIfDue(bloodBank);
+            System.out.print(TextColor.BLUE);
+            System.out.println("\n\t\t\t\t================================================");
+            System.out.println("\t\t\t\t--     BBBB      AAA     N   N    K     K     --");
+            System.out.println("\t\t\t\t--     B   B    A   A    NN  N    K    K      --");
+            System.out.println("\t\t\t\t--     BBBB     AAAAA    N N N    K K K       --");
+            System.out.println("\t\t\t\t--     B   B    A   A    N  NN    K    K      --");
+            System.out.println("\t\t\t\t--     BBBB     A   A    N   N    K     K     --");
+            System.out.println("\t\t\t\t================================================");
+            System.out.print(TextColor.CYAN);
+            System.out.println("\t\t\t\t\t----- Blood Bank Login Menu -----\n");
+            System.out.println("\t\t\t\t\t1. Login");
+            System.out.println("\t\t\t\t\t2. Create New Account");  
+            System.out.println("\t\t\t\t\t3. Exit");
+            System.out.print(TextColor.YELLOW + "\n\t\t\t\t\tEnter Your Choice: " + TextColor.RESET);
+            // Error Handling for user input
+            int choice = -1;
+            try {
+                choice = scanner.nextInt();
+                scanner.nextLine();
+            } catch (InputMismatchException e) {
+                System.out.println(TextColor.RED + "\n\t\t\t\t--- Invalid input. Please enter a valid number ---" + TextColor.RESET);
+                scanner.nextLine();
+                continue;
+            }
+            switch (choice) {
+                case 1:
+                    clearScreen();
+                    if (donorLogin(scanner)) {
+                        handleDonorMenu(scanner, bloodBank);
+                    }
+                    break;
+                case 2:
+                    clearScreen();
+                    createDonorAccount(scanner);
+                    break;
+                case 3:
+                    System.out.println(TextColor.GREEN + "\n\t\t\t\t\tExiting the system...\n" + TextColor.RESET);
+                    scanner.close();
+                    bloodBank.close();
+                    closeJournal();
+                    System.exit(0);  // Exit the program
+                    break;
+                default:
+                    System.out.println(TextColor.RED + "\n\t\t\t\t\t--- Invalid choice. Please try again ---" + TextColor.RESET);
+            }
+        }
+    }
+    // ========================================= Snapshot and Journal (persistence) Methods =========================================
+    // Maps the last snapshot, or returns null when there is none or it fails validation
+    private static DonationSnapshot loadSnapshot() {
+        if (!Files.exists(snapshotPath)) {
+            return null;
+        }
+        try {
+            return DonationSnapshot.load(snapshotPath);
+        } catch (IOException e) {
+            System.out.println(TextColor.RED + "\n\t\t\t\t--- Snapshot rejected, starting from the journal only: " + e.getMessage() + " ---" + TextColor.RESET);
+            return null;
+        }
+    }
+
+    // Replays the journal into the bank and account map, then keeps it open for appends
+    private static void openJournal(BloodBank bloodBank, long snapshotEpoch) {
+        DonationJournal opened = new DonationJournal(
+                Paths.get(System.getProperty("bloodbank.journal", "bloodbank.journal")),
+                Math.max(0, Long.getLong("bloodbank.durabilityMillis", 50)),
+                Long.getLong("bloodbank.compactionBytes", 64L * 1024 * 1024));
+        try {
+            opened.open(new DonationJournal.Listener() {
+                @Override
+                public void donation(BloodType type, DonationKind kind, String donorName, int amount, int extra, BloodComponent component, long collectedAt,
+                        int sequence) {
+                    bloodBank.restoreDonation(type, kind, donorName, amount, extra, component, collectedAt, sequence);
+                }
+
+                @Override
+                public void account(String username, String credential) {
+                    accounts.restore(username, credential);
+                }
+
+                @Override
+                public void issued(BloodType type, int sequence) {
+                    bloodBank.restoreIssue(type, sequence);
+                }
+            }, snapshotEpoch);
+            journal = opened;
+            bloodBank.setJournal(opened);
+        } catch (IOException e) {
+            System.out.println(TextColor.RED + "\n\t\t\t\t--- Journal unavailable, data will not be saved: " + e.getMessage() + " ---" + TextColor.RESET);
+        }
+    }
+
+    // Bounds replay time: once the journal is large, snapshot the full state and restart the journal
+    static void compactJournalIfDue(BloodBank bloodBank) {
+        if (journal == null || !journal.isCompactionDue()) {
+            return;
+        }
+        try {
+            journal.checkpoint(epoch -> bloodBank.writeSnapshot(snapshotPath, accounts.credentials(), epoch));
+        } catch (IOException e) {
+            System.out.println(TextColor.RED + "\n\t\t\t\t--- Journal compaction failed: " + e.getMessage() + " ---" + TextColor.RESET);
+        }
+    }
+
+    static void closeJournal() {
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.close();
+        } catch (IOException e) {
+            System.out.println(TextColor.RED + "\n\t\t\t\t--- Journal could not be flushed: " + e.getMessage() + " ---" + TextColor.RESET);
+        }
+    }
+    // ========================================= Server Mode =========================================
+    // Queues an alert whenever a blood type's available ml crosses the threshold. Set after the journal replay,
+    // so a restart reports the types that are low right now instead of every crossing in the history.
+    private static void watchStock(BloodBank bloodBank) {
+        bloodBank.setStockListener((type, availableMl, thresholdMl, low) -> stockAlerts.add(low
+                ? TextColor.RED + "\t\t\t\t!!! Low stock: " + type.label() + " has " + availableMl + " ml (threshold " + thresholdMl + " ml) !!!" + TextColor.RESET
+                : TextColor.GREEN + "\t\t\t\t--- Restocked: " + type.label() + " has " + availableMl + " ml ---" + TextColor.RESET));
+        long thresholdMl = Long.getLong("bloodbank.lowStockMl", 1000);
+        for (BloodType type : BloodType.values()) {
+            bloodBank.setLowStockThreshold(type, thresholdMl);
+        }
+    }
+
+    // Publishes the bank's metrics over JMX (jconsole: MBean bloodbank:type=Metrics)
+    private static void exportMetrics(BloodBank bloodBank) {
+        metrics = bloodBank.getMetrics();
+        try {
+            metrics.export();
+        } catch (JMException e) {
+            System.out.println(TextColor.RED + "\n\t\t\t\t--- Metrics not exported over JMX: " + e.getMessage() + " ---" + TextColor.RESET);
+        }
+    }
+
+    private static void printStockAlerts() {
+        String alert;
+        while ((alert = stockAlerts.poll()) != null) {
+            System.out.println(alert);
+        }
+    }
+
+    // -1 when the argument is not a TCP port
+    static int parsePort(String text) {
+        try {
+            int port = Integer.parseInt(text.trim());
+            return port >= 0 && port <= 65535 ? port : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static void runServer(BloodBank bloodBank, int port) {
+        ScheduledExecutorService checkpoints = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "journal-checkpoint");
+            thread.setDaemon(true);
+            return thread;
+        });
+        checkpoints.scheduleWithFixedDelay(() -> compactJournalIfDue(bloodBank), 1, 1, TimeUnit.SECONDS);
+        checkpoints.scheduleWithFixedDelay(BloodBankManagementSystem::printStockAlerts, 1, 1, TimeUnit.SECONDS);
+        // Reservations of clients that disconnected before COMMIT or RELEASE
+        checkpoints.scheduleWithFixedDelay(bloodBank::expireReservations, 1, 1, TimeUnit.SECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            bloodBank.close();
+            closeJournal();
+        }));
+        try (BloodBankServer server = new BloodBankServer(bloodBank, port)) {
+            System.out.println(TextColor.GREEN + "\n\t\t\t\tBlood bank server listening on port " + server.port() + TextColor.RESET);
+            server.serve();
+        } catch (IOException e) {
+            System.out.println(TextColor.RED + "\n\t\t\t\t--- Server stopped: " + e.getMessage() + " ---" + TextColor.RESET);
+        }
+    }
+    // ========================================= Script Mode =========================================
+    // Runs protocol commands (see CommandSession) from a file, or from stdin when the source is "-", with no menus,
+    // prompts or colors, so a day's operations can be replayed in one go. Commands need no LOGIN; blank lines and
+    // lines starting with # are skipped. Replies go to stdout in the server's format, in 64 KB batches instead of
+    // one flush per command; a summary goes to stderr.
+    static void runScript(BloodBank bloodBank, String source) {
+        // Nobody reads the alert queue in script mode; STOCK reports the levels instead
+        bloodBank.setStockListener(null);
+        CommandSession session = new CommandSession(bloodBank, false, false);
+        long start = System.nanoTime();
+        int commands = 0;
+        try (BufferedReader in = source.equals("-")
+                ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8), 1 << 16)
+                : Files.newBufferedReader(Paths.get(source), StandardCharsets.UTF_8);
+             Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 1 << 16)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.trim().isEmpty() || line.trim().startsWith("#")) {
+                    continue;
+                }
+                commands++;
+                if ((commands & 4095) == 0) {
+                    compactJournalIfDue(bloodBank);
+                }
+                if (!session.execute(line, out)) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Script failed after " + commands + " commands: " + e.getMessage());
+            return;
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.err.printf("Script: %d commands, %d errors, %.2f s (%.0f commands/s)%n", commands, session.errorCount(), seconds,
+                commands / Math.max(seconds, 1e-9));
+    }
+    // ============================== Account Methods (shared by console and server) ==============================
+    static AccountStore accountStore() {
+        return accounts;
+    }
+
+    // Verifies a password (slow hash). Plaintext or weaker credentials are re-hashed and journaled on success.
+    static boolean authenticate(String username, String password) {
+        long start = metrics.start();
+        try {
+            if (!accounts.verify(username, password)) {
+                metrics.reject(BankMetrics.Rejection.LOGIN_FAILED);
+                return false;
+            }
+            if (accounts.needsRehash(username)) {
+                storeCredential(username, accounts.hashPassword(password), false);
+            }
+            return true;
+        } finally {
+            metrics.record(BankMetrics.Operation.LOGIN, start);
+        }
+    }
+
+    // Returns a session token for later commands, or null when the login is refused
+    static String login(String username, String password) {
+        return authenticate(username, password) ? accounts.openSession(username) : null;
+    }
+
+    // Returns false when the username is taken
+    static boolean registerAccount(String username, String password) {
+        if (accounts.contains(username)) {
+            return false;
+        }
+        // Hash before entering the journal gate so a checkpoint never waits on it
+        return storeCredential(username, accounts.hashPassword(password), true);
+    }
+
+    private static boolean storeCredential(String username, String credential, boolean newAccount) {
+        long stamp = journal == null ? 0 : journal.beginMutation();
+        try {
+            if (newAccount) {
+                if (!accounts.add(username, credential)) {
+                    return false;
+                }
+            } else {
+                accounts.restore(username, credential);
+            }
+            if (journal != null) {
+                try {
+                    journal.appendAccount(username, credential);
+                } catch (RuntimeException e) {
+                    // Not saved: a new account must not stay usable until the next restart (a re-hashed credential
+                    // is equivalent to the journaled one and is kept)
+                    if (newAccount) {
+                        accounts.remove(username);
+                    }
+                    throw e;
+                }
+            }
+            return true;
+        } finally {
+            if (journal != null) {
+                journal.endMutation(stamp);
+            }
+        }
+    }
+    // ========================================= CLear screen Method =========================================
+    private static void clearScreen() {
+        System.out.print("\033[H\033[2J");  
+        System.out.flush();
+    }
+    // ============================== Log In Account Method inside main class ==============================
+    private static boolean donorLogin(Scanner scanner) {
+        System.out.print(TextColor.BLUE);
+        System.out.println("\n\t\t\t\t\t======================");
+        System.out.println("\t\t\t\t\t---     Log In     ---");
+        System.out.println("\t\t\t\t\t======================");
+        System.out.print(TextColor.YELLOW);
+        System.out.print("\n\t\t\t\t\tEnter Donor Username: ");
+        String username = scanner.nextLine();
+        System.out.print("\t\t\t\t\tEnter Donor Password: ");
+        String password = scanner.nextLine();
+        if (accounts.isThrottled(username)) {
+            // Not checked at all while throttled, so nothing is said about the account
+            System.out.println(TextColor.RED + "\n\t\t\t\t\t--- Too many failed attempts. Please try again later ---" + TextColor.RESET);
+            return false;
+        }
+        // Check if username and password is valid
+        if (!authenticate(username, password)) {
+            System.out.println(TextColor.RED + "\n\t\t\t\t\tAccount Does Not Exist!" + TextColor.RESET);
+            return false;
+        }
+        return true;
+    }
+    // ============================== Create New Account Method inside main class ==============================
+    private static void createDonorAccount(Scanner scanner) {
+        System.out.print(TextColor.BLUE);
+        System.out.println("\n\t\t\t\t\t==================================");
+        System.out.println("\t\t\t\t\t---     Create New Account     ---");
+        System.out.println("\t\t\t\t\t==================================");
+        System.out.print(TextColor.YELLOW);
+        System.out.print("\n\t\t\t\t\tEnter New Username: ");
+        String username = scanner.nextLine();
+        if (accounts.contains(username)) {
+            System.out.println(TextColor.RED + "\t\t\t\t--- Username already exists. Please try a different one ---" + TextColor.RESET);
+            return;
+        }
+        System.out.print("\t\t\t\t\tEnter New Password: ");
+        String password = scanner.nextLine();
+
+        try {
+            if (!registerAccount(username, password)) {
+                System.out.println(TextColor.RED + "\t\t\t\t--- Username already exists. Please try a different one ---" + TextColor.RESET);
+                return;
+            }
+        } catch (UncheckedIOException e) {
+            System.out.println(TextColor.RED + "\t\t\t\t--- Account not saved: " + e.getMessage() + " ---" + TextColor.RESET);
+            return;
+        }
+        System.out.println(TextColor.GREEN + "\n\t\t\t\t\t--- Account created successfully! ---" + TextColor.RESET);
+    }
+    // ============================== Donor Menu Mehod inside main class ============================== 
+    private static void handleDonorMenu(Scanner scanner, BloodBank bloodBank) {
+        clearScreen();
+        while (true) {
+            compactJournalIfDue(bloodBank);
+            printStockAlerts();
+            System.out.print(TextColor.BLUE);
+            System.out.println("\n\t\t\t\t==================================================");
+            System.out.println("\t\t\t\t--     M     M    EEEEE    N     N    U   U     --");
+            System.out.println("\t\t\t\t--     M M M M    E        N N   N    U   U     --");
+            System.out.println("\t\t\t\t--     M  M  M    EEEE     N  N  N    U   U     --");
+            System.out.println("\t\t\t\t--     M     M    E        N   N N    U   U     --");
+            System.out.println("\t\t\t\t--     M     M    EEEEE    N     N    UUUUU     --");
+            System.out.println("\t\t\t\t==================================================");
+            System.out.print(TextColor.CYAN);
+            System.out.println("\t\t\t\t\t-------- Donor Menu --------\n");
+            System.out.println("\t\t\t\t\t1. Add Regular Donation");
+            System.out.println("\t\t\t\t\t2. Add Emergency Donation");
+            System.out.println("\t\t\t\t\t3. List Donations");
+            System.out.println("\t\t\t\t\t4. Find Compatible Donations");
+            System.out.println("\t\t\t\t\t5. Import Donations (CSV/TSV)");
+            System.out.println("\t\t\t\t\t6. Expiring Soon");
+            System.out.println("\t\t\t\t\t7. Request Units");
+            System.out.println("\t\t\t\t\t8. Stock Summary");
+            System.out.println("\t\t\t\t\t9. Metrics");
+            System.out.println("\t\t\t\t\t10. Donor Lookup");
+            System.out.println("\t\t\t\t\t11. Search Other Sites");
+            System.out.println("\t\t\t\t\t12. Trends");
+            System.out.println("\t\t\t\t\t13. Log out");
+            System.out.print(TextColor.YELLOW + "\n\t\t\t\t\tEnter your choice: " + TextColor.RESET);
+            // Error Handling
+            int choice = -1;
+            try {
+                choice = scanner.nextInt();
+                scanner.nextLine();
+            } catch (InputMismatchException e) {
+                System.out.println(TextColor.RED + "\n\t\t\t\t\t--- Invalid input. Please enter a valid number ---" + TextColor.RESET);
+                scanner.nextLine();
+                continue;
+            }
+            switch (choice) {
+                case 1:
+                    clearScreen();
+                    System.out.print(TextColor.BLUE);
+                    System.out.println("\n\t\t\t\t===========================================");
+                    System.out.println("\t\t\t\t---      Add Regular Donation Menu      ---");
+                    System.out.println("\t\t\t\t===========================================");
+                    addRegularDonation(scanner, bloodBank);
+                    break;
+                    case 2:
+                    clearScreen();
+                    System.out.print(TextColor.BLUE);
+                    System.out.println("\n\t\t\t\t=============================================");
+                    System.out.println("\t\t\t\t---      Add Emergency Donation Menu      ---");
+                    System.out.println("\t\t\t\t=============================================");
+                    addEmergencyDonation(scanner, bloodBank);
+                    break;
+                case 3:
+                    clearScreen();
+                    bloodBank.listDonations();
+                    break;
+                case 4:
+                    clearScreen();
+                    System.out.print(TextColor.BLUE);
+                    System.out.println("\n\t\t\t\t===========================================");
+                    System.out.println("\t\t\t\t---      Find Compatible Donations      ---");
+                    System.out.println("\t\t\t\t===========================================");
+                    findCompatibleDonations(scanner, bloodBank);
+                    break;
+                case 5:
+                    clearScreen();
+                    System.out.print(TextColor.BLUE);
+                    System.out.println("\n\t\t\t\t===========================================");
+                    System.out.println("\t\t\t\t---          Import Donations           ---");
+                    System.out.println("\t\t\t\t===========================================");
+                    System.out.print(TextColor.CYAN + "\n\t\t\t\tFile (CSV or TSV): ");
+                    importDonations(bloodBank, scanner.nextLine().trim());
+                    break;
+                case 6:
+                    clearScreen();
+                    System.out.print(TextColor.BLUE);
+                    System.out.println("\n\t\t\t\t===========================================");
+                    System.out.println("\t\t\t\t---            Expiring Soon            ---");
+                    System.out.println("\t\t\t\t===========================================");
+                    showExpiringSoon(scanner, bloodBank);
+                    break;
+                case 7:
+                    clearScreen();
+                    System.out.print(TextColor.BLUE);
+                    System.out.println("\n\t\t\t\t===========================================");
+                    System.out.println("\t\t\t\t---            Request Units            ---");
+                    System.out.println("\t\t\t\t===========================================");
+                    requestUnits(scanner, bloodBank);
+                    break;
+                case 8:
+                    clearScreen();
+                    System.out.print(TextColor.BLUE);
+                    System.out.println("\n\t\t\t\t===========================================");
+                    System.out.println("\t\t\t\t---            Stock Summary            ---");
+                    System.out.println("\t\t\t\t===========================================");
+                    showStockSummary(bloodBank);
+                    break;
+                case 9:
+                    clearScreen();
+                    System.out.print(TextColor.BLUE);
+                    System.out.println("\n\t\t\t\t===========================================");
+                    System.out.println("\t\t\t\t---               Metrics               ---");
+                    System.out.println("\t\t\t\t===========================================");
+                    showMetrics(scanner, bloodBank);
+                    break;
+                case 10:
+                    clearScreen();
+                    System.out.print(TextColor.BLUE);
+                    System.out.println("\n\t\t\t\t===========================================");
+                    System.out.println("\t\t\t\t---             Donor Lookup            ---");
+                    System.out.println("\t\t\t\t===========================================");
+                    lookUpDonor(scanner, bloodBank);
+                    break;
+                case 11:
+                    clearScreen();
+                    System.out.print(TextColor.BLUE);
+                    System.out.println("\n\t\t\t\t===========================================");
+                    System.out.println("\t\t\t\t---         Search Other Sites          ---");
+                    System.out.println("\t\t\t\t===========================================");
+                    searchOtherSites(scanner);
+                    break;
+                case 12:
+                    clearScreen();
+                    System.out.print(TextColor.BLUE);
+                    System.out.println("\n\t\t\t\t===========================================");
+                    System.out.println("\t\t\t\t---                Trends               ---");
+                    System.out.println("\t\t\t\t===========================================");
+                    showTrends(bloodBank);
+                    break;
+                case 13:
+                    clearScreen();
+                    return;
+                default:
+                    System.out.println(TextColor.RED + "\t\t\t\t\t--- Invalid choice. Please try again ---" + TextColor.RESET);
+            }
+        }
+    }
+    // ============================================ Add Regulator Donation Method =========================================== 
+    private static void addRegularDonation(Scanner scanner, BloodBank bloodBank) {
+        BloodType bloodType;
+        while (true) {
+            System.out.print(TextColor.CYAN + "\n\t\t\t\tBlood Type: ");
+            bloodType = BloodType.parse(scanner.nextLine());
+            if (bloodType != null) {
+                break;
+            } else {
+                System.out.println(TextColor.RED + "\t\t\t\t--- Invalid Blood Type (Blood Type: A+, A-, B+, B-, AB+, AB-, O+, O-) ---" + TextColor.RESET);
+            }
+        }
+        // Enter Donor Name
+        System.out.print("\t\t\t\tDonor Name: ");
+        String name = scanner.nextLine();
+        // Donation Amount with error handling
+        System.out.print("\t\t\t\tDonation Amount (ml): ");
+        int amount;
+        while (true) {
+            try {
+                amount = Integer.parseInt(scanner.nextLine());
+                if (amount > 0) {
+                    break;
+                } else {
+                    System.out.println(TextColor.RED + "\n\t\t\t\t--- Amount must be positive ---\n" + TextColor.RESET);
+                    System.out.print(TextColor.CYAN + "\t\t\t\tDonation Amount (ml): ");
+                }
+            } catch (NumberFormatException e) {
+                System.out.println(TextColor.RED + "\n\t\t\t\t--- Invalid input. Please enter a numeric value ---\n" + TextColor.RESET);
+                System.out.print(TextColor.CYAN + "\t\t\t\tDonation Amount (ml): ");
+            }
+        }
+        // Age with error handling
+        System.out.print("\t\t\t\tAge: ");
+        int age;
+        while (true) {
+            try {
+                age = Integer.parseInt(scanner.nextLine());
+                if (age >= 0) {
+                    break;
+                } else {
+                    System.out.println(TextColor.RED + "\t\t\t\t--- Age must be positive ---" + TextColor.RESET);
+                    System.out.print(TextColor.CYAN + "\t\t\t\tAge: ");
+                }
+            } catch (NumberFormatException e) {
+                System.out.println(TextColor.RED + "\t\t\t\t--- Invalid input. Please enter a numeric value ---\n" + TextColor.RESET);
+                    System.out.print(TextColor.CYAN + "\t\t\t\tAge: ");
+            }
+        }
+        // Add inputted data
+        RegularDonation donation = new RegularDonation(name, bloodType.label(), amount, age);
+        bloodBank.addDonation(donation);
+    }
+    // ============================================ Add Emergency Donation Method =========================================== 
+    private static void addEmergencyDonation(Scanner scanner, BloodBank bloodBank) {
+        BloodType bloodType;
+        while (true) {
+            System.out.print(TextColor.CYAN + "\n\t\t\t\tBlood Type: ");
+            bloodType = BloodType.parse(scanner.nextLine());
+            if (bloodType != null) {
+                break;
+            } else {
+                System.out.println(TextColor.RED + "\n\t\t\t\t--- Invalid Blood Type (Blood Type: A+, A-, B+, B-, AB+, AB-, O+, O-) ---" + TextColor.RESET);
+            }
+        }
+        // Donont Name
+        System.out.print("\t\t\t\tDonor Name: ");
+        String name = scanner.nextLine();
+        // Donation Amount with error handling
+        System.out.print("\t\t\t\tDonation Amount (ml): ");
+        int amount;
+        while (true) {
+            try {
+                amount = Integer.parseInt(scanner.nextLine());
+                if (amount > 0) {
+                    break;
+                } else {
+                    System.out.println(TextColor.RED + "\n\t\t\t\t--- Amount must be positive ---\n" + TextColor.RESET);
+                    System.out.print(TextColor.CYAN + "\t\t\t\tDonation Amount (ml): ");
+                }
+            } catch (NumberFormatException e) {
+                System.out.println(TextColor.RED + "\n\t\t\t\t--- Invalid input. Please enter a numeric value ---\n" + TextColor.RESET);
+                System.out.print(TextColor.CYAN + "\t\t\t\tDonation Amount (ml): ");
+            }
+        }
+        // Urgent with error handling
+        System.out.print("\t\t\t\tIs Urgent? (true/false): ");
+        boolean isUrgent;
+        while (true) {
+            String input = scanner.nextLine().toLowerCase();
+            if (input.equals("true") || input.equals("false")) {
+                isUrgent = Boolean.parseBoolean(input);
+                break;
+            } else {
+                System.out.println(TextColor.RED + "\n\t\t\t\t--- Invalid input. Please enter true or false ---\n" + TextColor.RESET);
+                System.out.print(TextColor.CYAN + "\t\t\t\tIs Urgent? (true/false): ");
+            }
+        }
+        // Add Emergency donation
+        EmergencyDonation donation = new EmergencyDonation(name, bloodType.label(), amount, isUrgent);
+        bloodBank.addDonation(donation);
+    }
+    // ============================================ Bulk Import Method =========================================== 
+    // Rows: kind, blood type, donor name, amount (ml), age or true/false. Rejected rows go to <file>.rejects.csv
+    private static void importDonations(BloodBank bloodBank, String file) {
+        Path source = Paths.get(file);
+        Path rejects = Paths.get(file + ".rejects.csv");
+        try {
+            BulkImporter.Report report = new BulkImporter(bloodBank).importFile(source, rejects);
+            System.out.println(TextColor.GREEN + "\n\t\t\t\t--- Imported " + report.accepted + " of " + report.rows + " rows ---" + TextColor.RESET);
+            if (report.rejected > 0) {
+                System.out.println(TextColor.RED + "\t\t\t\t--- " + report.rejected + " rows rejected, see " + rejects + " ---" + TextColor.RESET);
+            }
+            System.out.printf("\t\t\t\t%.0f rows/second%n", report.rowsPerSecond());
+        } catch (IOException | UncheckedIOException e) {
+            System.out.println(TextColor.RED + "\n\t\t\t\t--- Import failed: " + e.getMessage() + " ---" + TextColor.RESET);
+        }
+    }
+    // ============================== Expiring Soon Method inside main class ==============================
+    private static void showExpiringSoon(Scanner scanner, BloodBank bloodBank) {
+        System.out.print(TextColor.YELLOW + "\n\t\t\t\tWithin how many hours? (Enter for 72): " + TextColor.RESET);
+        String input = scanner.nextLine().trim();
+        int hours = 72;
+        if (!input.isEmpty()) {
+            try {
+                hours = Integer.parseInt(input);
+            } catch (NumberFormatException e) {
+                hours = -1;
+            }
+            if (hours <= 0) {
+                System.out.println(TextColor.RED + "\n\t\t\t\t--- Invalid number of hours ---" + TextColor.RESET);
+                return;
+            }
+        }
+        List<BloodDonation> expiring = bloodBank.getExpiringSoon(null, TimeUnit.HOURS.toMillis(hours));
+        if (expiring.isEmpty()) {
+            System.out.println(TextColor.GREEN + "\n\t\t\t\t--- No units expire within " + hours + " hours ---" + TextColor.RESET);
+            return;
+        }
+        StringBuilder listing = new StringBuilder("\n\t\t\t\t" + expiring.size() + " unit(s) expiring within " + hours + " hours:\n\n");
+        for (BloodDonation donation : expiring) {
+            listing.append("\t\t\t\t").append(donation).append('\n');
+        }
+        System.out.print(listing);
+    }
+    // ============================== Request Units Method inside main class ==============================
+    private static void requestUnits(Scanner scanner, BloodBank bloodBank) {
+        System.out.print(TextColor.CYAN + "\n\t\t\t\tRecipient Blood Type: ");
+        BloodType recipient = BloodType.parse(scanner.nextLine().toUpperCase());
+        if (recipient == null) {
+            System.out.println(TextColor.RED + "\n\t\t\t\t--- Invalid Blood Type (Blood Type: A+, A-, B+, B-, AB+, AB-, O+, O-) ---" + TextColor.RESET);
+            return;
+        }
+        System.out.print("\t\t\t\tRequired Amount (ml): ");
+        int requiredMl;
+        try {
+            requiredMl = Integer.parseInt(scanner.nextLine().trim());
+        } catch (NumberFormatException e) {
+            requiredMl = -1;
+        }
+        if (requiredMl <= 0) {
+            System.out.println(TextColor.RED + "\n\t\t\t\t--- Invalid amount ---" + TextColor.RESET);
+            return;
+        }
+        System.out.print("\t\t\t\tUse emergency stock? (y/n): ");
+        boolean allowEmergency = scanner.nextLine().trim().equalsIgnoreCase("y");
+        DonationAllocator.Reservation reservation = bloodBank.reserve(recipient, requiredMl, allowEmergency, RESERVATION_TIMEOUT_MILLIS);
+        if (reservation == null) {
+            System.out.println(TextColor.RED + "\n\t\t\t\t--- Not enough compatible stock for " + requiredMl + " ml ---" + TextColor.RESET);
+            return;
+        }
+        StringBuilder listing = new StringBuilder("\n\t\t\t\tReserved " + reservation.getUnitCount() + " unit(s), "
+                + reservation.getReservedMl() + " ml:\n\n");
+        for (BloodDonation donation : bloodBank.getReservedUnits(reservation)) {
+            listing.append("\t\t\t\t").append(donation).append('\n');
+        }
+        System.out.print(listing);
+        System.out.print(TextColor.YELLOW + "\n\t\t\t\tIssue these units? (y/n): " + TextColor.RESET);
+        if (!scanner.nextLine().trim().equalsIgnoreCase("y")) {
+            bloodBank.releaseReservation(reservation.getId());
+            System.out.println(TextColor.GREEN + "\n\t\t\t\t--- Reservation released ---" + TextColor.RESET);
+            return;
+        }
+        boolean issued;
+        try {
+            issued = bloodBank.commitReservation(reservation.getId());
+        } catch (UncheckedIOException e) {
+            bloodBank.releaseReservation(reservation.getId());
+            System.out.println(TextColor.RED + "\n\t\t\t\t--- Nothing issued, " + e.getMessage() + " ---" + TextColor.RESET);
+            return;
+        }
+        if (issued) {
+            System.out.println(TextColor.GREEN + "\n\t\t\t\t--- Units issued ---" + TextColor.RESET);
+        } else {
+            System.out.println(TextColor.RED + "\n\t\t\t\t--- Reservation timed out or a unit expired, nothing issued ---" + TextColor.RESET);
+        }
+    }
+    // ============================== Stock Summary Method inside main class ==============================
+    private static void showStockSummary(BloodBank bloodBank) {
+        StockLevels stock = bloodBank.getStockLevels();
+        StringBuilder table = new StringBuilder(1024);
+        table.append(TextColor.CYAN).append(String.format("%n\t\t\t\t%-6s %18s %18s %10s%n", "Type", "Regular", "Emergency", "Total"));
+        long total = 0;
+        for (BloodType type : BloodType.values()) {
+            long ml = stock.ml(type);
+            total += ml;
+            long threshold = stock.threshold(type);
+            table.append(threshold > 0 && ml < threshold ? TextColor.RED : TextColor.CYAN)
+                .append(String.format("\t\t\t\t%-6s %5d u %7d ml %5d u %7d ml %7d ml%s%n", type.label(),
+                    stock.units(type, DonationKind.REGULAR), stock.ml(type, DonationKind.REGULAR),
+                    stock.units(type, DonationKind.EMERGENCY), stock.ml(type, DonationKind.EMERGENCY),
+                    ml, threshold > 0 && ml < threshold ? "  LOW" : ""));
+        }
+        table.append(TextColor.CYAN).append(String.format("\t\t\t\t%-6s %18s %18s %7d ml%n", "All", "", "", total)).append(TextColor.RESET);
+        System.out.print(table);
+    }
+    // ============================================ Donor Lookup Method ===========================================
+    // Type-ahead: each prefix lists the matching names, a number picks one of them, a single match is shown directly
+    private static void lookUpDonor(Scanner scanner, BloodBank bloodBank) {
+        List<String> matches = Collections.emptyList();
+        while (true) {
+            System.out.print(TextColor.YELLOW + "\n\t\t\t\t" + (matches.isEmpty() ? "Donor name or its first letters" : "Number to pick a donor, or another prefix")
+                + " (Enter to return): " + TextColor.RESET);
+            String input = scanner.nextLine().trim();
+            if (input.isEmpty()) {
+                return;
+            }
+            int pick = -1;
+            try {
+                pick = Integer.parseInt(input) - 1;
+            } catch (NumberFormatException e) {
+                // Not a number: a prefix
+            }
+            if (pick >= 0 && pick < matches.size()) {
+                showDonorHistory(bloodBank, matches.get(pick));
+                return;
+            }
+            matches = bloodBank.searchDonors(input, DONOR_MATCHES);
+            if (matches.isEmpty()) {
+                System.out.println(TextColor.RED + "\n\t\t\t\t--- No donor names start with \"" + input + "\" ---" + TextColor.RESET);
+            } else if (matches.size() == 1) {
+                showDonorHistory(bloodBank, matches.get(0));
+                return;
+            } else {
+                System.out.print(TextColor.CYAN);
+                for (int i = 0; i < matches.size(); i++) {
+                    System.out.println("\t\t\t\t" + (i + 1) + ". " + matches.get(i));
+                }
+                if (matches.size() == DONOR_MATCHES) {
+                    System.out.println("\t\t\t\t(first " + DONOR_MATCHES + " shown; type more of the name to narrow down)");
+                }
+                System.out.print(TextColor.RESET);
+            }
+        }
+    }
+
+    private static void showDonorHistory(BloodBank bloodBank, String donorName) {
+        DonorRegistry.History history = bloodBank.getDonorHistory(donorName);
+        if (history == null) {
+            System.out.println(TextColor.RED + "\n\t\t\t\t--- No donations recorded for " + donorName + " ---" + TextColor.RESET);
+            return;
+        }
+        StringBuilder table = new StringBuilder(1024);
+        table.append(TextColor.CYAN).append("\n\t\t\t\tDonation history of ").append(donorName).append(":\n\n");
+        table.append(String.format("\t\t\t\t%-16s  %-4s  %-9s  %-11s  %6s%n", "Collected", "Type", "Kind", "Component", "Amount"));
+        for (int i = 0; i < history.size(); i++) {
+            table.append(String.format("\t\t\t\t%-16s  %-4s  %-9s  %-11s  %3d ml%n", BloodComponent.formatTime(history.collectedAt(i)),
+                history.type(i).label(), history.kind(i), history.component(i).label(), history.amount(i)));
+        }
+        table.append(String.format("%n\t\t\t\t%d donations, %d ml in total%n", history.size(), history.totalMl()));
+        long nextEligibleAt = bloodBank.getNextEligibleAt(donorName);
+        table.append(nextEligibleAt > System.currentTimeMillis()
+            ? TextColor.YELLOW + "\t\t\t\tCan donate again from " + BloodComponent.formatTime(nextEligibleAt)
+            : TextColor.GREEN + "\t\t\t\tEligible to donate again now");
+        table.append(TextColor.RESET).append('\n');
+        System.out.print(table);
+    }
+    // ============================================ Metrics Method ===========================================
+    private static void showMetrics(Scanner scanner, BloodBank bloodBank) {
+        BankMetrics bankMetrics = bloodBank.getMetrics();
+        while (true) {
+            StringBuilder dump = new StringBuilder(2048);
+            bankMetrics.dump(dump);
+            System.out.print(TextColor.CYAN);
+            for (String line : dump.toString().split("\n")) {
+                System.out.println("\t\t\t\t" + line);
+            }
+            System.out.print(TextColor.YELLOW + "\n\t\t\t\t[T] Turn instrumentation " + (bankMetrics.isEnabled() ? "off" : "on")
+                + "  [C] Clear  [R] Return: " + TextColor.RESET);
+            String input = scanner.nextLine().trim();
+            if (input.equalsIgnoreCase("T")) {
+                bankMetrics.setEnabled(!bankMetrics.isEnabled());
+            } else if (input.equalsIgnoreCase("C")) {
+                bankMetrics.reset();
+            } else if (input.equalsIgnoreCase("R")) {
+                return;
+            } else {
+                System.out.println(TextColor.RED + "\n\t\t\t\t--- Invalid choice. Please try again ---" + TextColor.RESET);
+            }
+        }
+    }
+    // ============================================ Trends Method ===========================================
+    // Intake over the last day and week, the stockout forecast, then weekly intake over the last TREND_WEEKS weeks
+    private static void showTrends(BloodBank bloodBank) {
+        StringBuilder table = new StringBuilder(4096);
+        table.append(TextColor.CYAN).append(String.format("%n\t\t\t\t%-4s  %9s  %10s  %9s  %10s  %9s  %9s  %9s  %-10s%n",
+            "Type", "Day units", "Day ml", "Wk units", "Wk ml", "Emergency", "Stock ml", "ml/day", "Stockout"));
+        for (DonationAnalytics.Trend trend : bloodBank.getTrends()) {
+            double days = trend.daysUntilStockout();
+            String stockout = Double.isNaN(days) ? "?" : Double.isInfinite(days) ? "never" : days == 0 ? "out" : String.format("%.1f days", days);
+            String perDay = Double.isNaN(trend.mlPerDay()) ? "?" : String.format("%+.0f", trend.mlPerDay());
+            String emergency = trend.weekUnits() == 0 ? "-" : String.format("%.0f%%", trend.emergencyShare() * 100);
+            table.append(days < TREND_WARN_DAYS ? TextColor.RED : TextColor.CYAN)
+                .append(String.format("\t\t\t\t%-4s  %9d  %10d  %9d  %10d  %9s  %9d  %9s  %-10s%n", trend.type().label(), trend.dayUnits(),
+                    trend.dayMl(), trend.weekUnits(), trend.weekMl(), emergency, trend.stockMl(), perDay, stockout));
+        }
+        long to = (System.currentTimeMillis() / DonationAnalytics.HOUR_MILLIS + 1) * DonationAnalytics.HOUR_MILLIS;
+        int weekHours = DonationAnalytics.WEEK_HOURS;
+        DonationAnalytics.IntakeHistory history = bloodBank.getIntakeHistory(
+            to - TREND_WEEKS * (long) weekHours * DonationAnalytics.HOUR_MILLIS, to, weekHours);
+        table.append(TextColor.CYAN).append(String.format("%n\t\t\t\tWeekly intake (units)%n\t\t\t\t%-16s", "Week from"));
+        for (BloodType type : BloodType.values()) {
+            table.append(String.format("  %5s", type.label()));
+        }
+        table.append('\n');
+        for (int bucket = 0; bucket < history.buckets(); bucket++) {
+            table.append("\t\t\t\t").append(String.format("%-16s", BloodComponent.formatTime(history.bucketStart(bucket))));
+            for (BloodType type : BloodType.values()) {
+                table.append(String.format("  %5d", history.units(bucket, type, DonationKind.REGULAR)
+                    + history.units(bucket, type, DonationKind.EMERGENCY)));
+            }
+            table.append('\n');
+        }
+        System.out.print(table.append(TextColor.RESET));
+    }
+    // ============================================ Search Other Sites Method ===========================================
+    // Asks every configured site at once; sites that do not answer within their timeout are listed, not waited for
+    private static void searchOtherSites(Scanner scanner) {
+        if (otherSites == null) {
+            System.out.println(TextColor.RED + "\n\t\t\t\t--- No other sites configured (-Dbloodbank.sites=Name=host:port:km,...) ---" + TextColor.RESET);
+            return;
+        }
+        BloodType bloodType;
+        while (true) {
+            System.out.print(TextColor.CYAN + "\n\t\t\t\tRecipient Blood Type: ");
+            bloodType = BloodType.parse(scanner.nextLine());
+            if (bloodType != null) {
+                break;
+            }
+            System.out.println(TextColor.RED + "\n\t\t\t\t--- Invalid Blood Type (Blood Type: A+, A-, B+, B-, AB+, AB-, O+, O-) ---" + TextColor.RESET);
+        }
+        FederatedInventory.Search search = otherSites.findCompatible(bloodType, null, SITE_UNITS);
+        StringBuilder table = new StringBuilder(2048);
+        table.append(TextColor.CYAN).append(String.format("%n\t\t\t\t%-14s %8s  %-4s  %-9s  %-11s  %6s  %-16s%n",
+            "Site", "Distance", "Type", "Kind", "Component", "Amount", "Expires"));
+        for (FederatedInventory.Match match : search.matches()) {
+            BloodDonation unit = match.unit();
+            table.append(String.format("\t\t\t\t%-14s %5.0f km  %-4s  %-9s  %-11s  %3d ml  %-16s%n", match.site().name(),
+                match.site().distanceKm(), unit.getBloodType(), DonationKind.of(unit), unit.getComponent().label(),
+                unit.getDonationAmount(), BloodComponent.formatTime(unit.getExpiresAt())));
+        }
+        if (search.matches().isEmpty()) {
+            table.append(TextColor.RED).append("\t\t\t\t--- No compatible units at the sites that answered ---\n");
+        }
+        table.append('\n');
+        for (FederatedInventory.Answer<List<BloodDonation>> answer : search.answers()) {
+            if (answer.status() == FederatedInventory.Status.OK) {
+                table.append(TextColor.CYAN).append(String.format("\t\t\t\t%-14s %d units in %.0f ms%n", answer.site().name(),
+                    answer.value().size(), answer.nanos() / 1e6));
+            } else {
+                table.append(TextColor.RED).append(String.format("\t\t\t\t%-14s %s: %s%n", answer.site().name(), answer.status(), answer.error()));
+            }
+        }
+        if (search.isPartial()) {
+            table.append(TextColor.YELLOW).append("\t\t\t\tPartial result: not every site answered\n");
+        }
+        System.out.print(table.append(TextColor.RESET));
+    }
+    // ============================================ Find Compatible Method =========================================== 
+    private static void findCompatibleDonations(Scanner scanner, BloodBank bloodBank) {
+        BloodType bloodType;
+        while (true) {
+            System.out.print(TextColor.CYAN + "\n\t\t\t\tBlood Type: ");
+            bloodType = BloodType.parse(scanner.nextLine());
+            if (bloodType != null) {
+                break;
+            } else {
+                System.out.println(TextColor.RED + "\n\t\t\t\t--- Invalid Blood Type (Blood Type: A+, A-, B+, B-, AB+, AB-, O+, O-) ---" + TextColor.RESET);
+            }
+        }
+        bloodBank.findCompatibleDonations(bloodType.label());
+    }
+}
@@ -0,0 +1,7 @@
+package bloodbank;
+
+interface BloodBankOperations {
+    void addDonation(BloodDonation donation);
+    void listDonations();
+    void findCompatibleDonations(String requiredBloodType);
+}
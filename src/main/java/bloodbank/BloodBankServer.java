@@ -0,0 +1,97 @@
+package bloodbank;
+
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// =================================================== Blood Bank Server ===================================================
+// Line-oriented TCP front end so several operators can work on one BloodBank at the same time. Each client
+// session runs on its own virtual thread when the JVM provides them (Java 21+), otherwise on a pooled thread.
+// The commands and replies are described in CommandSession; every command except REGISTER, LOGIN, RESUME and
+// QUIT needs a logged-in session.
+class BloodBankServer implements Closeable {
+    static final int DEFAULT_PORT = 5050;
+
+    private final BloodBank bloodBank;
+    private final ServerSocket serverSocket;
+    private final ExecutorService sessions = newSessionExecutor();
+
+    public BloodBankServer(BloodBank bloodBank, int port) throws IOException {
+        this.bloodBank = bloodBank;
+        this.serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(new InetSocketAddress(port), 1024);
+    }
+
+    public int port() {
+        return serverSocket.getLocalPort();
+    }
+
+    // Accepts clients until the server is closed
+    public void serve() throws IOException {
+        while (!serverSocket.isClosed()) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (SocketException e) {
+                if (serverSocket.isClosed()) {
+                    return;
+                }
+                throw e;
+            }
+            sessions.execute(() -> handle(socket));
+        }
+    }
+
+    // Runs serve() on a background thread (used by the load driver's embedded server)
+    public void start() {
+        Thread acceptor = new Thread(() -> {
+            try {
+                serve();
+            } catch (IOException e) {
+                System.err.println("Server stopped: " + e.getMessage());
+            }
+        }, "blood-bank-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        sessions.shutdownNow();
+    }
+
+    // Virtual threads when available, looked up reflectively so the code still builds and runs on Java 8
+    static ExecutorService newSessionExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "blood-bank-session");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    // ======================================== Session ========================================
+    private void handle(Socket socket) {
+        try (Socket client = socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream(), StandardCharsets.UTF_8));
+             BufferedWriter out = new BufferedWriter(new OutputStreamWriter(client.getOutputStream(), StandardCharsets.UTF_8))) {
+            client.setTcpNoDelay(true);
+            CommandSession session = new CommandSession(bloodBank, true, true);
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (!session.execute(line, out)) {
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            // Client went away; nothing to clean up beyond the socket
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package bloodbank;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+// =================================================== Blood Component Enum ===================================================
+// Shelf life from collection, per component (whole blood in CPDA-1, red cells in additive solution,
+// platelets at room temperature, frozen plasma)
+enum BloodComponent {
+    WHOLE_BLOOD("Whole blood", 35 * 24 * 60, 56),
+    RED_CELLS("Red cells", 42 * 24 * 60, 112),
+    PLATELETS("Platelets", 5 * 24 * 60, 7),
+    PLASMA("Plasma", 365 * 24 * 60, 28);
+
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+
+    private final String label;
+    private final int shelfLifeMinutes;
+    // Minimum days before the donor may donate again after giving this component
+    private final int recoveryDays;
+
+    BloodComponent(String label, int shelfLifeMinutes, int recoveryDays) {
+        this.label = label;
+        this.shelfLifeMinutes = shelfLifeMinutes;
+        this.recoveryDays = recoveryDays;
+    }
+
+    public String label() { return label; }
+
+    public int shelfLifeMinutes() { return shelfLifeMinutes; }
+
+    public long shelfLifeMillis() { return shelfLifeMinutes * 60_000L; }
+
+    public int recoveryDays() { return recoveryDays; }
+
+    public int recoveryMinutes() { return recoveryDays * 24 * 60; }
+
+    public static BloodComponent parse(String text) {
+        if (text == null) {
+            return null;
+        }
+        switch (text.trim().toUpperCase().replace(' ', '_')) {
+            case "WHOLE_BLOOD": case "WHOLE": case "W": return WHOLE_BLOOD;
+            case "RED_CELLS": case "RBC": case "R": return RED_CELLS;
+            case "PLATELETS": case "PLT": case "P": return PLATELETS;
+            case "PLASMA": case "FFP": case "L": return PLASMA;
+            default: return null;
+        }
+    }
+
+    // Local date and time, as shown in listings
+    public static String formatTime(long epochMillis) {
+        return TIME_FORMAT.format(Instant.ofEpochMilli(epochMillis).atZone(ZoneId.systemDefault()));
+    }
+
+    static void appendTime(StringBuilder out, long epochMillis) {
+        TIME_FORMAT.formatTo(Instant.ofEpochMilli(epochMillis).atZone(ZoneId.systemDefault()), out);
+    }
+}
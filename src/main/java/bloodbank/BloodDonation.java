@@ -0,0 +1,59 @@
+package bloodbank;
+
+// Abstract class
+abstract class BloodDonation {
+    private String donorName;
+    private String bloodType;
+    private int donationAmount;
+    private BloodComponent component;
+    // Collection time in epoch milliseconds (kept to the minute by the store)
+    private long collectedAt;
+
+    // Whole blood collected now
+    public BloodDonation(String donorName, String bloodType, int donationAmount) {
+        this(donorName, bloodType, donationAmount, BloodComponent.WHOLE_BLOOD, System.currentTimeMillis());
+    }
+
+    public BloodDonation(String donorName, String bloodType, int donationAmount, BloodComponent component, long collectedAt) {
+        this.donorName = donorName;
+        this.bloodType = bloodType;
+        this.donationAmount = donationAmount;
+        this.component = component;
+        this.collectedAt = collectedAt;
+    }
+
+    public abstract boolean isEligibleToDonate();
+
+    // Every intake path goes through isEligibleToDonate, so a zero, negative or oversized amount never reaches stock
+    protected boolean hasValidAmount() {
+        return donationAmount > 0 && donationAmount <= 470;
+    }
+
+    // Eligibility including the recovery interval since the donor's previous donation (history lookup, no scan)
+    public boolean isEligibleToDonate(DonorRegistry donors) {
+        return isEligibleToDonate() && donors.intervalAllows(donorName, component, collectedAt);
+    }
+
+    public String getDonorName() { return donorName; }
+    public void setDonorName(String donorName) { this.donorName = donorName; }
+
+    public String getBloodType() { return bloodType; }
+    public void setBloodType(String bloodType) { this.bloodType = bloodType; }
+
+    public int getDonationAmount() { return donationAmount; }
+    public void setDonationAmount(int donationAmount) { this.donationAmount = donationAmount; }
+
+    public BloodComponent getComponent() { return component; }
+
+    public long getCollectedAt() { return collectedAt; }
+
+    public long getExpiresAt() { return collectedAt + component.shelfLifeMillis(); }
+
+    public boolean isExpired(long now) { return now >= getExpiresAt(); }
+
+    @Override
+    public String toString() {
+        return "Donor: " + donorName + "\n\t\t\t\t    Blood Type: " + bloodType + "\n\t\t\t\t    Amount: " + donationAmount + "ml"
+            + "\n\t\t\t\t    Component: " + component.label() + ", expires " + BloodComponent.formatTime(getExpiresAt());
+    }
+}
@@ -0,0 +1,88 @@
+package bloodbank;
+
+import java.util.*;
+
+// =================================================== Blood Type Enum ===================================================
+// ABO group and Rh(D) factor. Journals and snapshots store the ordinals, so the order of the constants is fixed.
+enum BloodType {
+    A_POS("A+", 0b101), B_POS("B+", 0b110), AB_POS("AB+", 0b111), O_POS("O+", 0b100),
+    A_NEG("A-", 0b001), B_NEG("B-", 0b010), AB_NEG("AB-", 0b011), O_NEG("O-", 0b000);
+
+    private static final BloodType[] VALUES = values();
+    // Per recipient ordinal: bit d is set when donor type d is compatible (red cells: the donor's A, B and D antigens
+    // must all be present on the recipient's cells; plasma: the donor's ABO antibodies must not meet the
+    // recipient's A or B antigens, Rh does not matter)
+    private static final byte[] RED_CELL_DONORS = new byte[VALUES.length];
+    private static final byte[] PLASMA_DONORS = new byte[VALUES.length];
+    private static final BloodType[][] COMPATIBLE_DONORS = new BloodType[VALUES.length][];
+
+    static {
+        for (BloodType recipient : VALUES) {
+            List<BloodType> donors = new ArrayList<>();
+            for (BloodType donor : VALUES) {
+                if ((donor.antigens & ~recipient.antigens) == 0) {
+                    RED_CELL_DONORS[recipient.ordinal()] |= 1 << donor.ordinal();
+                    donors.add(donor);
+                }
+                if ((recipient.antigens & ~donor.antigens & 0b011) == 0) {
+                    PLASMA_DONORS[recipient.ordinal()] |= 1 << donor.ordinal();
+                }
+            }
+            COMPATIBLE_DONORS[recipient.ordinal()] = donors.toArray(new BloodType[0]);
+        }
+    }
+
+    private final String label;
+    // Bit 0: A antigen, bit 1: B antigen, bit 2: Rh(D)
+    private final int antigens;
+
+    BloodType(String label, int antigens) {
+        this.label = label;
+        this.antigens = antigens;
+    }
+
+    public String label() {
+        return label;
+    }
+
+    // Parse user input once so lookups work on the enum instead of string compares ("A+", "o-", "AB_NEG", ...)
+    public static BloodType parse(String text) {
+        if (text == null) {
+            return null;
+        }
+        switch (text.trim().toUpperCase()) {
+            case "A+": case "A_POS": return A_POS;
+            case "A-": case "A_NEG": return A_NEG;
+            case "B+": case "B_POS": return B_POS;
+            case "B-": case "B_NEG": return B_NEG;
+            case "AB+": case "AB_POS": return AB_POS;
+            case "AB-": case "AB_NEG": return AB_NEG;
+            case "O+": case "O_POS": return O_POS;
+            case "O-": case "O_NEG": return O_NEG;
+            default: return null;
+        }
+    }
+
+    public static BloodType ofOrdinal(int ordinal) {
+        return VALUES[ordinal];
+    }
+
+    // Red cell compatible donor types as a bit set over ordinals
+    public byte donorMask() {
+        return RED_CELL_DONORS[ordinal()];
+    }
+
+    // Plasma compatible donor types as a bit set over ordinals
+    public byte plasmaDonorMask() {
+        return PLASMA_DONORS[ordinal()];
+    }
+
+    public boolean canReceiveFrom(BloodType donor) {
+        return (RED_CELL_DONORS[ordinal()] & (1 << donor.ordinal())) != 0;
+    }
+
+    // Red cell compatible donor types, in ordinal order (shared array, do not modify)
+    public BloodType[] compatibleDonors() {
+        return COMPATIBLE_DONORS[ordinal()];
+    }
+}
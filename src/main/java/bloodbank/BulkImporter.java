@@ -0,0 +1,428 @@
+package bloodbank;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoField;
+import java.util.*;
+import java.util.concurrent.*;
+
+// =================================================== Bulk Importer ===================================================
+// Streams a CSV or TSV export of a donation drive into a BloodBank. The file is read in large chunks and rows are
+// parsed straight from the bytes; only donor names become Strings. Parsed batches are validated in parallel on the
+// common fork/join pool and inserted in file order, one store lock and one journal stamp per batch.
+//
+// Columns: kind (REGULAR|EMERGENCY), blood type (A+, A-, ..., O-), donor name, amount in ml, age (regular) or
+// true/false (emergency), then optionally component (WHOLE_BLOOD|RED_CELLS|PLATELETS|PLASMA, default whole blood)
+// and collection time (yyyy-MM-dd or yyyy-MM-dd HH:mm local time, default the time of import). Units already past
+// their shelf life are rejected, and so are donations within the recovery interval of another donation by the same
+// donor (checked in file order, against earlier rows of the file too). Fields may be double-quoted ("" inside
+// quotes is a literal quote). An optional header row is skipped.
+class BulkImporter {
+    private static final int BATCH_ROWS = 8192;
+    private static final int READ_BUFFER_BYTES = 1 << 20;
+    private static final int MIN_FIELDS = 5;
+    private static final int FIELDS = 7;
+    private static final DateTimeFormatter COLLECTED_FORMAT = new DateTimeFormatterBuilder()
+            .appendPattern("yyyy-MM-dd").optionalStart().appendPattern(" HH:mm").optionalEnd()
+            .parseDefaulting(ChronoField.HOUR_OF_DAY, 0).parseDefaulting(ChronoField.MINUTE_OF_HOUR, 0).toFormatter();
+    private static final byte[] REGULAR = ascii("REGULAR");
+    private static final byte[] REGULAR_SHORT = ascii("R");
+    private static final byte[] EMERGENCY = ascii("EMERGENCY");
+    private static final byte[] EMERGENCY_SHORT = ascii("E");
+    private static final byte[] TRUE = ascii("true");
+    private static final byte[] FALSE = ascii("false");
+    // Label ("A+") and enum name ("A_POS") of each blood type, by ordinal
+    private static final byte[][] TYPE_LABELS = new byte[BloodType.values().length][];
+    private static final byte[][] TYPE_NAMES = new byte[BloodType.values().length][];
+    static {
+        for (BloodType type : BloodType.values()) {
+            TYPE_LABELS[type.ordinal()] = ascii(type.label());
+            TYPE_NAMES[type.ordinal()] = ascii(type.name());
+        }
+    }
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    // Outcome of one import
+    static class Report {
+        long rows;
+        long accepted;
+        long rejected;
+        long elapsedNanos;
+
+        double rowsPerSecond() {
+            return elapsedNanos == 0 ? 0 : rows / (elapsedNanos / 1e9);
+        }
+    }
+
+    private final BloodBank bloodBank;
+    private final ExecutorService workers;
+    private final int maxBatchesInFlight;
+
+    public BulkImporter(BloodBank bloodBank) {
+        this(bloodBank, ForkJoinPool.commonPool(), 2 * Runtime.getRuntime().availableProcessors());
+    }
+
+    public BulkImporter(BloodBank bloodBank, ExecutorService workers, int maxBatchesInFlight) {
+        this.bloodBank = bloodBank;
+        this.workers = workers;
+        this.maxBatchesInFlight = maxBatchesInFlight;
+    }
+
+    // Imports every valid row and writes "row,reason" lines for the rest to the reject report
+    public Report importFile(Path source, Path rejectReport) throws IOException {
+        byte delimiter = source.toString().toLowerCase().endsWith(".tsv") ? (byte) '\t' : (byte) ',';
+        Report report = new Report();
+        long start = System.nanoTime();
+        ArrayDeque<Future<Batch>> inFlight = new ArrayDeque<>();
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             BufferedWriter rejects = Files.newBufferedWriter(rejectReport, StandardCharsets.UTF_8)) {
+            rejects.write("row,reason\n");
+            RowParser parser = new RowParser(delimiter);
+            Batch batch = new Batch();
+            ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_BYTES);
+            byte[] bytes = buffer.array();
+            long rowNumber = 0;
+            boolean eof = false;
+            while (!eof) {
+                eof = in.read(buffer) < 0;
+                int limit = buffer.position();
+                int lineStart = 0;
+                for (int i = 0; i < limit; i++) {
+                    if (bytes[i] == '\n' && !parser.insideQuotes(bytes, lineStart, i)) {
+                        rowNumber++;
+                        parser.parse(bytes, lineStart, i, rowNumber, batch);
+                        lineStart = i + 1;
+                        if (batch.size == BATCH_ROWS) {
+                            submit(batch, inFlight, report, rejects);
+                            batch = new Batch();
+                        }
+                    }
+                }
+                if (eof && lineStart < limit) {
+                    rowNumber++;
+                    parser.parse(bytes, lineStart, limit, rowNumber, batch);
+                    lineStart = limit;
+                }
+                if (lineStart == 0 && limit == bytes.length) {
+                    throw new IOException("Row " + (rowNumber + 1) + " is longer than " + READ_BUFFER_BYTES + " bytes");
+                }
+                // Keep the partial last line for the next read
+                System.arraycopy(bytes, lineStart, bytes, 0, limit - lineStart);
+                buffer.position(limit - lineStart);
+            }
+            if (batch.size > 0) {
+                submit(batch, inFlight, report, rejects);
+            }
+            while (!inFlight.isEmpty()) {
+                complete(inFlight.poll(), report, rejects);
+            }
+        }
+        report.elapsedNanos = System.nanoTime() - start;
+        return report;
+    }
+
+    // Hands the batch to the workers; when too many are pending, the oldest one is finished first so memory stays bounded
+    private void submit(Batch batch, ArrayDeque<Future<Batch>> inFlight, Report report, Writer rejects) throws IOException {
+        inFlight.add(workers.submit(() -> batch.validate()));
+        if (inFlight.size() >= maxBatchesInFlight) {
+            complete(inFlight.poll(), report, rejects);
+        }
+    }
+
+    private void complete(Future<Batch> pending, Report report, Writer rejects) throws IOException {
+        Batch batch;
+        try {
+            batch = pending.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Import interrupted");
+        } catch (ExecutionException e) {
+            throw new IOException("Validation failed", e.getCause());
+        }
+        IntList tooSoon = new IntList();
+        report.accepted += bloodBank.addImportedDonations(batch.accepted, tooSoon);
+        for (int i = 0; i < tooSoon.size(); i++) {
+            batch.reasons[batch.acceptedRows[tooSoon.get(i)]] = "too soon: within the recovery interval of another donation by the same donor";
+        }
+        for (int i = 0; i < batch.size; i++) {
+            if (batch.reasons[i] != null) {
+                rejects.write(Long.toString(batch.rowNumbers[i]));
+                rejects.write(',');
+                rejects.write(batch.reasons[i]);
+                rejects.write('\n');
+                report.rejected++;
+            }
+        }
+        report.rows += batch.size;
+    }
+
+    // ======================================== Batch (parsed rows as columns) ========================================
+    private static class Batch {
+        final long[] rowNumbers = new long[BATCH_ROWS];
+        final byte[] kinds = new byte[BATCH_ROWS];
+        final byte[] types = new byte[BATCH_ROWS];
+        final int[] amounts = new int[BATCH_ROWS];
+        final int[] extras = new int[BATCH_ROWS];
+        final byte[] components = new byte[BATCH_ROWS];
+        final long[] collected = new long[BATCH_ROWS];
+        final String[] names = new String[BATCH_ROWS];
+        // Null while the row is still acceptable
+        final String[] reasons = new String[BATCH_ROWS];
+        final List<BloodDonation> accepted = new ArrayList<>();
+        // Batch row of each accepted donation
+        final int[] acceptedRows = new int[BATCH_ROWS];
+        int size;
+
+        // Runs on a worker: applies the same eligibility rules as the console through the donation classes
+        Batch validate() {
+            BloodType[] bloodTypes = BloodType.values();
+            BloodComponent[] bloodComponents = BloodComponent.values();
+            long now = System.currentTimeMillis();
+            for (int i = 0; i < size; i++) {
+                if (reasons[i] != null) {
+                    continue;
+                }
+                BloodDonation donation;
+                BloodComponent component = bloodComponents[components[i]];
+                long collectedAt = collected[i] == Long.MIN_VALUE ? now : collected[i];
+                if (kinds[i] == DonationKind.REGULAR.ordinal()) {
+                    donation = new RegularDonation(names[i], bloodTypes[types[i]].label(), amounts[i], extras[i], component, collectedAt);
+                } else {
+                    donation = new EmergencyDonation(names[i], bloodTypes[types[i]].label(), amounts[i], extras[i] != 0, component, collectedAt);
+                }
+                if (donation.isExpired(now)) {
+                    reasons[i] = "expired: collected more than " + component.shelfLifeMinutes() / (24 * 60) + " days ago";
+                } else if (donation.isEligibleToDonate()) {
+                    acceptedRows[accepted.size()] = i;
+                    accepted.add(donation);
+                } else if (donation instanceof RegularDonation) {
+                    reasons[i] = "not eligible: age must be 18-65 and amount at most 470 ml";
+                } else {
+                    reasons[i] = "not eligible: must be urgent and amount at most 470 ml";
+                }
+            }
+            return this;
+        }
+    }
+
+    // ======================================== Row Parser ========================================
+    // Reuses one field-offset array; allocates only the donor name (and unquoted copies of quoted fields)
+    private static class RowParser {
+        private final byte delimiter;
+        private final int[] starts = new int[FIELDS];
+        private final int[] ends = new int[FIELDS];
+        private boolean firstRow = true;
+
+        RowParser(byte delimiter) {
+            this.delimiter = delimiter;
+        }
+
+        // A newline inside an open quote belongs to the field, not the end of the row
+        boolean insideQuotes(byte[] bytes, int from, int to) {
+            boolean quoted = false;
+            for (int i = from; i < to; i++) {
+                if (bytes[i] == '"') {
+                    quoted = !quoted;
+                }
+            }
+            return quoted;
+        }
+
+        void parse(byte[] bytes, int from, int to, long rowNumber, Batch batch) {
+            if (to > from && bytes[to - 1] == '\r') {
+                to--;
+            }
+            boolean header = firstRow;
+            firstRow = false;
+            if (to == from) {
+                return;
+            }
+            int row = batch.size;
+            int fields = split(bytes, from, to);
+            if (header && fields > 0 && kind(bytes, 0) < 0) {
+                return;
+            }
+            batch.size++;
+            batch.rowNumbers[row] = rowNumber;
+            batch.reasons[row] = null;
+            if (fields < MIN_FIELDS || fields > FIELDS) {
+                batch.reasons[row] = "malformed: expected " + MIN_FIELDS + " to " + FIELDS + " fields but found " + fields;
+                return;
+            }
+            int kind = kind(bytes, 0);
+            int type = type(bytes, 1);
+            int amount = number(bytes, 3);
+            if (kind < 0) {
+                batch.reasons[row] = "invalid donation kind";
+                return;
+            }
+            if (type < 0) {
+                batch.reasons[row] = "invalid blood type";
+                return;
+            }
+            if (amount <= 0) {
+                batch.reasons[row] = "invalid amount";
+                return;
+            }
+            int extra;
+            if (kind == DonationKind.REGULAR.ordinal()) {
+                extra = number(bytes, 4);
+                if (extra < 0) {
+                    batch.reasons[row] = "invalid age";
+                    return;
+                }
+            } else if (equalsIgnoreCase(bytes, 4, TRUE)) {
+                extra = 1;
+            } else if (equalsIgnoreCase(bytes, 4, FALSE)) {
+                extra = 0;
+            } else {
+                batch.reasons[row] = "invalid urgency (expected true or false)";
+                return;
+            }
+            BloodComponent component = BloodComponent.WHOLE_BLOOD;
+            if (fields > 5 && trimEnd(bytes, 5) > trimStart(bytes, 5)) {
+                component = BloodComponent.parse(text(bytes, 5));
+                if (component == null) {
+                    batch.reasons[row] = "invalid component";
+                    return;
+                }
+            }
+            long collectedAt = Long.MIN_VALUE;
+            if (fields > 6 && trimEnd(bytes, 6) > trimStart(bytes, 6)) {
+                try {
+                    collectedAt = LocalDateTime.parse(text(bytes, 6), COLLECTED_FORMAT).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+                } catch (DateTimeParseException e) {
+                    batch.reasons[row] = "invalid collection time (expected yyyy-MM-dd or yyyy-MM-dd HH:mm)";
+                    return;
+                }
+            }
+            batch.kinds[row] = (byte) kind;
+            batch.types[row] = (byte) type;
+            batch.components[row] = (byte) component.ordinal();
+            batch.collected[row] = collectedAt;
+            batch.amounts[row] = amount;
+            batch.extras[row] = extra;
+            batch.names[row] = text(bytes, 2);
+        }
+
+        // Records field boundaries; quotes are kept in the offsets and stripped when a field is read
+        private int split(byte[] bytes, int from, int to) {
+            int count = 0;
+            int start = from;
+            boolean quoted = false;
+            for (int i = from; i <= to; i++) {
+                if (i < to && bytes[i] == '"') {
+                    quoted = !quoted;
+                } else if (i == to || (bytes[i] == delimiter && !quoted)) {
+                    if (count < FIELDS) {
+                        starts[count] = start;
+                        ends[count] = i;
+                    }
+                    count++;
+                    start = i + 1;
+                }
+            }
+            return count;
+        }
+
+        private int kind(byte[] bytes, int field) {
+            if (equalsIgnoreCase(bytes, field, REGULAR) || equalsIgnoreCase(bytes, field, REGULAR_SHORT)) {
+                return DonationKind.REGULAR.ordinal();
+            }
+            if (equalsIgnoreCase(bytes, field, EMERGENCY) || equalsIgnoreCase(bytes, field, EMERGENCY_SHORT)) {
+                return DonationKind.EMERGENCY.ordinal();
+            }
+            return -1;
+        }
+
+        private int type(byte[] bytes, int field) {
+            for (int t = 0; t < TYPE_NAMES.length; t++) {
+                if (equalsIgnoreCase(bytes, field, TYPE_LABELS[t]) || equalsIgnoreCase(bytes, field, TYPE_NAMES[t])) {
+                    return t;
+                }
+            }
+            return -1;
+        }
+
+        // Non-negative decimal, or -1 when the field is not a number
+        private int number(byte[] bytes, int field) {
+            int start = trimStart(bytes, field);
+            int end = trimEnd(bytes, field);
+            if (start == end || end - start > 9) {
+                return -1;
+            }
+            int value = 0;
+            for (int i = start; i < end; i++) {
+                int digit = bytes[i] - '0';
+                if (digit < 0 || digit > 9) {
+                    return -1;
+                }
+                value = value * 10 + digit;
+            }
+            return value;
+        }
+
+        private String text(byte[] bytes, int field) {
+            int start = trimStart(bytes, field);
+            int end = trimEnd(bytes, field);
+            if (end - start >= 2 && bytes[start] == '"' && bytes[end - 1] == '"') {
+                String inner = new String(bytes, start + 1, end - start - 2, StandardCharsets.UTF_8);
+                return inner.replace("\"\"", "\"");
+            }
+            return new String(bytes, start, end - start, StandardCharsets.UTF_8);
+        }
+
+        private boolean equalsIgnoreCase(byte[] bytes, int field, byte[] expected) {
+            int start = trimStart(bytes, field);
+            int end = trimEnd(bytes, field);
+            if (end - start >= 2 && bytes[start] == '"' && bytes[end - 1] == '"') {
+                start++;
+                end--;
+            }
+            if (end - start != expected.length) {
+                return false;
+            }
+            for (int i = 0; i < expected.length; i++) {
+                int b = bytes[start + i];
+                if (b >= 'a' && b <= 'z') {
+                    b -= 'a' - 'A';
+                }
+                int e = expected[i];
+                if (e >= 'a' && e <= 'z') {
+                    e -= 'a' - 'A';
+                }
+                if (b != e) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private int trimStart(byte[] bytes, int field) {
+            int i = starts[field];
+            while (i < ends[field] && bytes[i] == ' ') {
+                i++;
+            }
+            return i;
+        }
+
+        private int trimEnd(byte[] bytes, int field) {
+            int i = ends[field];
+            while (i > starts[field] && bytes[i - 1] == ' ') {
+                i--;
+            }
+            return i;
+        }
+    }
+}
@@ -0,0 +1,536 @@
+package bloodbank;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+// =================================================== Command Session ===================================================
+// Line-oriented command protocol shared by the TCP server (one session per connection) and script mode (one
+// session for the whole script). Replies are plain text without colors, so they can be parsed by programs.
+//
+// Protocol: one command per line; every reply ends with a line starting with OK or ERR.
+//   REGISTER <user> <password>
+//   LOGIN <user> <password>          replies "OK logged in <token>"
+//   RESUME <token>                   continues a session from an earlier connection without the password
+//   LOGOUT
+//   ADD REGULAR <type> <ml> <age> <donor name>
+//   ADD EMERGENCY <type> <ml> <true|false> <donor name>
+//   LIST <REGULAR|EMERGENCY>
+//   FIND <type> [REGULAR|EMERGENCY]
+//   UNITS <type> <limit> [REGULAR|EMERGENCY]   compatible units, soonest expiry first, one "UNIT <kind> <type> <ml>
+//                                    <age|urgent> <component> <collected epoch millis> <donor name>" line each
+//                                    (used by other sites, see FederatedInventory)
+//   EXPIRING <hours> [type]          available units expiring within the given hours, soonest first
+//   STOCK                            one "STOCK <type> <regular units> <regular ml> <emergency units> <emergency ml>
+//                                    [LOW]" line per blood type
+//   RESERVE <type> <ml> [EMERGENCY] [seconds]   reserves compatible units (FEFO), replies "OK reserved <id> <ml>"
+//   COMMIT <id>                      issues the reserved units
+//   RELEASE <id>                     returns the reserved units to stock
+//   DONORS <prefix>                  type-ahead: one "DONOR <name>" line per donor whose name starts with the prefix
+//                                    (ignoring case), alphabetically, at most 20
+//   HISTORY <donor name>             one "HISTORY <yyyy-MM-dd HH:mm> <type> <kind> <component> <ml>" line per donation,
+//                                    oldest first, then "OK <count> next <yyyy-MM-dd HH:mm>" (when they may donate again)
+//   METRICS [ON|OFF|RESET]           latency, rejection and gauge lines (see BankMetrics.dump); ON/OFF switch
+//                                    the instrumentation, RESET clears it
+//   TRENDS                           one "TREND <type> <units> <ml> <week units> <week ml> <week emergency units>
+//                                    <stock ml> <ml per day|?> <days until stockout|never|?>" line per blood type: intake
+//                                    over the last 24 hours and 7 days, stock trend and forecast (see DonationAnalytics)
+//   INTAKE <days> [bucket hours]     stored intake over the last days per bucket (default 24 hours): one "INTAKE
+//                                    <yyyy-MM-dd HH:mm> <type> <regular units> <regular ml> <emergency units>
+//                                    <emergency ml>" line per bucket and blood type with any, oldest first
+//   EVENTS <sequence> [max]          accepted and rejected donations from that sequence on (see DonationEvents), at
+//                                    most max (default 100, up to 1000): one "EVENT <sequence> <ACCEPTED|reason> <kind>
+//                                    <type|?> <ml> <age|urgent> <component> <collected epoch millis> <donor name>" line
+//                                    each, then "OK <next sequence>" to ask for next; a jump in sequences means the
+//                                    events in between are no longer kept
+//   QUIT
+// LIST, FIND, EXPIRING and RESERVE send one "DONATION <kind> <type> <ml> <age|urgent> <donor name>" line per match before OK.
+// On the server everything except REGISTER, LOGIN, RESUME and QUIT needs a logged-in session. The password is only
+// checked (slow PBKDF2 hash) at LOGIN; later commands just look up the session token in the account store's cache.
+class CommandSession {
+    // How long a RESERVE holds its units when the command does not give a timeout
+    private static final int DEFAULT_RESERVATION_SECONDS = 300;
+    // Words of the longest command (ADD); the last word takes the rest of the line, spaces included
+    private static final int MAX_WORDS = 6;
+    private static final int DONOR_MATCHES = 20;
+    private static final int DEFAULT_EVENTS = 100;
+    private static final int MAX_EVENTS = 1000;
+
+    private final BloodBank bloodBank;
+    private final AccountStore accounts = BloodBankManagementSystem.accountStore();
+    // False for scripts: the operator running a local script is trusted, so commands need no LOGIN first
+    private final boolean requireLogin;
+    // True for interactive clients waiting on each reply; scripts leave flushing to the writer's buffer
+    private final boolean flushEachReply;
+    private String token;
+    private int errors;
+    private final DonationEvents.DonationEvent event = new DonationEvents.DonationEvent();
+
+    public CommandSession(BloodBank bloodBank, boolean requireLogin, boolean flushEachReply) {
+        this.bloodBank = bloodBank;
+        this.requireLogin = requireLogin;
+        this.flushEachReply = flushEachReply;
+    }
+
+    // Runs one command line and writes its reply; returns false after QUIT
+    public boolean execute(String line, Writer out) throws IOException {
+        try {
+            return dispatch(line, out);
+        } catch (UncheckedIOException e) {
+            // The journal failed: the change was not saved, and the session stays open to say so
+            reply(out, "ERR " + e.getMessage());
+            return true;
+        } catch (RuntimeException e) {
+            // A failing command must not end the client's session: logged (without its arguments, which may hold a
+            // password) and reported, and the connection stays open
+            String command = line.trim().split("\\s+", 2)[0];
+            System.err.println("Command " + command + " failed: " + e);
+            reply(out, "ERR " + (e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage()));
+            return true;
+        }
+    }
+
+    private boolean dispatch(String line, Writer out) throws IOException {
+        String[] words = split(line, MAX_WORDS);
+        if (words.length == 0) {
+            reply(out, "ERR empty command");
+            return true;
+        }
+        String command = words[0].toUpperCase();
+        if (command.equals("QUIT")) {
+            reply(out, "OK bye");
+            return false;
+        } else if (command.equals("REGISTER") || command.equals("LOGIN")) {
+            if (words.length != 3) {
+                reply(out, "ERR usage: " + command + " <user> <password>");
+            } else if (command.equals("REGISTER")) {
+                reply(out, BloodBankManagementSystem.registerAccount(words[1], words[2]) ? "OK registered" : "ERR username already exists");
+            } else if (accounts.isThrottled(words[1])) {
+                reply(out, "ERR too many failed attempts, try again later");
+            } else {
+                String opened = BloodBankManagementSystem.login(words[1], words[2]);
+                if (opened != null) {
+                    accounts.closeSession(token);
+                    token = opened;
+                    reply(out, "OK logged in " + token);
+                } else {
+                    reply(out, "ERR invalid credentials");
+                }
+            }
+        } else if (command.equals("RESUME")) {
+            if (words.length != 2) {
+                reply(out, "ERR usage: RESUME <token>");
+            } else {
+                String resumed = accounts.sessionUser(words[1]);
+                if (resumed != null) {
+                    token = words[1];
+                    reply(out, "OK resumed " + resumed);
+                } else {
+                    reply(out, "ERR invalid or expired session");
+                }
+            }
+        } else if (command.equals("LOGOUT")) {
+            accounts.closeSession(token);
+            token = null;
+            reply(out, "OK logged out");
+        } else if (requireLogin && token == null) {
+            reply(out, "ERR login required");
+        } else if (requireLogin && accounts.sessionUser(token) == null) {
+            token = null;
+            reply(out, "ERR session expired, please log in again");
+        } else {
+            execute(command, words, line, out);
+        }
+        return true;
+    }
+
+    // ERR replies sent so far
+    public int errorCount() {
+        return errors;
+    }
+
+    // Splits on runs of spaces without a regex; with limit words, the last word is the rest of the line
+    // (inner spaces kept, trailing ones dropped), like line.trim().split(" +", limit)
+    static String[] split(String line, int limit) {
+        int end = line.length();
+        while (end > 0 && line.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        String[] words = new String[limit];
+        int count = 0;
+        int i = 0;
+        while (i < end && line.charAt(i) <= ' ') {
+            i++;
+        }
+        while (count < limit) {
+            while (i < end && line.charAt(i) == ' ') {
+                i++;
+            }
+            if (i >= end) {
+                break;
+            }
+            int start = i;
+            if (count == limit - 1) {
+                i = end;
+            } else {
+                while (i < end && line.charAt(i) != ' ') {
+                    i++;
+                }
+            }
+            words[count++] = line.substring(start, i);
+        }
+        if (count == limit) {
+            return words;
+        }
+        String[] trimmed = new String[count];
+        System.arraycopy(words, 0, trimmed, 0, count);
+        return trimmed;
+    }
+
+    // ======================================== Commands ========================================
+    private void execute(String command, String[] words, String line, Writer out) throws IOException {
+        switch (command) {
+            case "ADD":
+                reply(out, add(words));
+                break;
+            case "LIST": {
+                DonationKind kind = words.length == 2 ? parseKind(words[1]) : null;
+                if (kind == null) {
+                    reply(out, "ERR usage: LIST <REGULAR|EMERGENCY>");
+                } else {
+                    writeDonations(out, bloodBank.getDonations(kind));
+                }
+                break;
+            }
+            case "FIND": {
+                BloodType type = words.length >= 2 ? BloodType.parse(words[1]) : null;
+                DonationKind kind = words.length == 3 ? parseKind(words[2]) : null;
+                if (type == null || (words.length == 3 && kind == null)) {
+                    reply(out, "ERR usage: FIND <type> [REGULAR|EMERGENCY]");
+                } else if (kind != null) {
+                    writeDonations(out, bloodBank.getCompatibleDonations(type, kind));
+                } else {
+                    List<BloodDonation> matches = bloodBank.getCompatibleDonations(type, DonationKind.REGULAR);
+                    matches.addAll(bloodBank.getCompatibleDonations(type, DonationKind.EMERGENCY));
+                    writeDonations(out, matches);
+                }
+                break;
+            }
+            case "UNITS": {
+                BloodType type = words.length >= 3 ? BloodType.parse(words[1]) : null;
+                int limit = words.length >= 3 ? parseCount(words[2]) : -1;
+                DonationKind kind = words.length == 4 ? parseKind(words[3]) : null;
+                if (type == null || limit < 0 || words.length > 4 || (words.length == 4 && kind == null)) {
+                    reply(out, "ERR usage: UNITS <type> <limit> [REGULAR|EMERGENCY]");
+                } else {
+                    writeUnits(out, bloodBank.getCompatibleUnits(type, kind, limit));
+                }
+                break;
+            }
+            case "EXPIRING": {
+                int hours = words.length >= 2 ? parseCount(words[1]) : -1;
+                BloodType type = words.length == 3 ? BloodType.parse(words[2]) : null;
+                if (hours <= 0 || words.length > 3 || (words.length == 3 && type == null)) {
+                    reply(out, "ERR usage: EXPIRING <hours> [type]");
+                } else {
+                    writeDonations(out, bloodBank.getExpiringSoon(type, TimeUnit.HOURS.toMillis(hours)));
+                }
+                break;
+            }
+            case "STOCK":
+                writeStock(out);
+                break;
+            case "RESERVE":
+                reserve(words, out);
+                break;
+            case "METRICS":
+                metrics(words, out);
+                break;
+            case "EVENTS":
+                events(words, out);
+                break;
+            case "TRENDS":
+                writeTrends(out);
+                break;
+            case "INTAKE":
+                intake(words, out);
+                break;
+            case "DONORS":
+            case "HISTORY": {
+                // Names may contain spaces: everything after the command word
+                String[] argument = split(line, 2);
+                if (argument.length != 2) {
+                    reply(out, command.equals("DONORS") ? "ERR usage: DONORS <prefix>" : "ERR usage: HISTORY <donor name>");
+                } else if (command.equals("DONORS")) {
+                    writeDonors(out, argument[1]);
+                } else {
+                    writeHistory(out, argument[1]);
+                }
+                break;
+            }
+            case "COMMIT":
+            case "RELEASE": {
+                long id = words.length == 2 ? parseCount(words[1]) : -1;
+                if (id < 0) {
+                    reply(out, "ERR usage: " + command + " <id>");
+                } else if (command.equals("COMMIT")) {
+                    reply(out, bloodBank.commitReservation(id) ? "OK issued" : "ERR reservation unknown, timed out or expired");
+                } else {
+                    reply(out, bloodBank.releaseReservation(id) ? "OK released" : "ERR reservation unknown or finished");
+                }
+                break;
+            }
+            default:
+                reply(out, "ERR unknown command " + command);
+        }
+    }
+
+    private String add(String[] words) {
+        if (words.length != 6) {
+            return "ERR usage: ADD <REGULAR|EMERGENCY> <type> <ml> <age|urgent> <donor name>";
+        }
+        DonationKind kind = parseKind(words[1]);
+        BloodType type = BloodType.parse(words[2]);
+        if (kind == null || type == null) {
+            return "ERR invalid donation kind or blood type";
+        }
+        int amount;
+        try {
+            amount = Integer.parseInt(words[3]);
+        } catch (NumberFormatException e) {
+            return "ERR amount must be numeric";
+        }
+        BloodDonation donation;
+        if (kind == DonationKind.REGULAR) {
+            try {
+                donation = new RegularDonation(words[5], type.label(), amount, Integer.parseInt(words[4]));
+            } catch (NumberFormatException e) {
+                return "ERR age must be numeric";
+            }
+        } else {
+            // Strict, as in bulk import: a typo must not silently mean "not urgent"
+            if (!words[4].equalsIgnoreCase("true") && !words[4].equalsIgnoreCase("false")) {
+                return "ERR urgent must be true or false";
+            }
+            donation = new EmergencyDonation(words[5], type.label(), amount, Boolean.parseBoolean(words[4]));
+        }
+        return bloodBank.acceptDonation(donation) ? "OK donation added" : "ERR donation not eligible";
+    }
+
+    private void writeStock(Writer out) throws IOException {
+        StockLevels stock = bloodBank.getStockLevels();
+        StringBuilder line = new StringBuilder(64);
+        for (BloodType type : BloodType.values()) {
+            long threshold = stock.threshold(type);
+            line.append("STOCK ").append(type.label())
+                    .append(' ').append(stock.units(type, DonationKind.REGULAR)).append(' ').append(stock.ml(type, DonationKind.REGULAR))
+                    .append(' ').append(stock.units(type, DonationKind.EMERGENCY)).append(' ').append(stock.ml(type, DonationKind.EMERGENCY))
+                    .append(threshold > 0 && stock.ml(type) < threshold ? " LOW\n" : "\n");
+        }
+        out.append(line);
+        reply(out, "OK " + BloodType.values().length);
+    }
+
+    private void metrics(String[] words, Writer out) throws IOException {
+        BankMetrics metrics = bloodBank.getMetrics();
+        String action = words.length == 2 ? words[1].toUpperCase() : "";
+        if (words.length > 2 || !(action.isEmpty() || action.equals("ON") || action.equals("OFF") || action.equals("RESET"))) {
+            reply(out, "ERR usage: METRICS [ON|OFF|RESET]");
+            return;
+        }
+        if (action.equals("RESET")) {
+            metrics.reset();
+        } else if (!action.isEmpty()) {
+            metrics.setEnabled(action.equals("ON"));
+        }
+        StringBuilder dump = new StringBuilder(2048);
+        metrics.dump(dump);
+        out.append(dump);
+        reply(out, "OK metrics " + (metrics.isEnabled() ? "on" : "off"));
+    }
+
+    private void writeDonors(Writer out, String prefix) throws IOException {
+        List<String> names = bloodBank.searchDonors(prefix, DONOR_MATCHES);
+        StringBuilder lines = new StringBuilder(64);
+        for (String name : names) {
+            lines.append("DONOR ").append(name).append('\n');
+        }
+        out.append(lines);
+        reply(out, "OK " + names.size());
+    }
+
+    private void writeHistory(Writer out, String donorName) throws IOException {
+        DonorRegistry.History history = bloodBank.getDonorHistory(donorName);
+        if (history == null) {
+            reply(out, "ERR no donations recorded for " + donorName);
+            return;
+        }
+        StringBuilder lines = new StringBuilder(64);
+        for (int i = 0; i < history.size(); i++) {
+            lines.append("HISTORY ");
+            BloodComponent.appendTime(lines, history.collectedAt(i));
+            lines.append(' ').append(history.type(i).label()).append(' ').append(history.kind(i)).append(' ')
+                    .append(history.component(i)).append(' ').append(history.amount(i)).append('\n');
+        }
+        out.append(lines);
+        lines.setLength(0);
+        lines.append("OK ").append(history.size()).append(" next ");
+        BloodComponent.appendTime(lines, bloodBank.getNextEligibleAt(donorName));
+        reply(out, lines.toString());
+    }
+
+    private void reserve(String[] words, Writer out) throws IOException {
+        BloodType type = words.length >= 3 ? BloodType.parse(words[1]) : null;
+        int amount = words.length >= 3 ? parseCount(words[2]) : -1;
+        boolean emergency = words.length >= 4 && words[3].equalsIgnoreCase("EMERGENCY");
+        int next = emergency ? 4 : 3;
+        int seconds = words.length > next ? parseCount(words[next]) : DEFAULT_RESERVATION_SECONDS;
+        if (type == null || amount <= 0 || seconds <= 0 || words.length > next + 1) {
+            reply(out, "ERR usage: RESERVE <type> <ml> [EMERGENCY] [seconds]");
+            return;
+        }
+        DonationAllocator.Reservation reservation = bloodBank.reserve(type, amount, emergency, TimeUnit.SECONDS.toMillis(seconds));
+        if (reservation == null) {
+            reply(out, "ERR not enough compatible stock");
+            return;
+        }
+        List<BloodDonation> units = bloodBank.getReservedUnits(reservation);
+        StringBuilder line = new StringBuilder(64);
+        for (BloodDonation donation : units) {
+            appendDonation(line, donation);
+        }
+        out.append(line);
+        reply(out, "OK reserved " + reservation.getId() + " " + reservation.getReservedMl());
+    }
+
+    private void writeDonations(Writer out, List<BloodDonation> donations) throws IOException {
+        StringBuilder line = new StringBuilder(64);
+        for (BloodDonation donation : donations) {
+            line.setLength(0);
+            appendDonation(line, donation);
+            out.append(line);
+        }
+        reply(out, "OK " + donations.size());
+    }
+
+    private void writeUnits(Writer out, List<BloodDonation> units) throws IOException {
+        StringBuilder line = new StringBuilder(96);
+        for (BloodDonation unit : units) {
+            line.setLength(0);
+            line.append("UNIT ").append(DonationKind.of(unit)).append(' ').append(unit.getBloodType()).append(' ')
+                    .append(unit.getDonationAmount()).append(' ').append(DonationStore.extraOf(unit)).append(' ')
+                    .append(unit.getComponent()).append(' ').append(unit.getCollectedAt()).append(' ')
+                    .append(unit.getDonorName()).append('\n');
+            out.append(line);
+        }
+        reply(out, "OK " + units.size());
+    }
+
+    private static void appendDonation(StringBuilder line, BloodDonation donation) {
+        line.append("DONATION ").append(DonationKind.of(donation)).append(' ').append(donation.getBloodType()).append(' ')
+                .append(donation.getDonationAmount()).append(' ').append(DonationStore.extraOf(donation)).append(' ')
+                .append(donation.getDonorName()).append('\n');
+    }
+
+    private static DonationKind parseKind(String word) {
+        try {
+            return DonationKind.valueOf(word.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    // Non-negative number, or -1 when the word is not one
+    private static int parseCount(String word) {
+        try {
+            return Math.max(-1, Integer.parseInt(word));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private void writeTrends(Writer out) throws IOException {
+        List<DonationAnalytics.Trend> trends = bloodBank.getTrends();
+        StringBuilder lines = new StringBuilder(1024);
+        for (DonationAnalytics.Trend trend : trends) {
+            double days = trend.daysUntilStockout();
+            lines.append("TREND ").append(trend.type().label()).append(' ').append(trend.dayUnits()).append(' ').append(trend.dayMl())
+                    .append(' ').append(trend.weekUnits()).append(' ').append(trend.weekMl()).append(' ')
+                    .append(trend.weekUnits(DonationKind.EMERGENCY)).append(' ').append(trend.stockMl()).append(' ')
+                    .append(Double.isNaN(trend.mlPerDay()) ? "?" : String.valueOf(Math.round(trend.mlPerDay()))).append(' ')
+                    .append(Double.isNaN(days) ? "?" : Double.isInfinite(days) ? "never" : String.format(Locale.ROOT, "%.1f", days)).append('\n');
+        }
+        out.append(lines);
+        reply(out, "OK " + trends.size());
+    }
+
+    private void intake(String[] words, Writer out) throws IOException {
+        int days = words.length >= 2 && words.length <= 3 ? parseCount(words[1]) : -1;
+        int bucketHours = words.length == 3 ? parseCount(words[2]) : DonationAnalytics.DAY_HOURS;
+        if (days <= 0 || bucketHours <= 0) {
+            reply(out, "ERR usage: INTAKE <days> [bucket hours]");
+            return;
+        }
+        // Buckets end with the current hour
+        long to = (System.currentTimeMillis() / DonationAnalytics.HOUR_MILLIS + 1) * DonationAnalytics.HOUR_MILLIS;
+        DonationAnalytics.IntakeHistory history;
+        try {
+            history = bloodBank.getIntakeHistory(to - days * (long) DonationAnalytics.DAY_HOURS * DonationAnalytics.HOUR_MILLIS, to, bucketHours);
+        } catch (IllegalArgumentException e) {
+            reply(out, "ERR " + e.getMessage());
+            return;
+        }
+        StringBuilder lines = new StringBuilder(4096);
+        for (int bucket = 0; bucket < history.buckets(); bucket++) {
+            for (BloodType type : BloodType.values()) {
+                long regular = history.units(bucket, type, DonationKind.REGULAR);
+                long emergency = history.units(bucket, type, DonationKind.EMERGENCY);
+                if (regular + emergency == 0) {
+                    continue;
+                }
+                lines.append("INTAKE ");
+                BloodComponent.appendTime(lines, history.bucketStart(bucket));
+                lines.append(' ').append(type.label()).append(' ').append(regular).append(' ').append(history.ml(bucket, type, DonationKind.REGULAR))
+                        .append(' ').append(emergency).append(' ').append(history.ml(bucket, type, DonationKind.EMERGENCY)).append('\n');
+            }
+        }
+        out.append(lines);
+        reply(out, "OK " + history.buckets());
+    }
+
+    private void events(String[] words, Writer out) throws IOException {
+        long from;
+        try {
+            from = words.length >= 2 && words.length <= 3 ? Long.parseLong(words[1]) : -1;
+        } catch (NumberFormatException e) {
+            from = -1;
+        }
+        int max = words.length == 3 ? parseCount(words[2]) : DEFAULT_EVENTS;
+        if (from < 0 || max <= 0) {
+            reply(out, "ERR usage: EVENTS <sequence> [max]");
+            return;
+        }
+        StringBuilder lines = new StringBuilder(4096);
+        long next = bloodBank.getEvents().read(from, Math.min(max, MAX_EVENTS), event, (read, endOfBatch) -> lines
+                .append("EVENT ").append(read.sequence()).append(' ').append(read.isAccepted() ? "ACCEPTED" : read.rejection().name())
+                .append(' ').append(read.kind()).append(' ').append(read.type() == null ? "?" : read.type().label())
+                .append(' ').append(read.amount()).append(' ').append(read.extra()).append(' ').append(read.component())
+                .append(' ').append(read.collectedAt()).append(' ').append(read.donorName()).append('\n'));
+        out.append(lines);
+        reply(out, "OK " + next);
+    }
+
+    private void reply(Writer out, String line) throws IOException {
+        if (line.startsWith("ERR")) {
+            errors++;
+        }
+        out.write(line);
+        out.write('\n');
+        if (flushEachReply) {
+            out.flush();
+        }
+    }
+}
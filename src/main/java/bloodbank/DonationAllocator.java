@@ -0,0 +1,257 @@
+package bloodbank;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// =================================================== Donation Allocator ===================================================
+// Reserves units for a transfusion request, first-expired-first-out, and hands them out on commit.
+//
+// - A request is filled from the recipient's own blood type first, then from the other compatible types, the
+//   most widely usable ones (universal donors) last, so their stock is kept for recipients who need it.
+//   Regular stock is used before emergency stock, and emergency stock only when the request allows it.
+// - Units are claimed per blood type under that partition's lock (DonationStore.claim), so two requests can never
+//   reserve the same unit and requests for different types never wait for each other. Units are not split: a
+//   request is filled with whole units and may end up with more than it asked for.
+// - A request that cannot be filled completely reserves nothing. A reservation holds its units until it is
+//   committed (units are issued), released, or its timeout passes. Timed-out reservations are released by a
+//   sweep that runs at most once per SWEEP_INTERVAL when the allocator or the bank's read paths (listings,
+//   lookups, stock, gauges) are used, and every second in server mode, so there is no shared timeout queue for
+//   concurrent requests to contend on; commit checks the timeout of its own reservation directly.
+class DonationAllocator {
+    private static final int PENDING = 0;
+    private static final int COMMITTED = 1;
+    private static final int RELEASED = 2;
+    private static final long SWEEP_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    // Receives the sequence number of every unit issued by a commit (for the journal)
+    interface IssueListener {
+        void issued(BloodType type, int sequence);
+    }
+
+    private final DonationStore store;
+    private final AtomicLong nextId = new AtomicLong(1);
+    private final ConcurrentHashMap<Long, Reservation> reservations = new ConcurrentHashMap<>();
+    private final AtomicLong nextSweep = new AtomicLong(System.nanoTime());
+
+    public DonationAllocator(DonationStore store) {
+        this.store = store;
+    }
+
+    // ======================================== Requests ========================================
+    // Reserves at least requiredMl for the recipient; returns null when compatible stock is insufficient
+    public Reservation reserve(BloodType recipient, int requiredMl, boolean allowEmergency, long timeoutMillis) {
+        if (requiredMl <= 0 || timeoutMillis <= 0) {
+            throw new IllegalArgumentException("required amount and timeout must be positive");
+        }
+        expireReservations();
+        // Insertion ordered: the types in the order they were tried, so units() lists them in claim order
+        LinkedHashMap<BloodType, IntList> claimed = new LinkedHashMap<>();
+        int reservedMl = 0;
+        for (DonationKind kind : allowEmergency ? DonationKind.values() : new DonationKind[] { DonationKind.REGULAR }) {
+            for (BloodType donorType : donorOrder(recipient)) {
+                if (reservedMl >= requiredMl) {
+                    break;
+                }
+                IntList rows = claimed.computeIfAbsent(donorType, type -> new IntList());
+                reservedMl += store.claim(donorType, kind, requiredMl - reservedMl, rows);
+            }
+        }
+        if (reservedMl < requiredMl) {
+            for (Map.Entry<BloodType, IntList> group : claimed.entrySet()) {
+                store.release(group.getKey(), group.getValue());
+            }
+            return null;
+        }
+        Reservation reservation = new Reservation(nextId.getAndIncrement(), recipient, requiredMl, reservedMl, claimed,
+                System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis));
+        reservations.put(reservation.id, reservation);
+        return reservation;
+    }
+
+    // Issues the reserved units. Fails (and releases the reservation) if it is unknown, timed out, or one of its
+    // units expired in the meantime. If the listener throws (the journal cannot record the issue), the units are
+    // taken back and released and the exception is passed on: nothing is issued.
+    public boolean commit(long id, IssueListener listener) {
+        expireReservations();
+        Reservation reservation = reservations.get(id);
+        if (reservation == null) {
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        boolean usable = reservation.remainingNanos() > 0;
+        for (Map.Entry<BloodType, IntList> group : reservation.rows.entrySet()) {
+            IntList rows = group.getValue();
+            for (int i = 0; usable && i < rows.size(); i++) {
+                usable = store.expiresAt(group.getKey(), rows.get(i)) > now;
+            }
+        }
+        if (!usable) {
+            finish(reservation, RELEASED);
+            return false;
+        }
+        if (!reservation.state.compareAndSet(PENDING, COMMITTED)) {
+            return false;
+        }
+        reservations.remove(id);
+        try {
+            for (Map.Entry<BloodType, IntList> group : reservation.rows.entrySet()) {
+                IntList sequences = new IntList();
+                store.issue(group.getKey(), group.getValue(), sequences);
+                if (listener != null) {
+                    for (int i = 0; i < sequences.size(); i++) {
+                        listener.issued(group.getKey(), sequences.get(i));
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            reservation.state.set(RELEASED);
+            for (Map.Entry<BloodType, IntList> group : reservation.rows.entrySet()) {
+                store.unissue(group.getKey(), group.getValue());
+                store.release(group.getKey(), group.getValue());
+            }
+            throw e;
+        }
+        return true;
+    }
+
+    // Returns the reserved units to stock; false when the reservation is unknown or already finished
+    public boolean release(long id) {
+        expireReservations();
+        Reservation reservation = reservations.get(id);
+        return reservation != null && finish(reservation, RELEASED);
+    }
+
+    // The reserved units grouped by blood type in the order the types were tried (preferred type first); within a
+    // type, regular units before emergency ones, each soonest expiry first
+    public List<BloodDonation> units(Reservation reservation) {
+        List<BloodDonation> units = new ArrayList<>();
+        for (Map.Entry<BloodType, IntList> group : reservation.rows.entrySet()) {
+            IntList rows = group.getValue();
+            for (int i = 0; i < rows.size(); i++) {
+                units.add(store.view(group.getKey(), rows.get(i)));
+            }
+        }
+        return units;
+    }
+
+    public Reservation reservation(long id) {
+        return reservations.get(id);
+    }
+
+    public int pendingCount() {
+        return reservations.size();
+    }
+
+    // Releases every reservation whose timeout has passed, unless another thread swept within the last
+    // SWEEP_INTERVAL; returns how many were released
+    public int expireReservations() {
+        long now = System.nanoTime();
+        long due = nextSweep.get();
+        if (now - due < 0 || !nextSweep.compareAndSet(due, now + SWEEP_INTERVAL_NANOS)) {
+            return 0;
+        }
+        int released = 0;
+        for (Reservation reservation : reservations.values()) {
+            if (reservation.remainingNanos() <= 0 && finish(reservation, RELEASED)) {
+                released++;
+            }
+        }
+        return released;
+    }
+
+    // Only the caller that moves the reservation out of PENDING touches its units
+    private boolean finish(Reservation reservation, int state) {
+        if (!reservation.state.compareAndSet(PENDING, state)) {
+            return false;
+        }
+        reservations.remove(reservation.id);
+        for (Map.Entry<BloodType, IntList> group : reservation.rows.entrySet()) {
+            store.release(group.getKey(), group.getValue());
+        }
+        return true;
+    }
+
+    // ======================================== Donor preference ========================================
+    // Per recipient ordinal: the recipient's own type, then the other compatible types by how few recipient types
+    // each can give to, so universal donors (O-) come last
+    private static final BloodType[][] DONOR_ORDER = new BloodType[BloodType.values().length][];
+
+    static {
+        int[] recipientCounts = new int[BloodType.values().length];
+        for (BloodType recipient : BloodType.values()) {
+            for (BloodType donor : recipient.compatibleDonors()) {
+                recipientCounts[donor.ordinal()]++;
+            }
+        }
+        for (BloodType recipient : BloodType.values()) {
+            List<BloodType> order = new ArrayList<>(Arrays.asList(recipient.compatibleDonors()));
+            order.sort(Comparator.comparingInt((BloodType donor) -> donor == recipient ? 0 : 1)
+                    .thenComparingInt(donor -> recipientCounts[donor.ordinal()]));
+            DONOR_ORDER[recipient.ordinal()] = order.toArray(new BloodType[0]);
+        }
+    }
+
+    static BloodType[] donorOrder(BloodType recipient) {
+        return DONOR_ORDER[recipient.ordinal()];
+    }
+
+    // ======================================== Reservation ========================================
+    static class Reservation {
+        private final long id;
+        private final BloodType recipient;
+        private final int requiredMl;
+        private final int reservedMl;
+        private final LinkedHashMap<BloodType, IntList> rows;
+        private final long deadline;
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+
+        Reservation(long id, BloodType recipient, int requiredMl, int reservedMl, LinkedHashMap<BloodType, IntList> rows, long deadline) {
+            this.id = id;
+            this.recipient = recipient;
+            this.requiredMl = requiredMl;
+            this.reservedMl = reservedMl;
+            this.rows = rows;
+            this.deadline = deadline;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public BloodType getRecipient() {
+            return recipient;
+        }
+
+        public int getRequiredMl() {
+            return requiredMl;
+        }
+
+        public int getReservedMl() {
+            return reservedMl;
+        }
+
+        public int getUnitCount() {
+            int count = 0;
+            for (IntList list : rows.values()) {
+                count += list.size();
+            }
+            return count;
+        }
+
+        public boolean isPending() {
+            return state.get() == PENDING;
+        }
+
+        public long remainingNanos() {
+            return deadline - System.nanoTime();
+        }
+    }
+}
@@ -0,0 +1,415 @@
+package bloodbank;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+
+// =================================================== Donation Analytics ===================================================
+// Intake trends per blood type, kept up to date as donations arrive instead of recomputed from the stored history:
+// units and ml collected over the last 24 hours and the last 7 days, per donation kind (so the emergency share
+// follows), and a stock forecast.
+//
+// Intake is counted in hourly buckets, a ring of one week indexed by hour % WEEK_HOURS. Each slot is tagged with
+// the hour it currently counts; the first donation of a new hour resets the slot it reuses (the hour a week
+// earlier) and retags it, which is the only step that takes a lock. Buckets are LongAdders, so intake threads never
+// wait for each other or for a reader: trends() sums the buckets of the day and week windows (WEEK_HOURS buckets per
+// series) without locking, and a donation counted while it reads may or may not be included.
+// Donations are counted by collection time; back-dated ones land in their own hour if it is still inside the week.
+//
+// Forecast: the available stock of each type is sampled once an hour on intake and on every read, and a
+// least-squares line through the last week of samples gives the net change per day (intake minus issues and
+// expiry). A falling line projects the days until the stock runs out. Until a few hours have been sampled the
+// forecast is unknown (NaN).
+//
+// Fed directly by the bank's intake (every accepted donation, batches and journal replay included), so no donation
+// is ever missed. The donations already stored when the bank starts (a loaded snapshot) are counted by the first
+// trends() call rather than at start-up, so a cold start does not scan the store. history() answers longer-range
+// questions with a parallel scan of the store.
+class DonationAnalytics {
+    static final long HOUR_MILLIS = 3_600_000L;
+    static final int DAY_HOURS = 24;
+    static final int WEEK_HOURS = 7 * DAY_HOURS;
+    // History reports: at most this many buckets, scanned CHUNK_ROWS rows per task
+    static final int MAX_HISTORY_BUCKETS = 4096;
+    private static final int CHUNK_ROWS = 1 << 16;
+    // Fewest hourly stock samples a trend line is fitted to
+    private static final int MIN_SAMPLES = 3;
+    private static final int TYPES = BloodType.values().length;
+    private static final int KINDS = DonationKind.values().length;
+    // One series per blood type and kind: type * KINDS + kind
+    private static final int SERIES = TYPES * KINDS;
+
+    private final StockLevels stock;
+    private final Clock clock;
+    // Hourly buckets of the last week: slot (hour % WEEK_HOURS) * SERIES + series
+    private final LongAdder[] units = new LongAdder[WEEK_HOURS * SERIES];
+    private final LongAdder[] ml = new LongAdder[WEEK_HOURS * SERIES];
+    // Hour each slot's buckets count; also the lock for moving a slot to a later hour
+    private final AtomicLongArray slotHours = new AtomicLongArray(WEEK_HOURS);
+    // Last available stock (ml) sampled in each hour of the week, per blood type: slot * TYPES + type, with the
+    // hour it was sampled in
+    private final AtomicLongArray stockMl = new AtomicLongArray(WEEK_HOURS * TYPES);
+    private final AtomicLongArray sampledHours = new AtomicLongArray(WEEK_HOURS * TYPES);
+    // Store whose first unseededRows[type] rows are not counted yet; null once they are
+    private volatile DonationStore unseeded;
+    private int[] unseededRows;
+
+    DonationAnalytics(StockLevels stock, Clock clock) {
+        this.stock = stock;
+        this.clock = clock;
+        for (int i = 0; i < units.length; i++) {
+            units[i] = new LongAdder();
+            ml[i] = new LongAdder();
+        }
+        // No slot counts an hour yet
+        for (int i = 0; i < WEEK_HOURS; i++) {
+            slotHours.set(i, Long.MIN_VALUE);
+        }
+        for (int i = 0; i < sampledHours.length(); i++) {
+            sampledHours.set(i, Long.MIN_VALUE);
+        }
+    }
+
+    // ======================================== Feeding ========================================
+    // Counts the donations stored so far, call before any other feeding. Only the row counts are taken now; the
+    // rows are scanned (the last week of them, in parallel) by the first trends() call. Donations recorded in the
+    // meantime land in rows after these, so nothing is counted twice.
+    public void seed(DonationStore store) {
+        int[] rows = new int[TYPES];
+        boolean any = false;
+        for (BloodType type : BloodType.values()) {
+            rows[type.ordinal()] = store.partitionSize(type);
+            any |= rows[type.ordinal()] > 0;
+        }
+        if (any) {
+            unseededRows = rows;
+            unseeded = store;
+        }
+    }
+
+    // Called with the monitor held, so concurrent first trends() calls scan once
+    private void seedStoredRows(long currentHour) {
+        long firstHour = currentHour - WEEK_HOURS + 1;
+        IntakeHistory week = history(unseeded, unseededRows, firstHour * HOUR_MILLIS, (currentHour + 1) * HOUR_MILLIS, 1);
+        for (int bucket = 0; bucket < week.buckets(); bucket++) {
+            long hour = firstHour + bucket;
+            for (int series = 0; series < SERIES; series++) {
+                add(currentHour, hour, series, week.units[bucket * SERIES + series], week.ml[bucket * SERIES + series]);
+            }
+        }
+        unseededRows = null;
+        unseeded = null;
+    }
+
+    // A donation the bank stored (or read back from the journal); safe to call from many threads
+    public void record(BloodType type, DonationKind kind, int amount, long collectedAt) {
+        long currentHour = hourOf(clock.millis());
+        count(currentHour, type, kind, amount, collectedAt);
+        sample(type, currentHour, false);
+    }
+
+    // A batch the bank stored
+    public void recordAll(List<BloodDonation> donations) {
+        long currentHour = hourOf(clock.millis());
+        boolean[] touched = new boolean[TYPES];
+        for (BloodDonation donation : donations) {
+            BloodType type = BloodType.parse(donation.getBloodType());
+            count(currentHour, type, DonationKind.of(donation), donation.getDonationAmount(), donation.getCollectedAt());
+            touched[type.ordinal()] = true;
+        }
+        for (BloodType type : BloodType.values()) {
+            if (touched[type.ordinal()]) {
+                sample(type, currentHour, false);
+            }
+        }
+    }
+
+    private void count(long currentHour, BloodType type, DonationKind kind, int amount, long collectedAt) {
+        // Future collection times count as now
+        add(currentHour, Math.min(hourOf(collectedAt), currentHour), type.ordinal() * KINDS + kind.ordinal(), 1, amount);
+    }
+
+    private void add(long currentHour, long hour, int series, long unitCount, long mlCount) {
+        if (hour <= currentHour - WEEK_HOURS || (unitCount == 0 && mlCount == 0)) {
+            return;
+        }
+        int slot = slot(hour);
+        if (slotHours.get(slot) != hour && !moveSlot(slot, hour)) {
+            return;
+        }
+        int index = slot * SERIES + series;
+        units[index].add(unitCount);
+        ml[index].add(mlCount);
+    }
+
+    // Clears a slot and tags it with a later hour (once per slot and hour, whichever thread gets there first).
+    // Returns false when the slot already counts a later hour: the donation's hour has left the week.
+    private boolean moveSlot(int slot, long hour) {
+        synchronized (slotHours) {
+            long held = slotHours.get(slot);
+            if (held > hour) {
+                return false;
+            }
+            if (held < hour) {
+                // Reset before retagging: a thread that sees the new tag only adds to cleared buckets
+                for (int index = slot * SERIES; index < slot * SERIES + SERIES; index++) {
+                    units[index].reset();
+                    ml[index].reset();
+                }
+                slotHours.set(slot, hour);
+            }
+            return true;
+        }
+    }
+
+    // On intake only the first donation of each hour samples (always on reads). The value is written before the
+    // hour, so a reader that sees the hour sees that sample or a later one.
+    private void sample(BloodType type, long hour, boolean always) {
+        int index = slot(hour) * TYPES + type.ordinal();
+        if (always || sampledHours.get(index) != hour) {
+            stockMl.set(index, stock.ml(type));
+            sampledHours.set(index, hour);
+        }
+    }
+
+    private static int slot(long hour) {
+        return (int) Math.floorMod(hour, (long) WEEK_HOURS);
+    }
+
+    private static long hourOf(long epochMillis) {
+        return Math.floorDiv(epochMillis, HOUR_MILLIS);
+    }
+
+    // ======================================== Trends ========================================
+    // Current windows and forecast of every blood type (samples the stock first). Does not block intake; only the
+    // first call after start-up, which counts the stored donations, holds a lock (against other trends() calls).
+    public List<Trend> trends() {
+        long currentHour = hourOf(clock.millis());
+        if (unseeded != null) {
+            synchronized (this) {
+                if (unseeded != null) {
+                    seedStoredRows(currentHour);
+                }
+            }
+        }
+        List<Trend> trends = new ArrayList<>(TYPES);
+        for (BloodType type : BloodType.values()) {
+            sample(type, currentHour, true);
+            trends.add(trend(type, currentHour));
+        }
+        return Collections.unmodifiableList(trends);
+    }
+
+    private Trend trend(BloodType type, long currentHour) {
+        int regular = type.ordinal() * KINDS + DonationKind.REGULAR.ordinal();
+        int emergency = type.ordinal() * KINDS + DonationKind.EMERGENCY.ordinal();
+        // Day and week windows: [regular units, regular ml, emergency units, emergency ml]
+        long[] day = new long[4];
+        long[] week = new long[4];
+        // Least squares over the sampled hours, x in hours before now
+        int count = 0;
+        double sumX = 0;
+        double sumY = 0;
+        double sumXY = 0;
+        double sumXX = 0;
+        for (int back = 0; back < WEEK_HOURS; back++) {
+            long hour = currentHour - back;
+            int slot = slot(hour);
+            if (slotHours.get(slot) == hour) {
+                long regularUnits = units[slot * SERIES + regular].sum();
+                long regularMl = ml[slot * SERIES + regular].sum();
+                long emergencyUnits = units[slot * SERIES + emergency].sum();
+                long emergencyMl = ml[slot * SERIES + emergency].sum();
+                week[0] += regularUnits;
+                week[1] += regularMl;
+                week[2] += emergencyUnits;
+                week[3] += emergencyMl;
+                if (back < DAY_HOURS) {
+                    day[0] += regularUnits;
+                    day[1] += regularMl;
+                    day[2] += emergencyUnits;
+                    day[3] += emergencyMl;
+                }
+            }
+            int index = slot * TYPES + type.ordinal();
+            if (sampledHours.get(index) == hour) {
+                double x = -back;
+                double y = stockMl.get(index);
+                count++;
+                sumX += x;
+                sumY += y;
+                sumXY += x * y;
+                sumXX += x * x;
+            }
+        }
+        double denominator = count * sumXX - sumX * sumX;
+        double mlPerDay = count >= MIN_SAMPLES && denominator > 0 ? (count * sumXY - sumX * sumY) / denominator * DAY_HOURS : Double.NaN;
+        return new Trend(type, day[0], day[1], day[2], day[3], week[0], week[1], week[2], week[3],
+                stockMl.get(slot(currentHour) * TYPES + type.ordinal()), mlPerDay);
+    }
+
+    static class Trend {
+        private final BloodType type;
+        private final long dayRegularUnits;
+        private final long dayRegularMl;
+        private final long dayEmergencyUnits;
+        private final long dayEmergencyMl;
+        private final long weekRegularUnits;
+        private final long weekRegularMl;
+        private final long weekEmergencyUnits;
+        private final long weekEmergencyMl;
+        private final long stockMl;
+        private final double mlPerDay;
+
+        Trend(BloodType type, long dayRegularUnits, long dayRegularMl, long dayEmergencyUnits, long dayEmergencyMl, long weekRegularUnits,
+                long weekRegularMl, long weekEmergencyUnits, long weekEmergencyMl, long stockMl, double mlPerDay) {
+            this.type = type;
+            this.dayRegularUnits = dayRegularUnits;
+            this.dayRegularMl = dayRegularMl;
+            this.dayEmergencyUnits = dayEmergencyUnits;
+            this.dayEmergencyMl = dayEmergencyMl;
+            this.weekRegularUnits = weekRegularUnits;
+            this.weekRegularMl = weekRegularMl;
+            this.weekEmergencyUnits = weekEmergencyUnits;
+            this.weekEmergencyMl = weekEmergencyMl;
+            this.stockMl = stockMl;
+            this.mlPerDay = mlPerDay;
+        }
+
+        public BloodType type() { return type; }
+
+        // Last 24 hours
+        public long dayUnits() { return dayRegularUnits + dayEmergencyUnits; }
+
+        public long dayMl() { return dayRegularMl + dayEmergencyMl; }
+
+        // Last 7 days
+        public long weekUnits() { return weekRegularUnits + weekEmergencyUnits; }
+
+        public long weekMl() { return weekRegularMl + weekEmergencyMl; }
+
+        public long weekUnits(DonationKind kind) { return kind == DonationKind.REGULAR ? weekRegularUnits : weekEmergencyUnits; }
+
+        public long weekMl(DonationKind kind) { return kind == DonationKind.REGULAR ? weekRegularMl : weekEmergencyMl; }
+
+        // Share of emergency units in the last 7 days' intake (0..1); NaN without intake
+        public double emergencyShare() {
+            return weekUnits() == 0 ? Double.NaN : (double) weekEmergencyUnits / weekUnits();
+        }
+
+        // Available stock now
+        public long stockMl() { return stockMl; }
+
+        // Net change of the stock per day over the last week; NaN until enough hours were sampled
+        public double mlPerDay() { return mlPerDay; }
+
+        // Days until the stock runs out at the current trend: 0 when it is out, infinite when it is not falling,
+        // NaN when unknown
+        public double daysUntilStockout() {
+            if (stockMl == 0) {
+                return 0;
+            }
+            if (Double.isNaN(mlPerDay)) {
+                return Double.NaN;
+            }
+            return mlPerDay < 0 ? stockMl / -mlPerDay : Double.POSITIVE_INFINITY;
+        }
+    }
+
+    // ======================================== History ========================================
+    // Intake per bucket of bucketHours between two times, from every stored donation whatever its status. The
+    // partitions are cut into chunks scanned by a parallel stream; each task counts into its own bucket arrays and
+    // the arrays are added up, so memory follows the number of buckets (at most MAX_HISTORY_BUCKETS), not the number
+    // of donations. Donations added while the scan runs may or may not be counted.
+    public static IntakeHistory history(DonationStore store, long fromMillis, long toMillis, int bucketHours) {
+        return history(store, null, fromMillis, toMillis, bucketHours);
+    }
+
+    // Only the first rows[type] rows of each partition (all of them when rows is null)
+    private static IntakeHistory history(DonationStore store, int[] rows, long fromMillis, long toMillis, int bucketHours) {
+        int firstMinute = DonationStore.toMinute(fromMillis);
+        int bucketMinutes = Math.max(1, bucketHours) * 60;
+        long span = Math.max(0, (long) DonationStore.toMinute(toMillis) - firstMinute);
+        long bucketCount = (span + bucketMinutes - 1) / bucketMinutes;
+        if (bucketCount > MAX_HISTORY_BUCKETS) {
+            throw new IllegalArgumentException("History of " + bucketCount + " buckets (at most " + MAX_HISTORY_BUCKETS + ")");
+        }
+        int buckets = (int) bucketCount;
+        BloodType[] types = BloodType.values();
+        // Chunks of all partitions numbered one after the other; a stale size is fine, scan() stops at the real end
+        int[] firstChunk = new int[TYPES + 1];
+        for (int t = 0; t < TYPES; t++) {
+            int size = rows == null ? store.partitionSize(types[t]) : rows[t];
+            firstChunk[t + 1] = firstChunk[t] + (size + CHUNK_ROWS - 1) / CHUNK_ROWS;
+        }
+        IntakeHistory history = IntStream.range(0, firstChunk[TYPES]).parallel().collect(
+                () -> new IntakeHistory(fromMillis, bucketHours, buckets),
+                (counts, chunk) -> {
+                    int t = 0;
+                    while (chunk >= firstChunk[t + 1]) {
+                        t++;
+                    }
+                    int series = t * KINDS;
+                    int from = (chunk - firstChunk[t]) * CHUNK_ROWS;
+                    int to = rows == null ? from + CHUNK_ROWS : Math.min(from + CHUNK_ROWS, rows[t]);
+                    counts.rows += store.scan(types[t], from, to, (kind, amount, collectedMinute) -> {
+                        long offset = (long) collectedMinute - firstMinute;
+                        if (offset >= 0 && offset < span) {
+                            int index = (int) (offset / bucketMinutes) * SERIES + series + kind.ordinal();
+                            counts.units[index]++;
+                            counts.ml[index] += amount;
+                        }
+                    });
+                },
+                IntakeHistory::addAll);
+        return history;
+    }
+
+    static class IntakeHistory {
+        private final long fromMillis;
+        private final int bucketHours;
+        private final long[] units;
+        private final long[] ml;
+        private long rows;
+
+        IntakeHistory(long fromMillis, int bucketHours, int buckets) {
+            this.fromMillis = fromMillis;
+            this.bucketHours = Math.max(1, bucketHours);
+            this.units = new long[buckets * SERIES];
+            this.ml = new long[buckets * SERIES];
+        }
+
+        public int buckets() {
+            return units.length / SERIES;
+        }
+
+        public long bucketStart(int bucket) {
+            return fromMillis + (long) bucket * bucketHours * HOUR_MILLIS;
+        }
+
+        public long units(int bucket, BloodType type, DonationKind kind) {
+            return units[bucket * SERIES + type.ordinal() * KINDS + kind.ordinal()];
+        }
+
+        public long ml(int bucket, BloodType type, DonationKind kind) {
+            return ml[bucket * SERIES + type.ordinal() * KINDS + kind.ordinal()];
+        }
+
+        // Stored donations looked at (inside the range or not)
+        public long rowsScanned() {
+            return rows;
+        }
+
+        void addAll(IntakeHistory other) {
+            for (int i = 0; i < units.length; i++) {
+                units[i] += other.units[i];
+                ml[i] += other.ml[i];
+            }
+            rows += other.rows;
+        }
+    }
+}
@@ -0,0 +1,375 @@
+package bloodbank;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+// =================================================== Donation Events ===================================================
+// Change feed of the donations a BloodBank accepted or rejected, for downstream systems (lab testing, reporting,
+// alerting). Events go into a preallocated ring of slots numbered by a sequence that only grows; the ring keeps the
+// last capacity events, so a consumer can start (or replay) from any sequence that is still in it.
+//
+// Intake never waits for a consumer. Publishers claim a sequence without locking (one getAndIncrement, or one CAS
+// while a BACKPRESSURE consumer is subscribed), write that sequence's slot and publish it by storing the sequence in
+// the slot. Consumers read behind at their own pace, each on its own thread, in batches, and stop at the first slot
+// not published yet, so they see events in sequence order; publishers never signal them (an idle consumer parks
+// and polls). A publisher only ever waits for the publisher of the same slot one ring earlier to finish writing it,
+// so two publishers a full ring apart can never write one slot at the same time.
+// What happens when a consumer falls a whole ring behind is its Policy:
+//   DROP_OLDEST   the consumer is lapped: it skips to the oldest event still in the ring and counts what it missed;
+//                 nobody else notices
+//   BACKPRESSURE  the consumer gates intake: while it is a full ring behind, new events are refused at intake
+//                 (publish returns -1 and the refusal is counted; the donation itself is stored as usual). Every
+//                 consumer then misses those events, so this is for a consumer that must never be lapped and is
+//                 expected to keep up.
+//
+// Slots are columns of packed longs (like DonationStore), written and read with atomic accesses: a reader copies a
+// slot into its own DonationEvent and checks the slot's sequence again afterwards, so an event overwritten while it
+// was being read is detected instead of delivered torn. Nothing is allocated per event on either side.
+class DonationEvents implements AutoCloseable {
+    enum Policy { DROP_OLDEST, BACKPRESSURE }
+
+    // Called on the consumer's thread; the event is reused for the next call, copy what must be kept
+    interface Handler {
+        void onEvent(DonationEvent event, boolean endOfBatch);
+    }
+
+    // Slot layout (stride 4): published sequence (WRITING while being written), packed donation, extra | outcome,
+    // recorded at
+    private static final int STRIDE = 4;
+    private static final int SEQUENCE = 0;
+    private static final int DONATION = 1;
+    private static final int OUTCOME = 2;
+    private static final int RECORDED_AT = 3;
+    private static final long WRITING = Long.MIN_VALUE;
+    // Outcome column: 0 = accepted, otherwise 1 + the rejection reason's ordinal; type NO_TYPE when it did not parse
+    private static final int NO_TYPE = 0xFF;
+    private static final BankMetrics.Rejection[] REASONS = BankMetrics.Rejection.values();
+
+    // An idle consumer yields this many times, then parks for 1 us, doubling up to MAX_PARK_NANOS
+    private static final int SPINS = 100;
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final int capacity;
+    private final int mask;
+    private final AtomicLongArray slots;
+    private final AtomicReferenceArray<String> donorNames;
+    // Next sequence to claim (slots below it may still be being written)
+    private final AtomicLong claimed = new AtomicLong();
+    private final LongAdder refusedAtIntake = new LongAdder();
+    private final CopyOnWriteArrayList<Consumer> consumers = new CopyOnWriteArrayList<>();
+    // BACKPRESSURE consumers subscribed; without any, claiming a sequence is a plain increment
+    private final AtomicInteger gating = new AtomicInteger();
+
+    // Capacity is rounded up to a power of two
+    DonationEvents(int capacity) {
+        this.capacity = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1);
+        this.mask = this.capacity - 1;
+        this.slots = new AtomicLongArray(this.capacity * STRIDE);
+        this.donorNames = new AtomicReferenceArray<>(this.capacity);
+        // As if sequence i - capacity had been published in slot i, which is what the first writer of a slot waits for
+        for (int i = 0; i < this.capacity; i++) {
+            slots.set(i * STRIDE + SEQUENCE, i - this.capacity);
+        }
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    // Sequence the next event will get (= events published so far, including any still being written)
+    public long nextSequence() {
+        return claimed.get();
+    }
+
+    // Oldest sequence still in the ring
+    public long oldestSequence() {
+        return Math.max(0, claimed.get() - capacity);
+    }
+
+    // Events refused because a BACKPRESSURE consumer was a full ring behind
+    public long refusedAtIntake() {
+        return refusedAtIntake.sum();
+    }
+
+    // ======================================== Publishing (intake, any thread) ========================================
+    // outcome null for an accepted donation; type null when it did not parse. Returns the event's sequence, or -1
+    // when a BACKPRESSURE consumer is a full ring behind and the event was refused.
+    public long publish(BankMetrics.Rejection outcome, BloodType type, DonationKind kind, String donorName, int amount, int extra,
+            BloodComponent component, long collectedAt) {
+        long sequence;
+        if (gating.get() == 0) {
+            sequence = claimed.getAndIncrement();
+        } else {
+            do {
+                sequence = claimed.get();
+                if (sequence - gatingSequence(sequence) >= capacity) {
+                    refusedAtIntake.increment();
+                    return -1;
+                }
+            } while (!claimed.compareAndSet(sequence, sequence + 1));
+        }
+        int slot = (int) (sequence & mask);
+        int base = slot * STRIDE;
+        // The slot's previous event (one ring earlier) may have been claimed but not written yet: wait for it, so the
+        // slot has one writer at a time. Only a publisher stalled a whole ring behind can make this spin.
+        while (slots.get(base + SEQUENCE) != sequence - capacity) {
+            Thread.yield();
+        }
+        // Ordered (release) stores: a reader that sees any new column value also sees the WRITING mark before it
+        slots.lazySet(base + SEQUENCE, WRITING);
+        slots.lazySet(base + DONATION, (long) DonationStore.toMinute(collectedAt) << 32 | (long) Math.max(0, Math.min(amount, 0xFFFF)) << 16
+                | (long) (type == null ? NO_TYPE : type.ordinal()) << 8 | (long) kind.ordinal() << 4 | component.ordinal());
+        slots.lazySet(base + OUTCOME, (long) extra << 32 | (outcome == null ? 0 : outcome.ordinal() + 1));
+        slots.lazySet(base + RECORDED_AT, System.currentTimeMillis());
+        donorNames.lazySet(slot, donorName);
+        slots.lazySet(base + SEQUENCE, sequence);
+        return sequence;
+    }
+
+    public long publish(BankMetrics.Rejection outcome, BloodType type, BloodDonation donation) {
+        return publish(outcome, type, DonationKind.of(donation), donation.getDonorName(), donation.getDonationAmount(),
+                DonationStore.extraOf(donation), donation.getComponent(), donation.getCollectedAt());
+    }
+
+    // Sequence the slowest BACKPRESSURE consumer reads next (next when none is subscribed any more)
+    private long gatingSequence(long next) {
+        long slowest = next;
+        for (Consumer consumer : consumers) {
+            if (consumer.policy == Policy.BACKPRESSURE) {
+                slowest = Math.min(slowest, consumer.sequence);
+            }
+        }
+        return slowest;
+    }
+
+    // ======================================== Reading ========================================
+    // Hands up to max events from fromSequence on to the handler on the calling thread and returns the sequence to
+    // read next. Events no longer in the ring are skipped (the first event's sequence shows the gap), a sequence not
+    // reached yet reads from the next one; reading stops at the first event that is not fully published yet. Used by
+    // consumers and for replays (EVENTS command).
+    public long read(long fromSequence, int max, DonationEvent event, Handler handler) {
+        long end = claimed.get();
+        long next = Math.min(Math.max(fromSequence, end - capacity), end);
+        int delivered = 0;
+        while (delivered < max && next < end) {
+            int status = copy(next, event);
+            if (status > 0) {
+                // Overwritten meanwhile: lapped, move up to what the ring still holds
+                next = Math.max(next + 1, oldestSequence());
+                continue;
+            }
+            if (status < 0) {
+                break;
+            }
+            delivered++;
+            next++;
+            handler.onEvent(event, delivered == max || next == end);
+        }
+        return next;
+    }
+
+    // 0 copied, -1 not published yet, 1 already overwritten by a later sequence
+    private int copy(long sequence, DonationEvent event) {
+        int slot = (int) (sequence & mask);
+        int base = slot * STRIDE;
+        long published = slots.get(base + SEQUENCE);
+        if (published != sequence) {
+            return published > sequence || claimed.get() - sequence > capacity ? 1 : -1;
+        }
+        long donation = slots.get(base + DONATION);
+        long outcome = slots.get(base + OUTCOME);
+        long recordedAt = slots.get(base + RECORDED_AT);
+        String donorName = donorNames.get(slot);
+        if (slots.get(base + SEQUENCE) != sequence) {
+            return 1;
+        }
+        int reason = (int) outcome;
+        int type = (int) (donation >>> 8) & 0xFF;
+        event.set(sequence, reason == 0 ? null : REASONS[reason - 1], type == NO_TYPE ? null : BloodType.ofOrdinal(type),
+                DonationKind.values()[(int) (donation >>> 4) & 0xF], BloodComponent.values()[(int) donation & 0xF], donorName,
+                (int) (donation >>> 16) & 0xFFFF, (int) (outcome >> 32), (donation >> 32) * 60_000L, recordedAt);
+        return 0;
+    }
+
+    // ======================================== Consumers ========================================
+    // Stops every consumer still subscribed (their threads exit); publishing and replays keep working
+    @Override
+    public void close() {
+        for (Consumer consumer : consumers) {
+            consumer.close();
+        }
+    }
+
+    // Starts a consumer on its own daemon thread, reading from fromSequence (0 or oldestSequence() for everything
+    // still in the ring, nextSequence() for new events only) in batches of at most maxBatch
+    public Consumer subscribe(String name, long fromSequence, int maxBatch, Policy policy, Handler handler) {
+        Consumer consumer = new Consumer(name, Math.max(fromSequence, oldestSequence()), Math.max(1, maxBatch), policy, handler);
+        consumers.add(consumer);
+        if (policy == Policy.BACKPRESSURE) {
+            gating.incrementAndGet();
+        }
+        consumer.thread.start();
+        return consumer;
+    }
+
+    class Consumer implements AutoCloseable {
+        private final String name;
+        private final int maxBatch;
+        private final Policy policy;
+        private final Handler handler;
+        private final Thread thread;
+        private final DonationEvent event = new DonationEvent();
+        private final LongAdder failures = new LongAdder();
+        // Next sequence to read, published after every batch; everything below it was handed to the handler (or missed)
+        private volatile long sequence;
+        private volatile long missed;
+        private volatile boolean running = true;
+        private int delivered;
+
+        Consumer(String name, long fromSequence, int maxBatch, Policy policy, Handler handler) {
+            this.name = name;
+            this.sequence = fromSequence;
+            this.maxBatch = maxBatch;
+            this.policy = policy;
+            this.handler = handler;
+            this.thread = new Thread(this::run, "donation-events-" + name);
+            thread.setDaemon(true);
+        }
+
+        public String name() {
+            return name;
+        }
+
+        public long sequence() {
+            return sequence;
+        }
+
+        // Events published but not read yet
+        public long lag() {
+            return Math.max(0, claimed.get() - sequence);
+        }
+
+        // Events this consumer never saw because it was lapped (DROP_OLDEST)
+        public long missed() {
+            return missed;
+        }
+
+        // Events whose handler threw (they are skipped)
+        public long failures() {
+            return failures.sum();
+        }
+
+        @Override
+        public void close() {
+            running = false;
+            if (consumers.remove(this) && policy == Policy.BACKPRESSURE) {
+                gating.decrementAndGet();
+            }
+            LockSupport.unpark(thread);
+            if (Thread.currentThread() != thread) {
+                try {
+                    thread.join(TimeUnit.SECONDS.toMillis(5));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        private void run() {
+            int idle = 0;
+            long parkNanos = 1_000;
+            while (running) {
+                long from = sequence;
+                delivered = 0;
+                long next = read(from, maxBatch, event, this::deliver);
+                if (next - from > delivered) {
+                    missed += next - from - delivered;
+                }
+                if (next == from) {
+                    // Nothing new
+                    if (++idle > SPINS) {
+                        LockSupport.parkNanos(parkNanos);
+                        parkNanos = Math.min(parkNanos * 2, MAX_PARK_NANOS);
+                    } else {
+                        Thread.yield();
+                    }
+                    continue;
+                }
+                idle = 0;
+                parkNanos = 1_000;
+                sequence = next;
+            }
+        }
+
+        private void deliver(DonationEvent next, boolean endOfBatch) {
+            delivered++;
+            try {
+                handler.onEvent(next, endOfBatch);
+            } catch (RuntimeException e) {
+                failures.increment();
+            }
+        }
+    }
+
+    // ======================================== Event ========================================
+    // One accepted or rejected donation. Consumers get the same instance again for the next event.
+    static class DonationEvent {
+        private long sequence;
+        private BankMetrics.Rejection rejection;
+        private BloodType type;
+        private DonationKind kind;
+        private BloodComponent component;
+        private String donorName;
+        private int amount;
+        private int extra;
+        private long collectedAt;
+        private long recordedAt;
+
+        void set(long sequence, BankMetrics.Rejection rejection, BloodType type, DonationKind kind, BloodComponent component,
+                String donorName, int amount, int extra, long collectedAt, long recordedAt) {
+            this.sequence = sequence;
+            this.rejection = rejection;
+            this.type = type;
+            this.kind = kind;
+            this.component = component;
+            this.donorName = donorName;
+            this.amount = amount;
+            this.extra = extra;
+            this.collectedAt = collectedAt;
+            this.recordedAt = recordedAt;
+        }
+
+        public long sequence() { return sequence; }
+
+        public boolean isAccepted() { return rejection == null; }
+
+        // Why the donation was refused; null when it was accepted
+        public BankMetrics.Rejection rejection() { return rejection; }
+
+        // Null when the blood type did not parse
+        public BloodType type() { return type; }
+
+        public DonationKind kind() { return kind; }
+
+        public BloodComponent component() { return component; }
+
+        public String donorName() { return donorName; }
+
+        public int amount() { return amount; }
+
+        // Age for regular donations, 1/0 urgency flag for emergency donations
+        public int extra() { return extra; }
+
+        // Collection time, to the minute
+        public long collectedAt() { return collectedAt; }
+
+        // When the bank accepted or rejected it
+        public long recordedAt() { return recordedAt; }
+    }
+}
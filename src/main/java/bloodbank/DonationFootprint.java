@@ -0,0 +1,84 @@
+package bloodbank;
+
+import java.util.*;
+
+// =================================================== Heap Footprint Comparison ===================================================
+// Compares retained heap of the old ArrayList<BloodDonation> layout against the columnar DonationStore.
+// Usage: java DonationFootprint [donations] [distinctDonors]
+public class DonationFootprint {
+    private static final String[] TYPES = { "A+", "B+", "AB+", "O+", "A-", "B-", "AB-", "O-" };
+
+    public static void main(String[] args) {
+        int donations = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int donors = args.length > 1 ? Integer.parseInt(args[1]) : Math.max(1, donations / 4);
+
+        long before = usedHeap();
+        List<BloodDonation> objectLayout = buildObjectLayout(donations, donors);
+        long objectBytes = usedHeap() - before;
+        int keepObjects = objectLayout.size();
+        objectLayout = null;
+
+        before = usedHeap();
+        DonationStore columnarLayout = buildColumnarLayout(donations, donors);
+        long columnarBytes = usedHeap() - before;
+        int keepColumns = columnarLayout.count(DonationKind.REGULAR) + columnarLayout.count(DonationKind.EMERGENCY);
+
+        // Kept next to the store by BloodBank: per-donor history and the name trie
+        before = usedHeap();
+        DonorRegistry registry = new DonorRegistry();
+        registry.load(columnarLayout);
+        long registryBytes = usedHeap() - before;
+        int keepDonors = registry.donorCount();
+
+        System.out.println("Donations: " + donations + ", distinct donors: " + donors);
+        System.out.printf("ArrayList<BloodDonation>: %,d bytes (%.1f bytes/donation)%n", objectBytes, (double) objectBytes / keepObjects);
+        System.out.printf("DonationStore (columnar): %,d bytes (%.1f bytes/donation)%n", columnarBytes, (double) columnarBytes / keepColumns);
+        System.out.printf("Ratio: %.2fx%n", (double) objectBytes / columnarBytes);
+        System.out.printf("DonorRegistry (%,d donors): %,d bytes (%.1f bytes/donation)%n", keepDonors, registryBytes, (double) registryBytes / keepColumns);
+    }
+
+    // Mirrors what the console produces: every input line is a fresh String, blood types included
+    private static List<BloodDonation> buildObjectLayout(int donations, int donors) {
+        List<BloodDonation> regular = new ArrayList<>();
+        List<BloodDonation> emergency = new ArrayList<>();
+        for (int i = 0; i < donations; i++) {
+            String name = new String("Donor " + (i % donors));
+            String type = new String(TYPES[i & 7]);
+            if (i % 5 == 0) {
+                emergency.add(new EmergencyDonation(name, type, 450, true));
+            } else {
+                regular.add(new RegularDonation(name, type, 450, 18 + i % 40));
+            }
+        }
+        regular.addAll(emergency);
+        return regular;
+    }
+
+    private static DonationStore buildColumnarLayout(int donations, int donors) {
+        DonationStore store = new DonationStore();
+        BloodType[] types = BloodType.values();
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < donations; i++) {
+            String name = new String("Donor " + (i % donors));
+            if (i % 5 == 0) {
+                store.add(types[i & 7], DonationKind.EMERGENCY, name, 450, 1, BloodComponent.WHOLE_BLOOD, now);
+            } else {
+                store.add(types[i & 7], DonationKind.REGULAR, name, 450, 18 + i % 40, BloodComponent.WHOLE_BLOOD, now);
+            }
+        }
+        return store;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
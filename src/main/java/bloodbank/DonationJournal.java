@@ -0,0 +1,365 @@
+package bloodbank;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.concurrent.locks.StampedLock;
+import java.util.zip.CRC32;
+
+// =================================================== Donation Journal ===================================================
+// Append-only write-ahead log for accepted donations and donor accounts. Appends go to an in-memory buffer
+// and a background flusher writes and fsyncs them in groups (group commit), so a record is on disk at most
+// one durability window after it was appended without paying one fsync per donation. A zero window writes as soon
+// as anything is appended; appends that arrive during a write still share the next fsync.
+//
+// File layout: int magic, int version, long epoch, then records of
+// [int payload length][byte record type][payload][int crc32]. Donation records carry the row's sequence number.
+// Blood types are stored as ordinals.
+// An issue record marks a donation (by blood type and sequence) as handed out by the allocator.
+// A checkpoint writes a snapshot covering the current epoch and restarts the journal at the next one.
+// Once a background flush fails the journal stops: the flusher exits, and every later beginMutation and append
+// throws (UncheckedIOException) so no caller goes on believing its changes are being saved.
+class DonationJournal implements Closeable {
+    private static final int MAGIC = 0x424A4E4C; // "BJNL"
+    private static final int VERSION = 2;
+    private static final int HEADER_BYTES = 16;
+    private static final byte ACCOUNT = 2;
+    private static final byte DONATION = 4;
+    private static final byte ISSUE = 5;
+    private static final int EAGER_FLUSH_BYTES = 1 << 20;
+
+    // Receives records on replay
+    interface Listener {
+        void donation(BloodType type, DonationKind kind, String donorName, int amount, int extra, BloodComponent component, long collectedAt,
+                int sequence);
+        void account(String username, String credential);
+        void issued(BloodType type, int sequence);
+    }
+
+    // Durably writes a snapshot of the full state, stamped with the epoch the journal restarts at
+    interface Checkpoint {
+        void write(long journalEpoch) throws IOException;
+    }
+
+    private final Path path;
+    private final long durabilityWindowMillis;
+    private final long compactionThresholdBytes;
+    private final Object ioLock = new Object();
+    // Mutations hold a shared stamp while they change in-memory state and append their record, so they never
+    // exclude each other; a checkpoint takes it exclusively so its snapshot and the journal reset agree
+    private final StampedLock gate = new StampedLock();
+    private final CRC32 crc = new CRC32();
+    private FileChannel channel;
+    private ByteBuffer pending = ByteBuffer.allocate(64 * 1024);
+    private ByteBuffer spare = ByteBuffer.allocate(64 * 1024);
+    private long appendedSeq;
+    private long sizeAfterCompaction;
+    private long epoch;
+    private volatile boolean compactionDue;
+    private volatile boolean closed;
+    private volatile IOException failure;
+    private Thread flusher;
+
+    public DonationJournal(Path path, long durabilityWindowMillis, long compactionThresholdBytes) {
+        if (durabilityWindowMillis < 0) {
+            throw new IllegalArgumentException("durability window must not be negative");
+        }
+        this.path = path;
+        this.durabilityWindowMillis = durabilityWindowMillis;
+        this.compactionThresholdBytes = compactionThresholdBytes;
+    }
+
+    // ======================================== Startup: replay then open for append ========================================
+    // Replays every intact record into the listener, drops a torn tail left by a crash, then starts the flusher.
+    // A journal older than snapshotEpoch is already contained in the loaded snapshot and is only reset.
+    public void open(Listener listener, long snapshotEpoch) throws IOException {
+        long goodLength = Files.exists(path) ? replay(listener, snapshotEpoch) : 0;
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.READ);
+        if (goodLength == 0) {
+            epoch = Math.max(epoch, snapshotEpoch);
+            resetFile();
+            goodLength = channel.size();
+        } else if (channel.size() > goodLength) {
+            channel.truncate(goodLength);
+            channel.force(true);
+        }
+        channel.position(goodLength);
+        sizeAfterCompaction = goodLength;
+        flusher = new Thread(this::flushLoop, "journal-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    // Returns the length of the valid prefix of the file, or 0 when the file has to be started over
+    private long replay(Listener listener, long snapshotEpoch) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a donation journal: " + path);
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported journal version " + version + ": " + path);
+            }
+            epoch = in.readLong();
+            long position = HEADER_BYTES;
+            if (epoch < snapshotEpoch) {
+                return 0;
+            }
+            byte[] payload = new byte[256];
+            while (true) {
+                int length;
+                byte type;
+                try {
+                    length = in.readInt();
+                    if (length < 0 || length > (1 << 20)) {
+                        return position;
+                    }
+                    type = in.readByte();
+                    if (payload.length < length) {
+                        payload = new byte[length];
+                    }
+                    in.readFully(payload, 0, length);
+                    int storedCrc = in.readInt();
+                    crc.reset();
+                    crc.update(type);
+                    crc.update(payload, 0, length);
+                    if ((int) crc.getValue() != storedCrc) {
+                        return position;
+                    }
+                } catch (EOFException e) {
+                    return position;
+                }
+                decode(type, ByteBuffer.wrap(payload, 0, length), listener);
+                position += 9 + length;
+            }
+        } catch (EOFException e) {
+            return 0;
+        }
+    }
+
+    private static void decode(byte type, ByteBuffer payload, Listener listener) {
+        if (type == DONATION) {
+            BloodType bloodType = BloodType.ofOrdinal(payload.get());
+            DonationKind kind = DonationKind.values()[payload.get()];
+            BloodComponent component = BloodComponent.values()[payload.get()];
+            int amount = payload.getInt();
+            int extra = payload.getInt();
+            long collectedAt = payload.getInt() * 60_000L;
+            int sequence = payload.getInt();
+            listener.donation(bloodType, kind, getString(payload), amount, extra, component, collectedAt, sequence);
+        } else if (type == ACCOUNT) {
+            String username = getString(payload);
+            listener.account(username, getString(payload));
+        } else if (type == ISSUE) {
+            BloodType bloodType = BloodType.ofOrdinal(payload.get());
+            listener.issued(bloodType, payload.getInt());
+        }
+    }
+
+    // ======================================== Appends ========================================
+    public long beginMutation() {
+        checkHealthy();
+        return gate.readLock();
+    }
+
+    public void endMutation(long stamp) {
+        gate.unlockRead(stamp);
+    }
+
+    // The collection time is kept to the minute, like in the store. Called under the store's partition lock
+    // (see DonationStore.AddListener) so each partition's records are in sequence order.
+    public long appendDonation(BloodType type, DonationKind kind, String donorName, int amount, int extra, BloodComponent component, long collectedAt,
+            int sequence) {
+        byte[] name = donorName.getBytes(StandardCharsets.UTF_8);
+        synchronized (this) {
+            int start = beginRecord(DONATION, 19 + 2 + name.length);
+            pending.put((byte) type.ordinal()).put((byte) kind.ordinal()).put((byte) component.ordinal()).putInt(amount).putInt(extra)
+                    .putInt(DonationStore.toMinute(collectedAt)).putInt(sequence);
+            pending.putShort((short) name.length).put(name);
+            return endRecord(start);
+        }
+    }
+
+    public long appendIssue(BloodType type, int sequence) {
+        synchronized (this) {
+            int start = beginRecord(ISSUE, 5);
+            pending.put((byte) type.ordinal()).putInt(sequence);
+            return endRecord(start);
+        }
+    }
+
+    public long appendAccount(String username, String credential) {
+        byte[] user = username.getBytes(StandardCharsets.UTF_8);
+        byte[] pass = credential.getBytes(StandardCharsets.UTF_8);
+        synchronized (this) {
+            int start = beginRecord(ACCOUNT, 2 + user.length + 2 + pass.length);
+            pending.putShort((short) user.length).put(user);
+            pending.putShort((short) pass.length).put(pass);
+            return endRecord(start);
+        }
+    }
+
+    private int beginRecord(byte type, int payloadLength) {
+        if (closed) {
+            throw new IllegalStateException("Journal is closed");
+        }
+        checkHealthy();
+        int needed = 4 + 1 + payloadLength + 4;
+        if (pending.remaining() < needed) {
+            ByteBuffer bigger = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + needed));
+            pending.flip();
+            bigger.put(pending);
+            pending = bigger;
+        }
+        int start = pending.position();
+        pending.putInt(payloadLength).put(type);
+        return start;
+    }
+
+    private long endRecord(int start) {
+        crc.reset();
+        crc.update(pending.array(), start + 4, pending.position() - start - 4);
+        pending.putInt((int) crc.getValue());
+        if (pending.position() >= EAGER_FLUSH_BYTES || durabilityWindowMillis == 0) {
+            notifyAll();
+        }
+        return ++appendedSeq;
+    }
+
+    private void checkHealthy() {
+        IOException failed = failure;
+        if (failed != null) {
+            throw new UncheckedIOException("Journal write failed, changes can no longer be saved: "
+                    + (failed.getMessage() == null ? failed.getClass().getSimpleName() : failed.getMessage()), failed);
+        }
+    }
+
+    // ======================================== Group commit ========================================
+    private void flushLoop() {
+        while (!closed) {
+            synchronized (this) {
+                try {
+                    if (durabilityWindowMillis > 0) {
+                        wait(durabilityWindowMillis);
+                    } else {
+                        // wait(0) would never time out: wait for an append instead (endRecord notifies)
+                        while (pending.position() == 0 && !closed) {
+                            wait();
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            try {
+                flush();
+                if (channel.size() - sizeAfterCompaction > compactionThresholdBytes) {
+                    compactionDue = true;
+                }
+            } catch (IOException e) {
+                // What was in the failed batch is lost; appends fail from now on (see checkHealthy)
+                if (failure == null) {
+                    failure = e;
+                }
+                System.err.println("Journal flush failed: " + e.getMessage());
+                return;
+            }
+        }
+    }
+
+    // Writes everything appended so far with a single fsync. A failure is kept: the journal accepts nothing after it.
+    public void flush() throws IOException {
+        synchronized (ioLock) {
+            if (failure != null) {
+                throw failure;
+            }
+            ByteBuffer batch;
+            synchronized (this) {
+                if (pending.position() == 0) {
+                    return;
+                }
+                batch = pending;
+                pending = spare;
+                spare = batch;
+            }
+            batch.flip();
+            try {
+                while (batch.hasRemaining()) {
+                    channel.write(batch);
+                }
+                channel.force(false);
+            } catch (IOException e) {
+                failure = e;
+                throw e;
+            }
+            batch.clear();
+        }
+    }
+
+    // ======================================== Compaction (checkpoint) ========================================
+    // Set by the flusher once the log has grown past the threshold since the last checkpoint. The checkpoint
+    // itself runs on the thread that owns the in-memory state so the snapshot it writes is consistent.
+    public boolean isCompactionDue() {
+        return compactionDue;
+    }
+
+    // Flushes, has the caller write a snapshot for the next epoch, then restarts the journal empty at that epoch.
+    // A crash before the reset leaves an older-epoch journal, which the next open skips because the snapshot has it.
+    public void checkpoint(Checkpoint snapshot) throws IOException {
+        long stamp = gate.writeLock();
+        try {
+            synchronized (ioLock) {
+                flush();
+                snapshot.write(epoch + 1);
+                epoch++;
+                resetFile();
+                compactionDue = false;
+            }
+        } finally {
+            gate.unlockWrite(stamp);
+        }
+    }
+
+    private void resetFile() throws IOException {
+        channel.truncate(0);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).putInt(MAGIC).putInt(VERSION).putLong(epoch);
+        header.flip();
+        channel.position(0);
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+        channel.force(true);
+        sizeAfterCompaction = channel.size();
+    }
+
+    // ======================================== Helpers ========================================
+    private static String getString(ByteBuffer payload) {
+        int length = payload.getShort() & 0xFFFF;
+        String value = new String(payload.array(), payload.arrayOffset() + payload.position(), length, StandardCharsets.UTF_8);
+        payload.position(payload.position() + length);
+        return value;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        synchronized (this) {
+            notifyAll();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package bloodbank;
+
+// =================================================== Donation Kind Enum ===================================================
+enum DonationKind {
+    REGULAR, EMERGENCY;
+
+    public static DonationKind of(BloodDonation donation) {
+        return donation instanceof EmergencyDonation ? EMERGENCY : REGULAR;
+    }
+}
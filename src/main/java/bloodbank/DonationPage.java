@@ -0,0 +1,158 @@
+package bloodbank;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+// =================================================== Donation Page ===================================================
+// One page of a donation listing, filled by DonationStore.page. The page keeps the raw columns of its rows in
+// arrays that are reused from page to page, so paging through a large inventory does not create a
+// BloodDonation per row.
+//
+// The resume token of a page is the sequence number of its last row. Passing it back continues right after that
+// row, even if donations were added in between. A null or empty token starts from the beginning.
+class DonationPage {
+    private final BloodType[] types;
+    private final String[] donorNames;
+    private final int[] amounts;
+    private final int[] extras;
+    private final int[] sequences;
+    private final BloodComponent[] components;
+    private final int[] collectedMinutes;
+    private final char[] chunk = new char[8192];
+    private DonationKind kind;
+    private int size;
+    private boolean hasMore;
+
+    public DonationPage(int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("page size must be positive: " + pageSize);
+        }
+        types = new BloodType[pageSize];
+        donorNames = new String[pageSize];
+        amounts = new int[pageSize];
+        extras = new int[pageSize];
+        sequences = new int[pageSize];
+        components = new BloodComponent[pageSize];
+        collectedMinutes = new int[pageSize];
+    }
+
+    public int capacity() {
+        return types.length;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public DonationKind kind() {
+        return kind;
+    }
+
+    public boolean hasMore() {
+        return hasMore;
+    }
+
+    // Token that resumes after the last row of this page (or repeats this position if the page is empty)
+    public String nextToken(String currentToken) {
+        return size == 0 ? currentToken : Integer.toString(sequences[size - 1]);
+    }
+
+    public BloodType type(int index) {
+        return types[index];
+    }
+
+    public String donorName(int index) {
+        return donorNames[index];
+    }
+
+    public int amount(int index) {
+        return amounts[index];
+    }
+
+    // Age for regular donations, 1/0 urgency flag for emergency donations
+    public int extra(int index) {
+        return extras[index];
+    }
+
+    public BloodComponent component(int index) {
+        return components[index];
+    }
+
+    public long collectedAt(int index) {
+        return collectedMinutes[index] * 60_000L;
+    }
+
+    public long expiresAt(int index) {
+        return collectedAt(index) + components[index].shelfLifeMillis();
+    }
+
+    // Sequence number to resume after, or -1 for the first page
+    public static int afterSequence(String token) {
+        if (token == null || token.isEmpty()) {
+            return -1;
+        }
+        try {
+            int sequence = Integer.parseInt(token);
+            if (sequence >= 0) {
+                return sequence;
+            }
+        } catch (NumberFormatException e) {
+            // fall through
+        }
+        throw new IllegalArgumentException("invalid page token: " + token);
+    }
+
+    // ======================================== Filling (DonationStore) ========================================
+    void reset(DonationKind kind) {
+        this.kind = kind;
+        // Drop the previous page's name references so they can be collected
+        Arrays.fill(donorNames, 0, size, null);
+        size = 0;
+        hasMore = false;
+    }
+
+    boolean isFull() {
+        return size == types.length;
+    }
+
+    void add(BloodType type, String donorName, int amount, int extra, int sequence, BloodComponent component, int collectedMinute) {
+        types[size] = type;
+        donorNames[size] = donorName;
+        amounts[size] = amount;
+        extras[size] = extra;
+        sequences[size] = sequence;
+        components[size] = component;
+        collectedMinutes[size] = collectedMinute;
+        size++;
+    }
+
+    void setHasMore(boolean hasMore) {
+        this.hasMore = hasMore;
+    }
+
+    // ======================================== Rendering ========================================
+    // Writes the rows in the console list format. The rows are formatted into buffer (reused across pages) and
+    // copied to out through a fixed char chunk, so no per-row strings are created.
+    public void render(Writer out, StringBuilder buffer) throws IOException {
+        buffer.setLength(0);
+        for (int i = 0; i < size; i++) {
+            appendRow(buffer, types[i], donorNames[i], amounts[i], components[i], expiresAt(i));
+        }
+        for (int start = 0; start < buffer.length(); start += chunk.length) {
+            int end = Math.min(buffer.length(), start + chunk.length);
+            buffer.getChars(start, end, chunk, 0);
+            out.write(chunk, 0, end - start);
+        }
+    }
+
+    // Same text as "\t\t\t\t" + BloodDonation.toString() + "\n", without the intermediate strings
+    static void appendRow(StringBuilder line, BloodType type, String donorName, int amount, BloodComponent component, long expiresAt) {
+        line.append("\t\t\t\tDonor: ").append(donorName)
+            .append("\n\t\t\t\t    Blood Type: ").append(type.label())
+            .append("\n\t\t\t\t    Amount: ").append(amount).append("ml")
+            .append("\n\t\t\t\t    Component: ").append(component.label()).append(", expires ");
+        BloodComponent.appendTime(line, expiresAt);
+        line.append('\n');
+    }
+}
@@ -0,0 +1,421 @@
+package bloodbank;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.CRC32;
+
+// =================================================== Donation Snapshot ===================================================
+// Versioned fixed-layout image of the donation store and donor accounts. Loading maps the file and only
+// validates its small sections; donation rows and donor names are decoded from the mapping when first read.
+// Each blood type partition has its own checksum, checked by the store when the partition is first read
+// (see verify), so startup neither reads nor faults in the row pages and its cost does not grow with the rows.
+//
+// Layout (big-endian, offsets are absolute file positions):
+//   header   int magic, int version, long bodyLength, int headCrc32 (meta and table), int tailCrc32 (names and
+//            accounts), long reserved
+//   meta     long journalEpoch, int nextSequence, int typeCount, int kindCount, int nameCount, int accountCount, int reserved
+//   table    per blood type: long rowsOffset, int rowCount, int partitionCrc32 (its rows, then its kind lists), then
+//            per kind: long offset, int count, int available, long available ml
+//   rows     per blood type, ROW_BYTES each: byte kind, byte component, byte status, 1 byte padding, int amount, int extra,
+//            int nameId, int sequence, int collection minute (minutes since the epoch)
+//   kinds    per blood type and kind: int row numbers in insertion order
+//   names    int offsets[nameCount + 1] relative to the blob, then the UTF-8 blob
+//   accounts per account: short length + UTF-8 username, short length + UTF-8 credential
+// Reservations are not persisted: RESERVED rows are written as AVAILABLE (and counted as such).
+class DonationSnapshot {
+    static final int ROW_BYTES = 24;
+    private static final int MAGIC = 0x42534E50; // "BSNP"
+    private static final int VERSION = 4;
+    private static final int HEADER_BYTES = 32;
+    private static final int META_BYTES = 32;
+    private static final int KIND_ENTRY_BYTES = 24;
+
+    private final MappedByteBuffer map;
+    private final long journalEpoch;
+    private final int nextSequence;
+    private final int nameCount;
+    private final int accountCount;
+    private final long[] rowsOffsets;
+    private final int[] rowCounts;
+    private final int[] partitionCrcs;
+    private final long[][] kindOffsets;
+    private final int[][] kindCounts;
+    private final int[][] availableCounts;
+    private final long[][] availableMl;
+    private final long namesOffset;
+    private final long accountsOffset;
+
+    // The meta and table sections have already been checked against the header
+    private DonationSnapshot(MappedByteBuffer map) throws IOException {
+        this.map = map;
+        int position = HEADER_BYTES;
+        journalEpoch = map.getLong(position);
+        nextSequence = map.getInt(position + 8);
+        nameCount = map.getInt(position + 20);
+        accountCount = map.getInt(position + 24);
+        position += META_BYTES;
+        BloodType[] types = BloodType.values();
+        int kindCount = DonationKind.values().length;
+        rowsOffsets = new long[types.length];
+        rowCounts = new int[types.length];
+        partitionCrcs = new int[types.length];
+        kindOffsets = new long[types.length][kindCount];
+        kindCounts = new int[types.length][kindCount];
+        availableCounts = new int[types.length][kindCount];
+        availableMl = new long[types.length][kindCount];
+        for (int t = 0; t < types.length; t++) {
+            rowsOffsets[t] = map.getLong(position);
+            rowCounts[t] = map.getInt(position + 8);
+            partitionCrcs[t] = map.getInt(position + 12);
+            position += 16;
+            for (int k = 0; k < kindCount; k++) {
+                kindOffsets[t][k] = map.getLong(position);
+                kindCounts[t][k] = map.getInt(position + 8);
+                availableCounts[t][k] = map.getInt(position + 12);
+                availableMl[t][k] = map.getLong(position + 16);
+                position += KIND_ENTRY_BYTES;
+            }
+        }
+        // The name section directly follows the row and kind sections
+        long end = position;
+        for (int t = 0; t < types.length; t++) {
+            end = Math.max(end, rowsOffsets[t] + (long) rowCounts[t] * ROW_BYTES);
+            for (int k = 0; k < kindCount; k++) {
+                end = Math.max(end, kindOffsets[t][k] + kindCounts[t][k] * 4L);
+            }
+        }
+        if (end + 4 + nameCount * 4L > map.capacity()) {
+            throw new IOException("Snapshot sections run past the end of the file");
+        }
+        namesOffset = end;
+        int blobLength = map.getInt((int) namesOffset + nameCount * 4);
+        accountsOffset = namesOffset + (nameCount + 1) * 4L + blobLength;
+        if (blobLength < 0 || accountsOffset > map.capacity()) {
+            throw new IOException("Snapshot sections run past the end of the file");
+        }
+    }
+
+    private static int tableBytes() {
+        return BloodType.values().length * (16 + DonationKind.values().length * KIND_ENTRY_BYTES);
+    }
+
+    // ======================================== Loading ========================================
+    // Maps and validates a snapshot; a torn file, or a corrupt header, table, name or account section, is rejected
+    // with an IOException. Partitions are checked later, by verify.
+    public static DonationSnapshot load(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES + META_BYTES) {
+                throw new IOException("Snapshot is truncated: " + path);
+            }
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot is larger than 2 GB: " + path);
+            }
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (map.getInt(0) != MAGIC) {
+                throw new IOException("Not a donation snapshot: " + path);
+            }
+            if (map.getInt(4) != VERSION) {
+                throw new IOException("Unsupported snapshot version " + map.getInt(4) + ": " + path);
+            }
+            if (map.getLong(8) != size - HEADER_BYTES || size < HEADER_BYTES + META_BYTES + tableBytes()) {
+                throw new IOException("Snapshot is truncated: " + path);
+            }
+            int typeCount = map.getInt(HEADER_BYTES + 12);
+            int kindCount = map.getInt(HEADER_BYTES + 16);
+            if (typeCount != BloodType.values().length || kindCount != DonationKind.values().length) {
+                throw new IOException("Snapshot was written for " + typeCount + " blood types and " + kindCount + " donation kinds");
+            }
+            if (crc(slice(map, HEADER_BYTES, META_BYTES + tableBytes())) != map.getInt(16)) {
+                throw new IOException("Snapshot checksum mismatch: " + path);
+            }
+            DonationSnapshot snapshot = new DonationSnapshot(map);
+            if (crc(slice(map, snapshot.namesOffset, size - snapshot.namesOffset)) != map.getInt(20)) {
+                throw new IOException("Snapshot checksum mismatch: " + path);
+            }
+            return snapshot;
+        }
+    }
+
+    // Checks one partition's rows and kind lists against the checksum written with them; called once per partition,
+    // on its first read
+    public void verify(BloodType type) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(rows(type));
+        for (DonationKind kind : DonationKind.values()) {
+            crc.update(slice(map, kindOffsets[type.ordinal()][kind.ordinal()], kindCounts[type.ordinal()][kind.ordinal()] * 4L));
+        }
+        if ((int) crc.getValue() != partitionCrcs[type.ordinal()]) {
+            throw new IOException("Snapshot checksum mismatch in the " + type.label() + " partition");
+        }
+    }
+
+    private static int crc(ByteBuffer bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return (int) crc.getValue();
+    }
+
+    public long journalEpoch() {
+        return journalEpoch;
+    }
+
+    public int nextSequence() {
+        return nextSequence;
+    }
+
+    public int rowCount(BloodType type) {
+        return rowCounts[type.ordinal()];
+    }
+
+    public int availableCount(BloodType type, DonationKind kind) {
+        return availableCounts[type.ordinal()][kind.ordinal()];
+    }
+
+    // ml in available rows
+    public long availableMl(BloodType type, DonationKind kind) {
+        return availableMl[type.ordinal()][kind.ordinal()];
+    }
+
+    // Fixed-size rows of one blood type partition, still in the mapped file
+    public ByteBuffer rows(BloodType type) {
+        return slice(map, rowsOffsets[type.ordinal()], (long) rowCounts[type.ordinal()] * ROW_BYTES);
+    }
+
+    public IntBuffer kindRows(BloodType type, DonationKind kind) {
+        int count = kindCounts[type.ordinal()][kind.ordinal()];
+        return slice(map, kindOffsets[type.ordinal()][kind.ordinal()], count * 4L).asIntBuffer();
+    }
+
+    // Dictionary whose names are decoded from the mapping on first lookup
+    public NameDictionary names() {
+        IntBuffer offsets = slice(map, namesOffset, (nameCount + 1) * 4L).asIntBuffer();
+        long blobOffset = namesOffset + (nameCount + 1) * 4L;
+        return new NameDictionary(slice(map, blobOffset, accountsOffset - blobOffset), offsets, nameCount);
+    }
+
+    // Accounts are few and needed for every login, so they are decoded up front
+    public Map<String, String> accounts() {
+        Map<String, String> accounts = new LinkedHashMap<>();
+        ByteBuffer in = slice(map, accountsOffset, map.capacity() - accountsOffset);
+        for (int i = 0; i < accountCount; i++) {
+            String username = getString(in);
+            accounts.put(username, getString(in));
+        }
+        return accounts;
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, long offset, long length) {
+        ByteBuffer view = buffer.duplicate();
+        view.position((int) offset);
+        view.limit((int) (offset + length));
+        return view.slice();
+    }
+
+    private static String getString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getShort() & 0xFFFF];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // ======================================== Writing ========================================
+    // Writes the store and accounts to a temporary file, fsyncs it and atomically replaces the snapshot
+    public static void write(Path path, DonationStore store, Map<String, String> accounts, long journalEpoch) throws IOException {
+        store.expireDue();
+        store.readLockAll();
+        try {
+            writeLocked(path, store, accounts, journalEpoch);
+        } finally {
+            store.readUnlockAll();
+        }
+    }
+
+    private static void writeLocked(Path path, DonationStore store, Map<String, String> accounts, long journalEpoch) throws IOException {
+        BloodType[] types = BloodType.values();
+        DonationKind[] kinds = DonationKind.values();
+
+        // Rebuild a dense name dictionary so the snapshot holds each name once, and sum the available ml
+        Map<String, Integer> nameIds = new HashMap<>();
+        List<byte[]> nameBytes = new ArrayList<>();
+        int blobLength = 0;
+        long[][] availableMl = new long[types.length][kinds.length];
+        for (BloodType type : types) {
+            for (int row = 0; row < store.partitionSize(type); row++) {
+                byte status = store.status(type, row);
+                if (status == DonationStore.AVAILABLE || status == DonationStore.RESERVED) {
+                    availableMl[type.ordinal()][store.kind(type, row).ordinal()] += store.amount(type, row);
+                }
+                String name = store.donorName(type, row);
+                if (!nameIds.containsKey(name)) {
+                    byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+                    nameIds.put(name, nameBytes.size());
+                    nameBytes.add(bytes);
+                    blobLength += bytes.length;
+                }
+            }
+        }
+
+        // Lay out the sections
+        long position = HEADER_BYTES + META_BYTES + tableBytes();
+        long[] rowsOffsets = new long[types.length];
+        for (BloodType type : types) {
+            rowsOffsets[type.ordinal()] = position;
+            position += (long) store.partitionSize(type) * ROW_BYTES;
+        }
+        long[][] kindOffsets = new long[types.length][kinds.length];
+        for (BloodType type : types) {
+            for (DonationKind kind : kinds) {
+                kindOffsets[type.ordinal()][kind.ordinal()] = position;
+                position += store.rowCount(type, kind) * 4L;
+            }
+        }
+
+        // The body after the table is streamed first, one checksum per section; the meta and table sections, which
+        // hold the partition checksums, are written last
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ChecksummedWriter out = new ChecksummedWriter(channel, HEADER_BYTES + META_BYTES + tableBytes());
+            CRC32[] partitionCrcs = new CRC32[types.length];
+            IntList[][] kindRows = new IntList[types.length][kinds.length];
+            for (BloodType type : types) {
+                partitionCrcs[type.ordinal()] = new CRC32();
+                out.section(partitionCrcs[type.ordinal()]);
+                for (DonationKind kind : kinds) {
+                    kindRows[type.ordinal()][kind.ordinal()] = new IntList();
+                }
+                for (int row = 0; row < store.partitionSize(type); row++) {
+                    DonationKind kind = store.kind(type, row);
+                    byte status = store.status(type, row);
+                    out.buffer(ROW_BYTES).put((byte) kind.ordinal()).put((byte) store.component(type, row).ordinal())
+                            .put(status == DonationStore.RESERVED ? DonationStore.AVAILABLE : status).put((byte) 0)
+                            .putInt(store.amount(type, row)).putInt(store.extra(type, row))
+                            .putInt(nameIds.get(store.donorName(type, row))).putInt(store.sequence(type, row))
+                            .putInt(store.collectedMinute(type, row));
+                    kindRows[type.ordinal()][kind.ordinal()].add(row);
+                }
+            }
+            for (BloodType type : types) {
+                out.section(partitionCrcs[type.ordinal()]);
+                for (DonationKind kind : kinds) {
+                    IntList rows = kindRows[type.ordinal()][kind.ordinal()];
+                    for (int i = 0; i < rows.size(); i++) {
+                        out.buffer(4).putInt(rows.get(i));
+                    }
+                }
+            }
+            CRC32 tailCrc = new CRC32();
+            out.section(tailCrc);
+            int offset = 0;
+            for (byte[] bytes : nameBytes) {
+                out.buffer(4).putInt(offset);
+                offset += bytes.length;
+            }
+            out.buffer(4).putInt(blobLength);
+            for (byte[] bytes : nameBytes) {
+                out.bytes(bytes);
+            }
+            for (Map.Entry<String, String> account : accounts.entrySet()) {
+                byte[] username = account.getKey().getBytes(StandardCharsets.UTF_8);
+                byte[] credential = account.getValue().getBytes(StandardCharsets.UTF_8);
+                out.buffer(2).putShort((short) username.length);
+                out.bytes(username);
+                out.buffer(2).putShort((short) credential.length);
+                out.bytes(credential);
+            }
+            long end = out.finish();
+
+            ByteBuffer head = ByteBuffer.allocate(META_BYTES + tableBytes());
+            head.putLong(journalEpoch).putInt(store.nextSequence()).putInt(types.length).putInt(kinds.length)
+                    .putInt(nameBytes.size()).putInt(accounts.size()).putInt(0);
+            for (BloodType type : types) {
+                head.putLong(rowsOffsets[type.ordinal()]).putInt(store.partitionSize(type)).putInt((int) partitionCrcs[type.ordinal()].getValue());
+                for (DonationKind kind : kinds) {
+                    head.putLong(kindOffsets[type.ordinal()][kind.ordinal()])
+                            .putInt(store.rowCount(type, kind))
+                            .putInt(store.availableCount(type, kind) + store.reservedCount(type, kind))
+                            .putLong(availableMl[type.ordinal()][kind.ordinal()]);
+                }
+            }
+            CRC32 headCrc = new CRC32();
+            headCrc.update(head.array());
+            head.flip();
+            write(channel, head, HEADER_BYTES);
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            header.putInt(MAGIC).putInt(VERSION).putLong(end - HEADER_BYTES).putInt((int) headCrc.getValue()).putInt((int) tailCrc.getValue())
+                    .putLong(0);
+            header.flip();
+            write(channel, header, 0);
+            channel.force(true);
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void write(FileChannel channel, ByteBuffer bytes, long position) throws IOException {
+        channel.position(position);
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+    }
+
+    // Streams the body through one reusable buffer, updating the current section's CRC as each chunk is written
+    private static class ChecksummedWriter {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+        private CRC32 crc = new CRC32();
+        private long position;
+
+        ChecksummedWriter(FileChannel channel, long start) throws IOException {
+            this.channel = channel;
+            this.position = start;
+            channel.position(start);
+        }
+
+        // Bytes written from now on count towards crc (a section may be continued later)
+        void section(CRC32 crc) throws IOException {
+            drain();
+            this.crc = crc;
+        }
+
+        ByteBuffer buffer(int needed) throws IOException {
+            if (buffer.remaining() < needed) {
+                drain();
+            }
+            return buffer;
+        }
+
+        void bytes(byte[] bytes) throws IOException {
+            int offset = 0;
+            while (offset < bytes.length) {
+                if (!buffer.hasRemaining()) {
+                    drain();
+                }
+                int chunk = Math.min(buffer.remaining(), bytes.length - offset);
+                buffer.put(bytes, offset, chunk);
+                offset += chunk;
+            }
+        }
+
+        private void drain() throws IOException {
+            buffer.flip();
+            crc.update(buffer.array(), 0, buffer.limit());
+            position += buffer.limit();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        // Returns the file position after the last byte
+        long finish() throws IOException {
+            drain();
+            return position;
+        }
+    }
+}
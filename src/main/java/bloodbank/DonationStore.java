@@ -0,0 +1,1062 @@
+package bloodbank;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.time.Clock;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongPredicate;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// =================================================== Donation Store ===================================================
+// Columnar storage behind BloodBank: one partition per blood type, each holding parallel primitive
+// arrays instead of BloodDonation objects. Donor names are interned into a shared dictionary.
+// A store opened from a snapshot keeps the snapshot rows in the mapped file and only decodes them when read;
+// rows added afterwards go to the in-memory arrays. A partition's mapped rows are checked against the snapshot's
+// checksum on their first read; a corrupt partition fails every read of it (UncheckedIOException).
+//
+// Each partition has its own read/write lock (lock striping by blood type), so writers of different blood
+// types never wait for each other and readers only lock the partitions they read.
+//
+// Every row has a status. Only AVAILABLE rows are counted and returned by the read methods; a row becomes
+// EXPIRED when its partition's ExpiryWheel reaches the row's expiry minute (collection time + component shelf
+// life). The wheel is advanced at the start of each read, so no read ever sees an expired unit and expiry never
+// needs a scan of the inventory. Expired rows stay in the store (and in snapshots) as history.
+//
+// Allocation claims AVAILABLE rows first-expired-first-out from a per-partition, per-kind min-heap keyed by expiry
+// and marks them RESERVED under the partition's write lock, so two claims can never take the same row and claims
+// on different blood types never wait for each other. A reservation ends as ISSUED (commit) or AVAILABLE again
+// (release). Reservations are not persisted: a snapshot stores RESERVED rows as AVAILABLE.
+//
+// The sequence number of a row is its stable identity: it is journaled with the row (under the partition lock, so
+// the journal lists each partition's rows in row order) and restored on replay.
+class DonationStore {
+    static final byte AVAILABLE = 0;
+    static final byte EXPIRED = 1;
+    static final byte RESERVED = 2;
+    static final byte ISSUED = 3;
+    private static final BloodComponent[] COMPONENTS = BloodComponent.values();
+
+    private final NameDictionary names;
+    private final Partition[] partitions;
+    private final AtomicInteger nextSequence = new AtomicInteger();
+    private final Clock clock;
+    private final StockLevels stock = new StockLevels();
+
+    public DonationStore() {
+        this(Clock.systemUTC());
+    }
+
+    public DonationStore(Clock clock) {
+        this.clock = clock;
+        names = new NameDictionary();
+        partitions = new Partition[BloodType.values().length];
+        for (BloodType type : BloodType.values()) {
+            partitions[type.ordinal()] = new Partition(type, stock);
+        }
+    }
+
+    // Opens a store on top of a loaded snapshot without parsing (or checking) its rows
+    public DonationStore(DonationSnapshot snapshot) {
+        this(snapshot, Clock.systemUTC());
+    }
+
+    public DonationStore(DonationSnapshot snapshot, Clock clock) {
+        this.clock = clock;
+        names = snapshot.names();
+        partitions = new Partition[BloodType.values().length];
+        for (BloodType type : BloodType.values()) {
+            IntBuffer[] kindRows = new IntBuffer[DonationKind.values().length];
+            int[] available = new int[kindRows.length];
+            long[] availableMl = new long[kindRows.length];
+            for (DonationKind kind : DonationKind.values()) {
+                kindRows[kind.ordinal()] = snapshot.kindRows(type, kind);
+                available[kind.ordinal()] = snapshot.availableCount(type, kind);
+                availableMl[kind.ordinal()] = snapshot.availableMl(type, kind);
+            }
+            partitions[type.ordinal()] = new Partition(type, stock, snapshot, kindRows, available, availableMl);
+        }
+        nextSequence.set(snapshot.nextSequence());
+    }
+
+    // Receives the sequence number given to each added row, while the partition lock is still held
+    interface AddListener {
+        void added(int index, int sequence);
+    }
+
+    public void add(BloodType type, DonationKind kind, String donorName, int amount, int extra, BloodComponent component, long collectedAt) {
+        add(type, kind, donorName, amount, extra, component, collectedAt, null);
+    }
+
+    public void add(BloodType type, DonationKind kind, String donorName, int amount, int extra, BloodComponent component, long collectedAt,
+            AddListener listener) {
+        int nameId = names.intern(donorName);
+        int collectedMinute = toMinute(collectedAt);
+        Partition partition = partitions[type.ordinal()];
+        partition.lock.writeLock().lock();
+        try {
+            // Sequence is taken under the partition lock so rows within a partition stay in sequence order
+            int seq = nextSequence.getAndIncrement();
+            partition.add(kind, nameId, amount, extra, seq, component, collectedMinute, nowMinute());
+            if (listener != null) {
+                listener.added(0, seq);
+            }
+        } finally {
+            partition.lock.writeLock().unlock();
+        }
+    }
+
+    // Re-inserts a journaled row with its original sequence number
+    public void restore(BloodType type, DonationKind kind, String donorName, int amount, int extra, BloodComponent component, long collectedAt,
+            int sequence) {
+        int nameId = names.intern(donorName);
+        Partition partition = partitions[type.ordinal()];
+        partition.lock.writeLock().lock();
+        try {
+            nextSequence.accumulateAndGet(sequence + 1, Math::max);
+            partition.add(kind, nameId, amount, extra, sequence, component, toMinute(collectedAt), nowMinute());
+        } finally {
+            partition.lock.writeLock().unlock();
+        }
+    }
+
+    // Adds several rows to one partition under a single lock acquisition (bulk import)
+    public void addAll(BloodType type, List<BloodDonation> donations, AddListener listener) {
+        int[] nameIds = new int[donations.size()];
+        for (int i = 0; i < nameIds.length; i++) {
+            nameIds[i] = names.intern(donations.get(i).getDonorName());
+        }
+        Partition partition = partitions[type.ordinal()];
+        partition.lock.writeLock().lock();
+        try {
+            int now = nowMinute();
+            for (int i = 0; i < nameIds.length; i++) {
+                BloodDonation donation = donations.get(i);
+                int seq = nextSequence.getAndIncrement();
+                partition.add(DonationKind.of(donation), nameIds[i], donation.getDonationAmount(), extraOf(donation), seq,
+                        donation.getComponent(), toMinute(donation.getCollectedAt()), now);
+                if (listener != null) {
+                    listener.added(i, seq);
+                }
+            }
+        } finally {
+            partition.lock.writeLock().unlock();
+        }
+    }
+
+    // Available (unexpired) donations of one kind
+    public int count(DonationKind kind) {
+        int total = 0;
+        for (BloodType type : BloodType.values()) {
+            total += count(type, kind);
+        }
+        return total;
+    }
+
+    public int count(BloodType type, DonationKind kind) {
+        Partition partition = partitions[type.ordinal()];
+        partition.expireDue(nowMinute());
+        partition.lock.readLock().lock();
+        try {
+            return partition.available[kind.ordinal()];
+        } finally {
+            partition.lock.readLock().unlock();
+        }
+    }
+
+    // ======================================== Stock levels ========================================
+    // Lock-free running totals of the available stock; see StockLevels
+    public StockLevels stock() {
+        return stock;
+    }
+
+    // Sets a blood type's low-stock threshold in ml (0 turns the alert off). If the level is already below it,
+    // the listener is told right away.
+    public void setLowStockThreshold(BloodType type, long thresholdMl) {
+        Partition partition = partitions[type.ordinal()];
+        partition.lock.writeLock().lock();
+        try {
+            stock.setThreshold(type, thresholdMl);
+            partition.checkThreshold();
+        } finally {
+            partition.lock.writeLock().unlock();
+        }
+    }
+
+    // ======================================== Allocation ========================================
+    // Reserves AVAILABLE rows of one partition and kind, soonest expiry first, until at least neededMl is
+    // reserved or the stock runs out. Reserved row numbers are added to claimed; returns the ml reserved.
+    public int claim(BloodType type, DonationKind kind, int neededMl, IntList claimed) {
+        Partition partition = partitions[type.ordinal()];
+        int now = nowMinute();
+        partition.expireDue(now);
+        partition.lock.writeLock().lock();
+        try {
+            LongHeap heap = partition.fefo(kind);
+            int reservedMl = 0;
+            while (reservedMl < neededMl && heap.size() > 0) {
+                int row = (int) heap.poll();
+                // Entries of rows that expired or were reserved meanwhile are dropped here (lazy deletion)
+                if (partition.status(row) == AVAILABLE && partition.expiryMinute(row) > now) {
+                    partition.setStatus(row, RESERVED);
+                    partition.adjust(kind.ordinal(), -1, -partition.amount(row));
+                    partition.reserved[kind.ordinal()]++;
+                    reservedMl += partition.amount(row);
+                    claimed.add(row);
+                }
+            }
+            return reservedMl;
+        } finally {
+            partition.lock.writeLock().unlock();
+        }
+    }
+
+    // Returns reserved rows to the available stock (or marks them EXPIRED if their shelf life ended meanwhile)
+    public void release(BloodType type, IntList rows) {
+        Partition partition = partitions[type.ordinal()];
+        int now = nowMinute();
+        partition.lock.writeLock().lock();
+        try {
+            for (int i = 0; i < rows.size(); i++) {
+                int row = rows.get(i);
+                if (partition.status(row) != RESERVED) {
+                    continue;
+                }
+                int kind = partition.kind(row);
+                partition.reserved[kind]--;
+                if (partition.expiryMinute(row) <= now) {
+                    partition.setStatus(row, EXPIRED);
+                } else {
+                    partition.setStatus(row, AVAILABLE);
+                    partition.adjust(kind, 1, partition.amount(row));
+                    if (partition.fefo[kind] != null) {
+                        partition.fefo[kind].add(fefoKey(partition.expiryMinute(row), row));
+                    }
+                }
+            }
+        } finally {
+            partition.lock.writeLock().unlock();
+        }
+    }
+
+    // Marks reserved rows ISSUED; their sequence numbers are added to sequences (for the journal)
+    public void issue(BloodType type, IntList rows, IntList sequences) {
+        Partition partition = partitions[type.ordinal()];
+        partition.lock.writeLock().lock();
+        try {
+            for (int i = 0; i < rows.size(); i++) {
+                int row = rows.get(i);
+                if (partition.status(row) == RESERVED) {
+                    partition.setStatus(row, ISSUED);
+                    partition.reserved[partition.kind(row)]--;
+                    sequences.add(partition.sequence(row));
+                }
+            }
+        } finally {
+            partition.lock.writeLock().unlock();
+        }
+    }
+
+    // Takes back rows issue marked ISSUED (the issue could not be recorded); they are RESERVED again, for release
+    public void unissue(BloodType type, IntList rows) {
+        Partition partition = partitions[type.ordinal()];
+        partition.lock.writeLock().lock();
+        try {
+            for (int i = 0; i < rows.size(); i++) {
+                int row = rows.get(i);
+                if (partition.status(row) == ISSUED) {
+                    partition.setStatus(row, RESERVED);
+                    partition.reserved[partition.kind(row)]++;
+                }
+            }
+        } finally {
+            partition.lock.writeLock().unlock();
+        }
+    }
+
+    // Replays an issue from the journal
+    public void markIssued(BloodType type, int sequence) {
+        Partition partition = partitions[type.ordinal()];
+        partition.lock.writeLock().lock();
+        try {
+            int row = partition.rowOfSequence(sequence);
+            if (row < 0) {
+                return;
+            }
+            byte status = partition.status(row);
+            if (status == AVAILABLE) {
+                partition.adjust(partition.kind(row), -1, -partition.amount(row));
+            } else if (status == RESERVED) {
+                partition.reserved[partition.kind(row)]--;
+            }
+            partition.setStatus(row, ISSUED);
+        } finally {
+            partition.lock.writeLock().unlock();
+        }
+    }
+
+    // Expiry time of a row in epoch milliseconds; a row's columns never change, so no lock is needed
+    public long expiresAt(BloodType type, int row) {
+        return partitions[type.ordinal()].expiryMinute(row) * 60_000L;
+    }
+
+    static long fefoKey(int expiryMinute, int row) {
+        return ((long) expiryMinute << 32) | row;
+    }
+
+    // ======================================== Expiry ========================================
+    // Moves every partition's expiry wheel to the current minute; cheap when no minute has passed
+    public void expireDue() {
+        int now = nowMinute();
+        for (Partition partition : partitions) {
+            partition.expireDue(now);
+        }
+    }
+
+    // Available donations expiring within the given time, soonest first. Only the wheel slots inside the
+    // window are read, so the cost follows the number of units in the window, not the inventory size.
+    public List<BloodDonation> expiringSoon(BloodType type, long withinMillis) {
+        int now = nowMinute();
+        int limit = (int) Math.min(Integer.MAX_VALUE, now + Math.max(0, withinMillis) / 60_000L + 1);
+        List<BloodDonation> result = new ArrayList<>();
+        List<Long> order = new ArrayList<>();
+        BloodType[] types = BloodType.values();
+        for (int t = 0; t < partitions.length; t++) {
+            if (type != null && type.ordinal() != t) {
+                continue;
+            }
+            Partition partition = partitions[t];
+            partition.expireDue(now);
+            partition.lock.readLock().lock();
+            try {
+                BloodType partitionType = types[t];
+                partition.wheel.forEachBefore(limit, (row, expiryMinute) -> {
+                    if (partition.status(row) == AVAILABLE) {
+                        order.add(((long) expiryMinute << 32) | result.size());
+                        result.add(view(partition, partitionType, row));
+                    }
+                });
+            } finally {
+                partition.lock.readLock().unlock();
+            }
+        }
+        Collections.sort(order);
+        List<BloodDonation> sorted = new ArrayList<>(result.size());
+        for (long key : order) {
+            sorted.add(result.get((int) key));
+        }
+        return sorted;
+    }
+
+    private int nowMinute() {
+        return toMinute(clock.millis());
+    }
+
+    static int toMinute(long epochMillis) {
+        return (int) Math.floorDiv(epochMillis, 60_000L);
+    }
+
+    // ======================================== Raw row access (used by snapshots) ========================================
+    // These do not lock; callers must make sure no rows are being added (a checkpoint holds the journal gate)
+    // and no row changes status (see readLockAll)
+    public int partitionSize(BloodType type) {
+        return partitions[type.ordinal()].size;
+    }
+
+    // All rows of one kind, whatever their status
+    public int rowCount(BloodType type, DonationKind kind) {
+        return partitions[type.ordinal()].rows[kind.ordinal()].size();
+    }
+
+    public int availableCount(BloodType type, DonationKind kind) {
+        return partitions[type.ordinal()].available[kind.ordinal()];
+    }
+
+    public int reservedCount(BloodType type, DonationKind kind) {
+        return partitions[type.ordinal()].reserved[kind.ordinal()];
+    }
+
+    public byte status(BloodType type, int row) {
+        return partitions[type.ordinal()].status(row);
+    }
+
+    public BloodComponent component(BloodType type, int row) {
+        return COMPONENTS[partitions[type.ordinal()].component(row)];
+    }
+
+    public int collectedMinute(BloodType type, int row) {
+        return partitions[type.ordinal()].collectedMinute(row);
+    }
+
+    public DonationKind kind(BloodType type, int row) {
+        return DonationKind.values()[partitions[type.ordinal()].kind(row)];
+    }
+
+    public int amount(BloodType type, int row) {
+        return partitions[type.ordinal()].amount(row);
+    }
+
+    public int extra(BloodType type, int row) {
+        return partitions[type.ordinal()].extra(row);
+    }
+
+    public String donorName(BloodType type, int row) {
+        return names.get(partitions[type.ordinal()].nameId(row));
+    }
+
+    public int sequence(BloodType type, int row) {
+        return partitions[type.ordinal()].sequence(row);
+    }
+
+    public int nextSequence() {
+        return nextSequence.get();
+    }
+
+    // Receives the columns of one stored row
+    interface RowVisitor {
+        void visit(BloodType type, DonationKind kind, String donorName, int amount, int extra, BloodComponent component, long collectedAt);
+    }
+
+    // Receives the columns history reports need from one stored row, whatever its status
+    interface HistoryVisitor {
+        void visit(DonationKind kind, int amount, int collectedMinute);
+    }
+
+    // Visits rows [from, to) of one partition (every status: issued and expired units are history too) under its
+    // read lock, and returns how many there were. Rows past the end are skipped, so a report can cut a partition
+    // into chunks from a stale partitionSize and scan them from several threads; adds wait for one chunk at most.
+    public int scan(BloodType type, int from, int to, HistoryVisitor visitor) {
+        Partition partition = partitions[type.ordinal()];
+        DonationKind[] kinds = DonationKind.values();
+        partition.lock.readLock().lock();
+        try {
+            int end = Math.min(to, partition.size);
+            for (int row = from; row < end; row++) {
+                visitor.visit(kinds[partition.kind(row)], partition.amount(row), partition.collectedMinute(row));
+            }
+            return Math.max(0, end - from);
+        } finally {
+            partition.lock.readLock().unlock();
+        }
+    }
+
+    // All available donations of one kind in the order they were added
+    public List<BloodDonation> donations(DonationKind kind) {
+        List<BloodDonation> result = new ArrayList<>(count(kind));
+        forEach(kind, (type, k, donorName, amount, extra, component, collectedAt) ->
+                result.add(view(type, k, donorName, amount, extra, component, collectedAt)));
+        return result;
+    }
+
+    // Visits every available row of one kind in insertion order, merging the partitions by sequence number.
+    // Holds the read lock of every partition (always taken in blood type order) for the duration.
+    public void forEach(DonationKind kind, RowVisitor visitor) {
+        expireDue();
+        readLockAll();
+        try {
+            merge(kind, visitor);
+        } finally {
+            readUnlockAll();
+        }
+    }
+
+    // Read-locks every partition in blood type order. A snapshot writer holds these so no row changes status
+    // (expiry) while the rows are copied; the caller must not read through methods that advance the wheels.
+    void readLockAll() {
+        for (Partition partition : partitions) {
+            partition.lock.readLock().lock();
+        }
+    }
+
+    void readUnlockAll() {
+        for (Partition partition : partitions) {
+            partition.lock.readLock().unlock();
+        }
+    }
+
+    private void merge(DonationKind kind, RowVisitor visitor) {
+        BloodType[] types = BloodType.values();
+        int[] cursors = new int[partitions.length];
+        while (true) {
+            int next = -1;
+            int nextSeq = Integer.MAX_VALUE;
+            for (int t = 0; t < partitions.length; t++) {
+                IntList rows = partitions[t].rows(kind.ordinal());
+                if (cursors[t] < rows.size()) {
+                    int seq = partitions[t].sequence(rows.get(cursors[t]));
+                    if (seq < nextSeq) {
+                        nextSeq = seq;
+                        next = t;
+                    }
+                }
+            }
+            if (next < 0) {
+                return;
+            }
+            Partition partition = partitions[next];
+            int row = partition.rows(kind.ordinal()).get(cursors[next]++);
+            if (partition.status(row) == AVAILABLE) {
+                visitor.visit(types[next], kind, names.get(partition.nameId(row)), partition.amount(row), partition.extra(row),
+                        COMPONENTS[partition.component(row)], partition.collectedMinute(row) * 60_000L);
+            }
+        }
+    }
+
+    // Fills page with the next rows of one kind after afterSequence, in insertion order. type == null pages across
+    // every blood type. Each partition's rows are in sequence order, so the start position is a binary search and
+    // a page costs the same near the end of the list as at the start. Only the partitions read are locked.
+    public void page(DonationKind kind, BloodType type, int afterSequence, DonationPage page) {
+        expireDue();
+        int from = type == null ? 0 : type.ordinal();
+        int to = type == null ? partitions.length : type.ordinal() + 1;
+        for (int t = from; t < to; t++) {
+            partitions[t].lock.readLock().lock();
+        }
+        try {
+            BloodType[] types = BloodType.values();
+            int[] cursors = new int[partitions.length];
+            for (int t = from; t < to; t++) {
+                cursors[t] = partitions[t].firstAfter(kind, afterSequence);
+            }
+            page.reset(kind);
+            while (true) {
+                int next = -1;
+                int nextSeq = Integer.MAX_VALUE;
+                for (int t = from; t < to; t++) {
+                    IntList rows = partitions[t].rows(kind.ordinal());
+                    if (cursors[t] < rows.size()) {
+                        int seq = partitions[t].sequence(rows.get(cursors[t]));
+                        if (seq < nextSeq) {
+                            nextSeq = seq;
+                            next = t;
+                        }
+                    }
+                }
+                if (next < 0) {
+                    return;
+                }
+                Partition partition = partitions[next];
+                int row = partition.rows(kind.ordinal()).get(cursors[next]++);
+                if (partition.status(row) != AVAILABLE) {
+                    continue;
+                }
+                if (page.isFull()) {
+                    // Looked ahead to the next available row, so a page is only offered when it has something on it
+                    page.setHasMore(true);
+                    return;
+                }
+                page.add(types[next], names.get(partition.nameId(row)), partition.amount(row), partition.extra(row), nextSeq,
+                        COMPONENTS[partition.component(row)], partition.collectedMinute(row));
+            }
+        } finally {
+            for (int t = from; t < to; t++) {
+                partitions[t].lock.readLock().unlock();
+            }
+        }
+    }
+
+    // Available donations of one kind in a single blood type partition
+    public List<BloodDonation> donations(BloodType type, DonationKind kind) {
+        Partition partition = partitions[type.ordinal()];
+        partition.expireDue(nowMinute());
+        partition.lock.readLock().lock();
+        try {
+            IntList rows = partition.rows(kind.ordinal());
+            List<BloodDonation> result = new ArrayList<>(partition.available[kind.ordinal()]);
+            for (int i = 0; i < rows.size(); i++) {
+                int row = rows.get(i);
+                if (partition.status(row) == AVAILABLE) {
+                    result.add(view(partition, type, row));
+                }
+            }
+            return result;
+        } finally {
+            partition.lock.readLock().unlock();
+        }
+    }
+
+    // The limit available donations of one kind in a partition that expire first, soonest first. Read off the
+    // partition's FEFO heap in key order without polling it, so the cost follows limit (plus the stale entries met on
+    // the way), not the partition size; the heap is built here if no claim has built it yet.
+    public List<BloodDonation> soonestExpiring(BloodType type, DonationKind kind, int limit) {
+        Partition partition = partitions[type.ordinal()];
+        int now = nowMinute();
+        partition.expireDue(now);
+        List<BloodDonation> result = new ArrayList<>(Math.max(0, Math.min(limit, 1024)));
+        if (limit <= 0) {
+            return result;
+        }
+        partition.lock.readLock().lock();
+        if (partition.fefo[kind.ordinal()] == null) {
+            // Building the heap writes the partition: upgrade, then downgrade to the read lock
+            partition.lock.readLock().unlock();
+            partition.lock.writeLock().lock();
+            try {
+                partition.fefo(kind);
+                partition.lock.readLock().lock();
+            } finally {
+                partition.lock.writeLock().unlock();
+            }
+        }
+        try {
+            long[] last = { -1 };
+            partition.fefo[kind.ordinal()].walk(key -> {
+                int row = (int) key;
+                // Skips the entries claim has not dropped yet (lazy deletion) and a row's repeated entry
+                if (key != last[0] && partition.status(row) == AVAILABLE && partition.expiryMinute(row) > now) {
+                    result.add(view(partition, type, row));
+                }
+                last[0] = key;
+                return result.size() < limit;
+            });
+            return result;
+        } finally {
+            partition.lock.readLock().unlock();
+        }
+    }
+
+    // Views are materialized on demand from the columns and are not retained by the store
+    public BloodDonation view(BloodType type, int row) {
+        Partition partition = partitions[type.ordinal()];
+        partition.lock.readLock().lock();
+        try {
+            return view(partition, type, row);
+        } finally {
+            partition.lock.readLock().unlock();
+        }
+    }
+
+    private BloodDonation view(Partition partition, BloodType type, int row) {
+        return view(type, DonationKind.values()[partition.kind(row)], names.get(partition.nameId(row)), partition.amount(row), partition.extra(row),
+                COMPONENTS[partition.component(row)], partition.collectedMinute(row) * 60_000L);
+    }
+
+    private static BloodDonation view(BloodType type, DonationKind kind, String donorName, int amount, int extra, BloodComponent component, long collectedAt) {
+        if (kind == DonationKind.EMERGENCY) {
+            return new EmergencyDonation(donorName, type.label(), amount, extra != 0, component, collectedAt);
+        }
+        return new RegularDonation(donorName, type.label(), amount, extra, component, collectedAt);
+    }
+
+    // Age for regular donations, 1/0 urgency flag for emergency donations
+    public static int extraOf(BloodDonation donation) {
+        if (donation instanceof RegularDonation) {
+            return ((RegularDonation) donation).getAge();
+        }
+        return ((EmergencyDonation) donation).isUrgent() ? 1 : 0;
+    }
+
+    // ======================================== Partition (one blood type) ========================================
+    // Rows [0, baseSize) live in the mapped snapshot, rows [baseSize, size) in the arrays below
+    private static class Partition {
+        private static final int ROW_BYTES = DonationSnapshot.ROW_BYTES;
+
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private final BloodType type;
+        private final StockLevels stock;
+        private final ByteBuffer base;
+        private final int baseSize;
+        // Snapshot the base rows are mapped from, until they have been checked against its checksum (null once
+        // checked, and for a partition without a snapshot)
+        private volatile DonationSnapshot unverified;
+        private volatile UncheckedIOException corrupt;
+        // Status changes of mapped rows (status + 1, 0 = unchanged); allocated on the first change
+        private byte[] baseStatus;
+        private byte[] kinds = new byte[16];
+        private byte[] components = new byte[16];
+        private byte[] statuses = new byte[16];
+        private int[] amounts = new int[16];
+        private int[] extras = new int[16];
+        private int[] nameIds = new int[16];
+        private int[] sequence = new int[16];
+        private int[] collected = new int[16];
+        private int size;
+        // Row numbers per donation kind, in insertion order
+        private final IntList[] rows;
+        // AVAILABLE and RESERVED rows per donation kind
+        private final int[] available;
+        private final int[] reserved;
+        // ml in AVAILABLE rows (both kinds), and whether it is below the low-stock threshold
+        private long availableMl;
+        private boolean low;
+        // FEFO heaps of AVAILABLE rows per kind, built on the first claim
+        private final LongHeap[] fefo;
+        // Built on first use, so opening a snapshot does not read every row
+        private ExpiryWheel wheel;
+        // Minute the wheel has been advanced to; read without the lock to skip advancing when nothing changed
+        private volatile int wheelMinute = Integer.MIN_VALUE;
+
+        Partition(BloodType type, StockLevels stock) {
+            this.type = type;
+            this.stock = stock;
+            base = null;
+            baseSize = 0;
+            rows = new IntList[] { new IntList(), new IntList() };
+            available = new int[rows.length];
+            reserved = new int[rows.length];
+            fefo = new LongHeap[rows.length];
+        }
+
+        // Counts come from the snapshot's table, so no row is read here
+        Partition(BloodType type, StockLevels stock, DonationSnapshot snapshot, IntBuffer[] kindRows, int[] available, long[] availableMl) {
+            this.type = type;
+            this.stock = stock;
+            this.base = snapshot.rows(type);
+            this.baseSize = snapshot.rowCount(type);
+            this.unverified = baseSize > 0 ? snapshot : null;
+            this.size = baseSize;
+            rows = new IntList[kindRows.length];
+            for (int k = 0; k < kindRows.length; k++) {
+                rows[k] = new IntList(kindRows[k]);
+            }
+            this.available = available;
+            this.reserved = new int[rows.length];
+            this.fefo = new LongHeap[rows.length];
+            for (int k = 0; k < rows.length; k++) {
+                this.availableMl += availableMl[k];
+                stock.add(type, k, available[k], availableMl[k]);
+            }
+        }
+
+        // Mapped rows, checked on first use
+        private ByteBuffer base() {
+            if (unverified != null) {
+                verify();
+            }
+            return base;
+        }
+
+        // Row numbers of one kind; the mapped prefix is covered by the same check as the rows
+        private IntList rows(int kind) {
+            if (unverified != null) {
+                verify();
+            }
+            return rows[kind];
+        }
+
+        private synchronized void verify() {
+            if (corrupt != null) {
+                throw corrupt;
+            }
+            if (unverified != null) {
+                try {
+                    unverified.verify(type);
+                } catch (IOException e) {
+                    corrupt = new UncheckedIOException(e.getMessage(), e);
+                    throw corrupt;
+                }
+                unverified = null;
+            }
+        }
+
+        void add(DonationKind kind, int nameId, int amount, int extra, int seq, BloodComponent component, int collectedMinute, int nowMinute) {
+            int slot = size - baseSize;
+            if (slot == amounts.length) {
+                int capacity = slot + (slot >> 1);
+                kinds = Arrays.copyOf(kinds, capacity);
+                components = Arrays.copyOf(components, capacity);
+                statuses = Arrays.copyOf(statuses, capacity);
+                amounts = Arrays.copyOf(amounts, capacity);
+                extras = Arrays.copyOf(extras, capacity);
+                nameIds = Arrays.copyOf(nameIds, capacity);
+                sequence = Arrays.copyOf(sequence, capacity);
+                collected = Arrays.copyOf(collected, capacity);
+            }
+            int expiryMinute = collectedMinute + component.shelfLifeMinutes();
+            boolean expired = expiryMinute <= (wheel == null ? nowMinute : Math.max(nowMinute, wheel.current()));
+            kinds[slot] = (byte) kind.ordinal();
+            components[slot] = (byte) component.ordinal();
+            statuses[slot] = expired ? EXPIRED : AVAILABLE;
+            amounts[slot] = amount;
+            extras[slot] = extra;
+            nameIds[slot] = nameId;
+            sequence[slot] = seq;
+            collected[slot] = collectedMinute;
+            rows[kind.ordinal()].add(size);
+            if (!expired) {
+                adjust(kind.ordinal(), 1, amount);
+                if (wheel != null) {
+                    wheel.schedule(size, expiryMinute);
+                }
+                if (fefo[kind.ordinal()] != null) {
+                    fefo[kind.ordinal()].add(fefoKey(expiryMinute, size));
+                }
+            }
+            size++;
+        }
+
+        // Every change to the available stock goes through here (under the write lock)
+        void adjust(int kind, int unitDelta, long mlDelta) {
+            available[kind] += unitDelta;
+            availableMl += mlDelta;
+            stock.add(type, kind, unitDelta, mlDelta);
+            checkThreshold();
+        }
+
+        // Fires only when the level crosses the threshold
+        void checkThreshold() {
+            long threshold = stock.threshold(type);
+            boolean nowLow = threshold > 0 && availableMl < threshold;
+            if (nowLow != low) {
+                low = nowLow;
+                stock.fire(type, availableMl, threshold, nowLow);
+            }
+        }
+
+        LongHeap fefo(DonationKind kind) {
+            LongHeap heap = fefo[kind.ordinal()];
+            if (heap == null) {
+                IntList kindRows = rows(kind.ordinal());
+                heap = new LongHeap(Math.max(16, available[kind.ordinal()]));
+                for (int i = 0; i < kindRows.size(); i++) {
+                    int row = kindRows.get(i);
+                    if (status(row) == AVAILABLE) {
+                        heap.add(fefoKey(expiryMinute(row), row));
+                    }
+                }
+                fefo[kind.ordinal()] = heap;
+            }
+            return heap;
+        }
+
+        // Rows are in sequence order, so a row is found by binary search; -1 when absent
+        int rowOfSequence(int seq) {
+            int low = 0;
+            int high = size - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int value = sequence(mid);
+                if (value < seq) {
+                    low = mid + 1;
+                } else if (value > seq) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -1;
+        }
+
+        // Advances the wheel to nowMinute (building it on first use) and expires the rows that came due
+        void expireDue(int nowMinute) {
+            if (wheelMinute >= nowMinute) {
+                return;
+            }
+            lock.writeLock().lock();
+            try {
+                if (wheel == null) {
+                    wheel = new ExpiryWheel(nowMinute);
+                    for (int row = 0; row < size; row++) {
+                        if (status(row) == AVAILABLE) {
+                            int expiryMinute = expiryMinute(row);
+                            if (expiryMinute <= nowMinute) {
+                                expire(row);
+                            } else {
+                                wheel.schedule(row, expiryMinute);
+                            }
+                        }
+                    }
+                } else if (wheel.current() < nowMinute) {
+                    wheel.advance(nowMinute, this::expire);
+                }
+                wheelMinute = nowMinute;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        // Rows that already left the inventory another way are skipped
+        private void expire(int row) {
+            if (status(row) == AVAILABLE) {
+                setStatus(row, EXPIRED);
+                adjust(kind(row), -1, -amount(row));
+            }
+        }
+
+        void setStatus(int row, byte status) {
+            if (row < baseSize) {
+                if (baseStatus == null) {
+                    baseStatus = new byte[baseSize];
+                }
+                baseStatus[row] = (byte) (status + 1);
+            } else {
+                statuses[row - baseSize] = status;
+            }
+        }
+
+        int expiryMinute(int row) {
+            return collectedMinute(row) + COMPONENTS[component(row)].shelfLifeMinutes();
+        }
+
+        // Index into rows[kind] of the first row with a sequence greater than afterSequence
+        int firstAfter(DonationKind kind, int afterSequence) {
+            IntList kindRows = rows(kind.ordinal());
+            int low = 0;
+            int high = kindRows.size();
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (sequence(kindRows.get(mid)) <= afterSequence) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        int kind(int row) {
+            return row < baseSize ? base().get(row * ROW_BYTES) : kinds[row - baseSize];
+        }
+
+        int component(int row) {
+            if (row < baseSize) {
+                return base().get(row * ROW_BYTES + 1);
+            }
+            return components[row - baseSize];
+        }
+
+        byte status(int row) {
+            if (row < baseSize) {
+                if (baseStatus != null && baseStatus[row] != 0) {
+                    return (byte) (baseStatus[row] - 1);
+                }
+                return base().get(row * ROW_BYTES + 2);
+            }
+            return statuses[row - baseSize];
+        }
+
+        int amount(int row) {
+            return row < baseSize ? base().getInt(row * ROW_BYTES + 4) : amounts[row - baseSize];
+        }
+
+        int extra(int row) {
+            return row < baseSize ? base().getInt(row * ROW_BYTES + 8) : extras[row - baseSize];
+        }
+
+        int nameId(int row) {
+            return row < baseSize ? base().getInt(row * ROW_BYTES + 12) : nameIds[row - baseSize];
+        }
+
+        int sequence(int row) {
+            return row < baseSize ? base().getInt(row * ROW_BYTES + 16) : sequence[row - baseSize];
+        }
+
+        int collectedMinute(int row) {
+            if (row < baseSize) {
+                return base().getInt(row * ROW_BYTES + 20);
+            }
+            return collected[row - baseSize];
+        }
+    }
+}
+// =================================================== Long Heap ===================================================
+// Binary min-heap of primitive longs
+class LongHeap {
+    private long[] values;
+    private int size;
+
+    public LongHeap(int capacity) {
+        values = new long[Math.max(1, capacity)];
+    }
+
+    public void add(long value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        int i = size++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (values[parent] <= value) {
+                break;
+            }
+            values[i] = values[parent];
+            i = parent;
+        }
+        values[i] = value;
+    }
+
+    public long peek() {
+        return values[0];
+    }
+
+    public long poll() {
+        long top = values[0];
+        long last = values[--size];
+        int i = 0;
+        int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            if (child + 1 < size && values[child + 1] < values[child]) {
+                child++;
+            }
+            if (last <= values[child]) {
+                break;
+            }
+            values[i] = values[child];
+            i = child;
+        }
+        values[i] = last;
+        return top;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Hands the values to the visitor in ascending order without removing them, until it returns false. The tree is
+    // walked best first from a small heap of open positions, so visiting the k smallest costs O(k log k) at any size.
+    public void walk(LongPredicate visitor) {
+        if (size == 0) {
+            return;
+        }
+        int[] open = new int[16];
+        int count = 1;
+        while (count > 0) {
+            int i = open[0];
+            count = pollOpen(open, count);
+            if (!visitor.test(values[i])) {
+                return;
+            }
+            for (int child = 2 * i + 1; child <= 2 * i + 2 && child < size; child++) {
+                if (count == open.length) {
+                    open = Arrays.copyOf(open, count * 2);
+                }
+                addOpen(open, count++, child);
+            }
+        }
+    }
+
+    private void addOpen(int[] open, int count, int position) {
+        int i = count;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (values[open[parent]] <= values[position]) {
+                break;
+            }
+            open[i] = open[parent];
+            i = parent;
+        }
+        open[i] = position;
+    }
+
+    private int pollOpen(int[] open, int count) {
+        int last = open[--count];
+        int i = 0;
+        int half = count >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            if (child + 1 < count && values[open[child + 1]] < values[open[child]]) {
+                child++;
+            }
+            if (values[last] <= values[open[child]]) {
+                break;
+            }
+            open[i] = open[child];
+            i = child;
+        }
+        open[i] = last;
+        return count;
+    }
+}
@@ -0,0 +1,387 @@
+package bloodbank;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// =================================================== Donor Registry ===================================================
+// Every donor (by exact name) with their donation history, plus a case-insensitive trie of the names for type-ahead
+// search. A history is one packed long per donation, sorted by collection time, so checking the minimum interval
+// between donations is a binary search in one donor's array instead of a scan over the inventory.
+//
+// Minimum intervals follow the component of the earlier donation (BloodComponent.recoveryDays): a donation needs
+// the recovery time of the donor's previous donation to have passed, and must leave the recovery time of its own
+// component before the donor's next one (back-dated imports can land between two donations).
+//
+// Thread-safe. Histories are guarded by their Donor; the trie has its own read/write lock and only changes when a
+// new donor appears.
+//
+// The rows of a loaded snapshot are indexed on first use (the first lookup, search or interval check), not when the
+// bank starts, so a cold start does not decode every donor name of the memory-mapped snapshot. Histories are sorted
+// on insert, so donations recorded before that (journal replay) end up in the same place either way.
+class DonorRegistry {
+    // Packed history entry: collection minute (high 32 bits) | amount (16) | blood type (8) | kind (4) | component (4)
+    private static final int AMOUNT_SHIFT = 16;
+    private static final int TYPE_SHIFT = 8;
+    private static final int KIND_SHIFT = 4;
+
+    private final ConcurrentHashMap<String, Donor> donors = new ConcurrentHashMap<>();
+    private final TrieNode root = new TrieNode();
+    private final ReentrantReadWriteLock trieLock = new ReentrantReadWriteLock();
+    // Store whose first unindexedRows[type] rows are not indexed yet; null once they are
+    private volatile DonationStore unindexed;
+    private int[] unindexedRows;
+
+    // Indexes every row already in the store (snapshot load), whatever its status: issued and expired units
+    // are still part of the donor's history. Only the row counts are taken now; see ensureLoaded.
+    public void load(DonationStore store) {
+        int[] rows = new int[BloodType.values().length];
+        boolean any = false;
+        for (BloodType type : BloodType.values()) {
+            rows[type.ordinal()] = store.partitionSize(type);
+            any |= rows[type.ordinal()] > 0;
+        }
+        if (any) {
+            unindexedRows = rows;
+            unindexed = store;
+        }
+    }
+
+    private void ensureLoaded() {
+        if (unindexed != null) {
+            indexStoredRows();
+        }
+    }
+
+    private synchronized void indexStoredRows() {
+        DonationStore store = unindexed;
+        if (store == null) {
+            return;
+        }
+        for (BloodType type : BloodType.values()) {
+            for (int row = 0, rows = unindexedRows[type.ordinal()]; row < rows; row++) {
+                Donor donor = donor(store.donorName(type, row));
+                long entry = pack(store.collectedMinute(type, row), store.amount(type, row), type, store.kind(type, row), store.component(type, row));
+                synchronized (donor) {
+                    donor.insert(entry);
+                }
+            }
+        }
+        unindexedRows = null;
+        unindexed = null;
+    }
+
+    // ======================================== Donations ========================================
+    // Records the donation if the donor's intervals allow it; false (nothing recorded) when it is too soon
+    public boolean tryRecord(String donorName, BloodType type, DonationKind kind, BloodComponent component, int amount, long collectedAt) {
+        ensureLoaded();
+        long entry = pack(toMinute(collectedAt), amount, type, kind, component);
+        Donor donor = donor(donorName);
+        synchronized (donor) {
+            if (!donor.allows(entry)) {
+                return false;
+            }
+            donor.insert(entry);
+            return true;
+        }
+    }
+
+    // Records without checking intervals (journal replay, batches that were already validated); does not need the
+    // stored rows indexed first
+    public void record(String donorName, BloodType type, DonationKind kind, BloodComponent component, int amount, long collectedAt) {
+        Donor donor = donor(donorName);
+        synchronized (donor) {
+            donor.insert(pack(toMinute(collectedAt), amount, type, kind, component));
+        }
+    }
+
+    // Takes back a donation recorded by tryRecord or record that could not be stored (journal failure), so the donor
+    // is not held to the interval of a donation the bank does not have
+    public void forget(String donorName, BloodType type, DonationKind kind, BloodComponent component, int amount, long collectedAt) {
+        Donor donor = donors.get(donorName);
+        if (donor == null) {
+            return;
+        }
+        synchronized (donor) {
+            donor.remove(pack(toMinute(collectedAt), amount, type, kind, component));
+        }
+    }
+
+    // True when a donation of this component collected at the given time would respect the donor's intervals
+    public boolean intervalAllows(String donorName, BloodComponent component, long collectedAt) {
+        ensureLoaded();
+        Donor donor = donors.get(donorName);
+        if (donor == null) {
+            return true;
+        }
+        synchronized (donor) {
+            return donor.allows(pack(toMinute(collectedAt), 0, BloodType.A_POS, DonationKind.REGULAR, component));
+        }
+    }
+
+    // Earliest time (epoch millis) the donor may donate again after their latest donation; 0 for unknown donors
+    public long nextEligibleAt(String donorName) {
+        ensureLoaded();
+        Donor donor = donors.get(donorName);
+        if (donor == null) {
+            return 0;
+        }
+        synchronized (donor) {
+            if (donor.size == 0) {
+                return 0;
+            }
+            long last = donor.entries[donor.size - 1];
+            return (minuteOf(last) + componentOf(last).recoveryMinutes()) * 60_000L;
+        }
+    }
+
+    // Copy of the donor's history, oldest first; null for unknown donors
+    public History history(String donorName) {
+        ensureLoaded();
+        Donor donor = donors.get(donorName);
+        if (donor == null) {
+            return null;
+        }
+        synchronized (donor) {
+            return new History(donor.name, Arrays.copyOf(donor.entries, donor.size));
+        }
+    }
+
+    public int donorCount() {
+        ensureLoaded();
+        return donors.size();
+    }
+
+    private Donor donor(String name) {
+        Donor donor = donors.get(name);
+        if (donor != null) {
+            return donor;
+        }
+        return donors.computeIfAbsent(name, key -> {
+            Donor created = new Donor(key);
+            index(created);
+            return created;
+        });
+    }
+
+    // ======================================== Type-ahead search ========================================
+    // Names starting with the prefix (ignoring case), in alphabetical order, at most limit of them
+    public List<String> search(String prefix, int limit) {
+        List<String> names = new ArrayList<>();
+        if (limit <= 0) {
+            return names;
+        }
+        ensureLoaded();
+        String key = prefix.toLowerCase();
+        trieLock.readLock().lock();
+        try {
+            TrieNode node = root;
+            for (int i = 0; i < key.length() && node != null; i++) {
+                node = node.child(key.charAt(i));
+            }
+            if (node != null) {
+                node.collect(names, limit);
+            }
+        } finally {
+            trieLock.readLock().unlock();
+        }
+        return names;
+    }
+
+    private void index(Donor donor) {
+        String key = donor.name.toLowerCase();
+        trieLock.writeLock().lock();
+        try {
+            TrieNode node = root;
+            for (int i = 0; i < key.length(); i++) {
+                node = node.childOrAdd(key.charAt(i));
+            }
+            node.addName(donor.name);
+        } finally {
+            trieLock.writeLock().unlock();
+        }
+    }
+
+    // ======================================== Packing ========================================
+    private static long pack(int minute, int amount, BloodType type, DonationKind kind, BloodComponent component) {
+        return (long) minute << 32 | (long) (Math.min(amount, 0xFFFF) & 0xFFFF) << AMOUNT_SHIFT
+                | (long) type.ordinal() << TYPE_SHIFT | (long) kind.ordinal() << KIND_SHIFT | component.ordinal();
+    }
+
+    private static int toMinute(long epochMillis) {
+        return (int) Math.floorDiv(epochMillis, 60_000L);
+    }
+
+    private static int minuteOf(long entry) {
+        return (int) (entry >> 32);
+    }
+
+    private static BloodComponent componentOf(long entry) {
+        return BloodComponent.values()[(int) (entry & 0xF)];
+    }
+
+    // ======================================== Donor ========================================
+    private static class Donor {
+        private final String name;
+        private long[] entries = new long[1];
+        private int size;
+
+        Donor(String name) {
+            this.name = name;
+        }
+
+        // Entries sort by collection minute first, so the insertion point splits the history into earlier and later
+        void insert(long entry) {
+            int at = insertionPoint(entry);
+            if (size == entries.length) {
+                entries = Arrays.copyOf(entries, size * 2);
+            }
+            System.arraycopy(entries, at, entries, at + 1, size - at);
+            entries[at] = entry;
+            size++;
+        }
+
+        void remove(long entry) {
+            int at = Arrays.binarySearch(entries, 0, size, entry);
+            if (at >= 0) {
+                System.arraycopy(entries, at + 1, entries, at, size - at - 1);
+                size--;
+            }
+        }
+
+        boolean allows(long entry) {
+            int at = insertionPoint(entry);
+            int minute = minuteOf(entry);
+            if (at > 0) {
+                long previous = entries[at - 1];
+                if ((long) minute - minuteOf(previous) < componentOf(previous).recoveryMinutes()) {
+                    return false;
+                }
+            }
+            return at == size || (long) minuteOf(entries[at]) - minute >= componentOf(entry).recoveryMinutes();
+        }
+
+        private int insertionPoint(long entry) {
+            // Appends (the usual case) skip the search
+            if (size == 0 || entries[size - 1] <= entry) {
+                return size;
+            }
+            int index = Arrays.binarySearch(entries, 0, size, entry);
+            return index < 0 ? -index - 1 : index;
+        }
+    }
+
+    // ======================================== History ========================================
+    // One donor's donations, oldest first
+    static class History {
+        private final String donorName;
+        private final long[] entries;
+
+        History(String donorName, long[] entries) {
+            this.donorName = donorName;
+            this.entries = entries;
+        }
+
+        public String donorName() {
+            return donorName;
+        }
+
+        public int size() {
+            return entries.length;
+        }
+
+        public long collectedAt(int index) {
+            return minuteOf(entries[index]) * 60_000L;
+        }
+
+        public int amount(int index) {
+            return (int) (entries[index] >>> AMOUNT_SHIFT) & 0xFFFF;
+        }
+
+        public BloodType type(int index) {
+            return BloodType.ofOrdinal((int) (entries[index] >>> TYPE_SHIFT) & 0xFF);
+        }
+
+        public DonationKind kind(int index) {
+            return DonationKind.values()[(int) (entries[index] >>> KIND_SHIFT) & 0xF];
+        }
+
+        public BloodComponent component(int index) {
+            return componentOf(entries[index]);
+        }
+
+        public long totalMl() {
+            long total = 0;
+            for (int i = 0; i < entries.length; i++) {
+                total += amount(i);
+            }
+            return total;
+        }
+    }
+
+    // ======================================== Trie ========================================
+    // Children are kept sorted by character, so a depth-first walk yields the names in alphabetical order
+    private static class TrieNode {
+        private static final char[] NO_KEYS = new char[0];
+        private static final TrieNode[] NO_CHILDREN = new TrieNode[0];
+
+        // Most nodes are leaves or have one child, so arrays are only allocated (and grown by one) when needed
+        private char[] keys = NO_KEYS;
+        private TrieNode[] children = NO_CHILDREN;
+        // Name ending here; names that differ from it only in case go to moreNames
+        private String name;
+        private String[] moreNames;
+
+        TrieNode child(char c) {
+            int index = Arrays.binarySearch(keys, c);
+            return index < 0 ? null : children[index];
+        }
+
+        TrieNode childOrAdd(char c) {
+            int index = Arrays.binarySearch(keys, c);
+            if (index >= 0) {
+                return children[index];
+            }
+            int at = -index - 1;
+            char[] newKeys = new char[keys.length + 1];
+            TrieNode[] newChildren = new TrieNode[keys.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, at);
+            System.arraycopy(children, 0, newChildren, 0, at);
+            newKeys[at] = c;
+            newChildren[at] = new TrieNode();
+            System.arraycopy(keys, at, newKeys, at + 1, keys.length - at);
+            System.arraycopy(children, at, newChildren, at + 1, keys.length - at);
+            keys = newKeys;
+            children = newChildren;
+            return newChildren[at];
+        }
+
+        void addName(String added) {
+            if (name == null) {
+                name = added;
+                return;
+            }
+            moreNames = moreNames == null ? new String[1] : Arrays.copyOf(moreNames, moreNames.length + 1);
+            moreNames[moreNames.length - 1] = added;
+        }
+
+        void collect(List<String> out, int limit) {
+            if (name != null && out.size() < limit) {
+                out.add(name);
+            }
+            if (moreNames != null) {
+                for (String more : moreNames) {
+                    if (out.size() == limit) {
+                        return;
+                    }
+                    out.add(more);
+                }
+            }
+            for (int i = 0; i < children.length && out.size() < limit; i++) {
+                children[i].collect(out, limit);
+            }
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package bloodbank;
+
+// =================================================== Emergency Donation Class ===================================================
+class EmergencyDonation extends BloodDonation {
+    private boolean isUrgent;
+
+    public EmergencyDonation(String donorName, String bloodType, int donationAmount, boolean isUrgent) {
+        super(donorName, bloodType, donationAmount);
+        this.isUrgent = isUrgent;
+    }
+
+    public EmergencyDonation(String donorName, String bloodType, int donationAmount, boolean isUrgent, BloodComponent component, long collectedAt) {
+        super(donorName, bloodType, donationAmount, component, collectedAt);
+        this.isUrgent = isUrgent;
+    }
+
+    @Override
+    public boolean isEligibleToDonate() {
+        return isUrgent && hasValidAmount();
+    }
+
+    public boolean isUrgent() { return isUrgent; }
+}
@@ -0,0 +1,162 @@
+package bloodbank;
+
+import java.util.Arrays;
+
+// =================================================== Expiry Wheel ===================================================
+// Hierarchical timing wheel of row expiry times for one DonationStore partition, at one-minute resolution.
+// Four levels of 64 slots cover 64 minutes, ~2.8 days, ~182 days and ~32 years ahead. A row is filed in the
+// lowest level whose span reaches its expiry and moves down a level when the wheel reaches its slot, so each row
+// is touched a few times over its whole shelf life and advancing never scans the inventory.
+//
+// Not thread-safe: the owning partition guards it with its lock. Rows that leave the inventory early (issued,
+// discarded) are not removed; the store ignores them when they come due.
+class ExpiryWheel {
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int LEVELS = 4;
+
+    // Receives rows whose expiry minute has been reached
+    interface ExpiredRow {
+        void expired(int row);
+    }
+
+    // Receives scheduled rows with their expiry minute
+    interface ScheduledRow {
+        void visit(int row, int expiryMinute);
+    }
+
+    private final Slot[][] levels = new Slot[LEVELS][SLOTS];
+    // Last minute processed; rows expiring at or before it have been handed out
+    private int current;
+    private int size;
+
+    public ExpiryWheel(int currentMinute) {
+        this.current = currentMinute;
+    }
+
+    public int current() {
+        return current;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Files a row; the caller handles rows that are already due (expiryMinute <= current)
+    public void schedule(int row, int expiryMinute) {
+        size++;
+        file(row, expiryMinute);
+    }
+
+    private void file(int row, int expiryMinute) {
+        long delta = (long) expiryMinute - current;
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= 1L << (SLOT_BITS * (level + 1))) {
+            level++;
+        }
+        int index = (expiryMinute >>> (SLOT_BITS * level)) & (SLOTS - 1);
+        Slot slot = levels[level][index];
+        if (slot == null) {
+            slot = levels[level][index] = new Slot();
+        }
+        slot.add(row, expiryMinute);
+    }
+
+    // Moves the wheel to nowMinute, handing every row whose expiry minute is reached to the callback
+    public void advance(int nowMinute, ExpiredRow callback) {
+        while (current < nowMinute) {
+            if (size == 0) {
+                current = nowMinute;
+                return;
+            }
+            current++;
+            // At a level boundary, the next slot of the level above is spread over the levels below
+            for (int level = 1; level < LEVELS; level++) {
+                if ((current & ((1 << (SLOT_BITS * level)) - 1)) != 0) {
+                    break;
+                }
+                cascade(level, (current >>> (SLOT_BITS * level)) & (SLOTS - 1), callback);
+            }
+            Slot due = levels[0][current & (SLOTS - 1)];
+            if (due != null && due.size > 0) {
+                drain(due, callback);
+            }
+        }
+    }
+
+    private void cascade(int level, int index, ExpiredRow callback) {
+        Slot slot = levels[level][index];
+        if (slot == null || slot.size == 0) {
+            return;
+        }
+        int[] rows = Arrays.copyOf(slot.rows, slot.size);
+        int[] expiries = Arrays.copyOf(slot.expiries, slot.size);
+        slot.size = 0;
+        for (int i = 0; i < rows.length; i++) {
+            if (expiries[i] <= current) {
+                size--;
+                callback.expired(rows[i]);
+            } else {
+                file(rows[i], expiries[i]);
+            }
+        }
+    }
+
+    // Level 0 slots can also hold rows for later turns of the wheel (filed after a cascade); those stay
+    private void drain(Slot slot, ExpiredRow callback) {
+        int kept = 0;
+        for (int i = 0; i < slot.size; i++) {
+            if (slot.expiries[i] <= current) {
+                size--;
+                callback.expired(slot.rows[i]);
+            } else {
+                slot.rows[kept] = slot.rows[i];
+                slot.expiries[kept] = slot.expiries[i];
+                kept++;
+            }
+        }
+        slot.size = kept;
+    }
+
+    // Visits scheduled rows expiring before limitMinute without changing the wheel. Only the slots whose time
+    // range starts before the limit are read, so the cost follows the size of the window, not of the inventory.
+    public void forEachBefore(int limitMinute, ScheduledRow visitor) {
+        for (int level = 0; level < LEVELS; level++) {
+            int shift = SLOT_BITS * level;
+            // Rows on level > 0 always lie in a later slot of that level than the current minute
+            long first = ((long) current >>> shift) + (level == 0 ? 0 : 1);
+            long last = ((long) limitMinute - 1) >>> shift;
+            if (last < first) {
+                continue;
+            }
+            long end = Math.min(last, first + SLOTS - 1);
+            for (long t = first; t <= end; t++) {
+                Slot slot = levels[level][(int) (t & (SLOTS - 1))];
+                if (slot == null) {
+                    continue;
+                }
+                for (int i = 0; i < slot.size; i++) {
+                    if (slot.expiries[i] < limitMinute) {
+                        visitor.visit(slot.rows[i], slot.expiries[i]);
+                    }
+                }
+            }
+        }
+    }
+
+    private static class Slot {
+        private int[] rows = new int[4];
+        private int[] expiries = new int[4];
+        private int size;
+
+        void add(int row, int expiryMinute) {
+            if (size == rows.length) {
+                rows = Arrays.copyOf(rows, size * 2);
+                expiries = Arrays.copyOf(expiries, size * 2);
+            }
+            rows[size] = row;
+            expiries[size] = expiryMinute;
+            size++;
+        }
+    }
+}
@@ -0,0 +1,495 @@
+package bloodbank;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.*;
+
+// =================================================== Federated Inventory ===================================================
+// Searches the stock of several blood bank sites at once. Every query goes to all sites in parallel and waits at most
+// each site's timeout for it; sites that are slow or down are reported as TIMEOUT or FAILED and the answer is built
+// from the rest (a partial result) instead of failing or waiting for the slowest site.
+//
+// A site is a Node: a BloodBank in this process (LocalNode) or a blood bank server reached over TCP (RemoteNode,
+// UNITS and STOCK commands). Compatible units are merged nearest site first, then soonest expiry first, so the
+// units that should be used first come first.
+//
+// Sites are configured with -Dbloodbank.sites=Name=host:port:km,... plus -Dbloodbank.siteUser and
+// -Dbloodbank.sitePassword (an account on every remote site) and -Dbloodbank.siteTimeoutMillis (default 500).
+class FederatedInventory implements Closeable {
+    static final long DEFAULT_TIMEOUT_MILLIS = 500;
+
+    interface Node extends Closeable {
+        // Compatible available units of one kind (null for both), soonest expiry first, at most limit of them
+        List<BloodDonation> findCompatible(BloodType recipientType, DonationKind kind, int limit) throws IOException;
+
+        Stock stock() throws IOException;
+    }
+
+    enum Status { OK, TIMEOUT, FAILED }
+
+    private final List<Site> sites = new ArrayList<>();
+    private final ExecutorService requests = BloodBankServer.newSessionExecutor();
+    // Completes the timeout side of each request; one thread is plenty, it only flips futures
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "federation-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public void addSite(String name, double distanceKm, long timeoutMillis, Node node) {
+        sites.add(new Site(name, distanceKm, timeoutMillis, node));
+    }
+
+    public int siteCount() {
+        return sites.size();
+    }
+
+    // The sites named in -Dbloodbank.sites, or null when the property is not set
+    public static FederatedInventory fromSystemProperties() {
+        String spec = System.getProperty("bloodbank.sites", "").trim();
+        if (spec.isEmpty()) {
+            return null;
+        }
+        String user = System.getProperty("bloodbank.siteUser", "");
+        String password = System.getProperty("bloodbank.sitePassword", "");
+        long timeoutMillis = Long.getLong("bloodbank.siteTimeoutMillis", DEFAULT_TIMEOUT_MILLIS);
+        FederatedInventory inventory = new FederatedInventory();
+        for (String entry : spec.split(",")) {
+            // Name=host:port:km
+            int equals = entry.indexOf('=');
+            String[] address = entry.substring(equals + 1).trim().split(":");
+            if (equals <= 0 || address.length != 3) {
+                throw new IllegalArgumentException("Invalid site (expected Name=host:port:km): " + entry);
+            }
+            inventory.addSite(entry.substring(0, equals).trim(), Double.parseDouble(address[2]), timeoutMillis,
+                    new RemoteNode(address[0], Integer.parseInt(address[1]), user, password));
+        }
+        return inventory;
+    }
+
+    // ======================================== Queries ========================================
+    // Compatible units from every site that answers in time, nearest site first, then soonest expiry; at most
+    // limit units per site
+    public Search findCompatible(BloodType recipientType, DonationKind kind, int limit) {
+        List<Answer<List<BloodDonation>>> answers = fanOut(node -> node.findCompatible(recipientType, kind, limit));
+        List<Match> matches = new ArrayList<>();
+        for (Answer<List<BloodDonation>> answer : answers) {
+            if (answer.status == Status.OK) {
+                for (BloodDonation unit : answer.value) {
+                    matches.add(new Match(answer.site, unit));
+                }
+            }
+        }
+        matches.sort(Comparator.comparingDouble((Match match) -> match.site.distanceKm)
+                .thenComparingLong(match -> match.unit.getExpiresAt()));
+        return new Search(answers, matches);
+    }
+
+    // Available stock summed over the sites that answer in time
+    public StockReport stock() {
+        List<Answer<Stock>> answers = fanOut(Node::stock);
+        Stock total = new Stock();
+        for (Answer<Stock> answer : answers) {
+            if (answer.status == Status.OK) {
+                total.add(answer.value);
+            }
+        }
+        return new StockReport(answers, total);
+    }
+
+    @Override
+    public void close() {
+        requests.shutdownNow();
+        timer.shutdownNow();
+        for (Site site : sites) {
+            try {
+                site.node.close();
+            } catch (IOException e) {
+                // Closing is best effort; the site may already be gone
+            }
+        }
+    }
+
+    // ======================================== Fan-out ========================================
+    private interface NodeCall<T> {
+        T apply(Node node) throws IOException;
+    }
+
+    // Sends the call to every site at once; answers are in site order
+    private <T> List<Answer<T>> fanOut(NodeCall<T> call) {
+        List<CompletableFuture<Answer<T>>> pending = new ArrayList<>(sites.size());
+        for (Site site : sites) {
+            pending.add(ask(site, call));
+        }
+        List<Answer<T>> answers = new ArrayList<>(pending.size());
+        for (CompletableFuture<Answer<T>> answer : pending) {
+            answers.add(answer.join());
+        }
+        return answers;
+    }
+
+    // Whichever comes first: the site's answer (or failure) or its timeout. A call that times out keeps running
+    // on its request thread; its late answer is dropped.
+    private <T> CompletableFuture<Answer<T>> ask(Site site, NodeCall<T> call) {
+        long start = System.nanoTime();
+        CompletableFuture<Answer<T>> reply = CompletableFuture.supplyAsync(() -> {
+            try {
+                return new Answer<>(site, Status.OK, call.apply(site.node), null, System.nanoTime() - start);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, requests).exceptionally(e -> {
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof UncheckedIOException) {
+                cause = cause.getCause();
+            }
+            return new Answer<>(site, Status.FAILED, null, String.valueOf(cause.getMessage()), System.nanoTime() - start);
+        });
+        // CompletableFuture.orTimeout is Java 9+, so the timeout is a second future completed by the timer
+        CompletableFuture<Answer<T>> timeout = new CompletableFuture<>();
+        ScheduledFuture<?> alarm = timer.schedule(() -> timeout.complete(
+                new Answer<>(site, Status.TIMEOUT, null, "no answer within " + site.timeoutMillis + " ms", System.nanoTime() - start)),
+                site.timeoutMillis, TimeUnit.MILLISECONDS);
+        reply.whenComplete((answer, e) -> alarm.cancel(false));
+        return reply.applyToEither(timeout, answer -> answer);
+    }
+
+    // ======================================== Results ========================================
+    static class Site {
+        private final String name;
+        private final double distanceKm;
+        private final long timeoutMillis;
+        private final Node node;
+
+        Site(String name, double distanceKm, long timeoutMillis, Node node) {
+            this.name = name;
+            this.distanceKm = distanceKm;
+            this.timeoutMillis = timeoutMillis;
+            this.node = node;
+        }
+
+        public String name() { return name; }
+
+        public double distanceKm() { return distanceKm; }
+    }
+
+    // One site's answer to one query; value is null unless the status is OK
+    static class Answer<T> {
+        private final Site site;
+        private final Status status;
+        private final T value;
+        private final String error;
+        private final long nanos;
+
+        Answer(Site site, Status status, T value, String error, long nanos) {
+            this.site = site;
+            this.status = status;
+            this.value = value;
+            this.error = error;
+            this.nanos = nanos;
+        }
+
+        public Site site() { return site; }
+
+        public Status status() { return status; }
+
+        public T value() { return value; }
+
+        public String error() { return error; }
+
+        public long nanos() { return nanos; }
+    }
+
+    static class Match {
+        private final Site site;
+        private final BloodDonation unit;
+
+        Match(Site site, BloodDonation unit) {
+            this.site = site;
+            this.unit = unit;
+        }
+
+        public Site site() { return site; }
+
+        public BloodDonation unit() { return unit; }
+    }
+
+    static class Search {
+        private final List<Answer<List<BloodDonation>>> answers;
+        private final List<Match> matches;
+
+        Search(List<Answer<List<BloodDonation>>> answers, List<Match> matches) {
+            this.answers = Collections.unmodifiableList(answers);
+            this.matches = Collections.unmodifiableList(matches);
+        }
+
+        public List<Answer<List<BloodDonation>>> answers() { return answers; }
+
+        public List<Match> matches() { return matches; }
+
+        // True when at least one site did not answer in time (or failed)
+        public boolean isPartial() { return FederatedInventory.isPartial(answers); }
+    }
+
+    static class StockReport {
+        private final List<Answer<Stock>> answers;
+        private final Stock total;
+
+        StockReport(List<Answer<Stock>> answers, Stock total) {
+            this.answers = Collections.unmodifiableList(answers);
+            this.total = total;
+        }
+
+        public List<Answer<Stock>> answers() { return answers; }
+
+        public Stock total() { return total; }
+
+        public boolean isPartial() { return FederatedInventory.isPartial(answers); }
+    }
+
+    private static boolean isPartial(List<? extends Answer<?>> answers) {
+        for (Answer<?> answer : answers) {
+            if (answer.status != Status.OK) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Available units and ml per blood type and donation kind
+    static class Stock {
+        private static final int KINDS = DonationKind.values().length;
+
+        private final long[] units = new long[BloodType.values().length * KINDS];
+        private final long[] ml = new long[units.length];
+
+        public long units(BloodType type, DonationKind kind) {
+            return units[type.ordinal() * KINDS + kind.ordinal()];
+        }
+
+        public long ml(BloodType type, DonationKind kind) {
+            return ml[type.ordinal() * KINDS + kind.ordinal()];
+        }
+
+        public long ml(BloodType type) {
+            long total = 0;
+            for (int k = 0; k < KINDS; k++) {
+                total += ml[type.ordinal() * KINDS + k];
+            }
+            return total;
+        }
+
+        void set(BloodType type, DonationKind kind, long unitCount, long mlCount) {
+            units[type.ordinal() * KINDS + kind.ordinal()] = unitCount;
+            ml[type.ordinal() * KINDS + kind.ordinal()] = mlCount;
+        }
+
+        void add(Stock other) {
+            for (int i = 0; i < units.length; i++) {
+                units[i] += other.units[i];
+                ml[i] += other.ml[i];
+            }
+        }
+    }
+
+    // ======================================== Local node ========================================
+    // A BloodBank in this process (another site hosted by the same JVM, or this site itself)
+    static class LocalNode implements Node {
+        private final BloodBank bloodBank;
+
+        LocalNode(BloodBank bloodBank) {
+            this.bloodBank = bloodBank;
+        }
+
+        @Override
+        public List<BloodDonation> findCompatible(BloodType recipientType, DonationKind kind, int limit) {
+            return bloodBank.getCompatibleUnits(recipientType, kind, limit);
+        }
+
+        @Override
+        public Stock stock() {
+            StockLevels levels = bloodBank.getStockLevels();
+            Stock stock = new Stock();
+            for (BloodType type : BloodType.values()) {
+                for (DonationKind kind : DonationKind.values()) {
+                    stock.set(type, kind, levels.units(type, kind), levels.ml(type, kind));
+                }
+            }
+            return stock;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    // ======================================== Remote node ========================================
+    // A blood bank server over one TCP connection. Calls are serialized on the connection; it is opened (and logged
+    // in) on first use, and reopened once when a call finds it broken. A session that expired is logged in again.
+    // The socket timeouts are much longer than a site's query timeout: they only free a connection that is stuck,
+    // and the login alone (slow password hash) can take longer than a query may.
+    static class RemoteNode implements Node {
+        private static final int SOCKET_TIMEOUT_MILLIS = 10_000;
+
+        private final String host;
+        private final int port;
+        private final String user;
+        private final String password;
+        private Socket socket;
+        private BufferedReader in;
+        private BufferedWriter out;
+
+        RemoteNode(String host, int port, String user, String password) {
+            this.host = host;
+            this.port = port;
+            this.user = user;
+            this.password = password;
+        }
+
+        @Override
+        public synchronized List<BloodDonation> findCompatible(BloodType recipientType, DonationKind kind, int limit) throws IOException {
+            List<String> lines = call("UNITS " + recipientType.label() + " " + limit + (kind == null ? "" : " " + kind));
+            List<BloodDonation> units = new ArrayList<>(lines.size());
+            for (String line : lines) {
+                // UNIT <kind> <type> <ml> <age|urgent> <component> <collected epoch millis> <donor name>
+                String[] words = CommandSession.split(line, 8);
+                if (words.length != 8 || !words[0].equals("UNIT")) {
+                    throw new IOException(host + ":" + port + " sent an invalid unit: " + line);
+                }
+                try {
+                    BloodComponent component = BloodComponent.valueOf(words[5]);
+                    int amount = Integer.parseInt(words[3]);
+                    int extra = Integer.parseInt(words[4]);
+                    long collectedAt = Long.parseLong(words[6]);
+                    units.add(words[1].equals("REGULAR")
+                            ? new RegularDonation(words[7], words[2], amount, extra, component, collectedAt)
+                            : new EmergencyDonation(words[7], words[2], amount, extra != 0, component, collectedAt));
+                } catch (IllegalArgumentException e) {
+                    throw new IOException(host + ":" + port + " sent an invalid unit: " + line);
+                }
+            }
+            return units;
+        }
+
+        @Override
+        public synchronized Stock stock() throws IOException {
+            Stock stock = new Stock();
+            for (String line : call("STOCK")) {
+                // STOCK <type> <regular units> <regular ml> <emergency units> <emergency ml> [LOW]
+                String[] words = CommandSession.split(line, 7);
+                BloodType type = words.length >= 6 ? BloodType.parse(words[1]) : null;
+                if (type == null || !words[0].equals("STOCK")) {
+                    throw new IOException(host + ":" + port + " sent an invalid stock line: " + line);
+                }
+                try {
+                    stock.set(type, DonationKind.REGULAR, Long.parseLong(words[2]), Long.parseLong(words[3]));
+                    stock.set(type, DonationKind.EMERGENCY, Long.parseLong(words[4]), Long.parseLong(words[5]));
+                } catch (NumberFormatException e) {
+                    throw new IOException(host + ":" + port + " sent an invalid stock line: " + line);
+                }
+            }
+            return stock;
+        }
+
+        @Override
+        public synchronized void close() {
+            disconnect();
+        }
+
+        // Data lines of the reply (the final OK line dropped)
+        private List<String> call(String command) throws IOException {
+            boolean fresh = socket == null;
+            List<String> reply;
+            try {
+                reply = exchange(command);
+            } catch (IOException e) {
+                disconnect();
+                if (fresh) {
+                    throw e;
+                }
+                // The connection went stale (server restarted, idle timeout): one retry on a new one
+                reply = exchange(command);
+            }
+            String status = reply.get(reply.size() - 1);
+            if (status.startsWith("ERR login required") || status.startsWith("ERR session expired")) {
+                login();
+                reply = exchange(command);
+                status = reply.get(reply.size() - 1);
+            }
+            if (!status.startsWith("OK")) {
+                throw new IOException(host + ":" + port + " refused " + command + ": " + status);
+            }
+            return reply.subList(0, reply.size() - 1);
+        }
+
+        private List<String> exchange(String command) throws IOException {
+            if (socket == null) {
+                connect();
+            }
+            try {
+                out.write(command);
+                out.write('\n');
+                out.flush();
+                List<String> lines = new ArrayList<>();
+                while (true) {
+                    String line = in.readLine();
+                    if (line == null) {
+                        throw new EOFException(host + ":" + port + " closed the connection");
+                    }
+                    lines.add(line);
+                    if (line.startsWith("OK") || line.startsWith("ERR")) {
+                        return lines;
+                    }
+                }
+            } catch (IOException e) {
+                // A reply cut short (read timeout) would be read as the next call's reply: never reuse the connection
+                disconnect();
+                throw e;
+            }
+        }
+
+        private void connect() throws IOException {
+            Socket opened = new Socket();
+            try {
+                opened.connect(new InetSocketAddress(host, port), SOCKET_TIMEOUT_MILLIS);
+                opened.setTcpNoDelay(true);
+                opened.setSoTimeout(SOCKET_TIMEOUT_MILLIS);
+                socket = opened;
+                in = new BufferedReader(new InputStreamReader(opened.getInputStream(), StandardCharsets.UTF_8));
+                out = new BufferedWriter(new OutputStreamWriter(opened.getOutputStream(), StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                opened.close();
+                throw e;
+            }
+            login();
+        }
+
+        private void login() throws IOException {
+            List<String> reply = exchange("LOGIN " + user + " " + password);
+            String status = reply.get(reply.size() - 1);
+            if (!status.startsWith("OK")) {
+                disconnect();
+                throw new IOException(host + ":" + port + " refused the login: " + status);
+            }
+        }
+
+        private void disconnect() {
+            if (socket != null) {
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    // Already broken
+                }
+                socket = null;
+                in = null;
+                out = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package bloodbank;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// =================================================== Federation Harness ===================================================
+// Measures federated compatibility queries against 1, 2, 4, ... sites and reports latency per site count.
+// Usage: java FederationHarness [maxSites] [queries] [unitsPerSite] [local|socket] [stragglerDelayMillis]
+// local: every site is a BloodBank in this JVM. socket: every site is a blood bank server on a free loopback port.
+// With a straggler delay the last site answers that much later on every query, to show timeouts and partial results
+// (-Dbloodbank.siteTimeoutMillis sets the per-site timeout, default 500).
+public class FederationHarness {
+    private static final String[] TYPES = { "A+", "B+", "AB+", "O+", "A-", "B-", "AB-", "O-" };
+    private static final int UNITS_PER_QUERY = 20;
+    private static final String USER = "federation";
+    private static final String PASSWORD = "harness";
+
+    public static void main(String[] args) throws Exception {
+        int maxSites = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int queries = args.length > 1 ? Integer.parseInt(args[1]) : 2_000;
+        int unitsPerSite = args.length > 2 ? Integer.parseInt(args[2]) : 20_000;
+        boolean sockets = args.length > 3 && args[3].equals("socket");
+        long stragglerDelay = args.length > 4 ? Long.parseLong(args[4]) : 0;
+        long timeoutMillis = Long.getLong("bloodbank.siteTimeoutMillis", FederatedInventory.DEFAULT_TIMEOUT_MILLIS);
+
+        List<BloodBank> banks = new ArrayList<>();
+        List<BloodBankServer> servers = new ArrayList<>();
+        for (int s = 0; s < maxSites; s++) {
+            BloodBank bank = new BloodBank();
+            bank.addValidatedDonations(inventory(s, unitsPerSite));
+            banks.add(bank);
+            if (sockets) {
+                BloodBankServer server = new BloodBankServer(bank, 0);
+                server.start();
+                servers.add(server);
+            }
+        }
+        if (sockets) {
+            BloodBankManagementSystem.registerAccount(USER, PASSWORD);
+        }
+
+        System.out.printf("Sites: up to %d (%s), %d units per site, %d queries per run, timeout %d ms, straggler delay %d ms%n",
+                maxSites, sockets ? "socket" : "local", unitsPerSite, queries, timeoutMillis, stragglerDelay);
+        System.out.println("Sites   p50 (ms)   p90 (ms)   p99 (ms)   max (ms)   partial   units/query");
+        for (int sites = 1; sites <= maxSites; sites = sites == maxSites ? sites + 1 : Math.min(sites * 2, maxSites)) {
+            try (FederatedInventory inventory = new FederatedInventory()) {
+                for (int s = 0; s < sites; s++) {
+                    FederatedInventory.Node node = sockets
+                            ? new FederatedInventory.RemoteNode("127.0.0.1", servers.get(s).port(), USER, PASSWORD)
+                            : new FederatedInventory.LocalNode(banks.get(s));
+                    if (stragglerDelay > 0 && s == sites - 1 && sites > 1) {
+                        node = new DelayedNode(node, stragglerDelay);
+                    }
+                    inventory.addSite("Site " + s, 5.0 * (s + 1), timeoutMillis, node);
+                }
+                run(inventory, Math.max(1, queries / 10), null);
+                LatencyHistogram latency = new LatencyHistogram();
+                long[] totals = new long[2];
+                run(inventory, queries, latency, totals);
+                LatencyHistogram.Snapshot snapshot = latency.snapshot();
+                System.out.printf("%5d %10.2f %10.2f %10.2f %10.2f %9d %13.1f%n", sites,
+                        snapshot.percentile(0.50) / 1e6, snapshot.percentile(0.90) / 1e6, snapshot.percentile(0.99) / 1e6,
+                        snapshot.max() / 1e6, totals[0], (double) totals[1] / queries);
+            }
+        }
+        for (BloodBankServer server : servers) {
+            server.close();
+        }
+        for (BloodBank bank : banks) {
+            bank.close();
+        }
+    }
+
+    // Warm-up run: nothing recorded
+    private static void run(FederatedInventory inventory, int queries, LatencyHistogram latency) {
+        run(inventory, queries, latency, new long[2]);
+    }
+
+    // totals[0]: partial results, totals[1]: units returned
+    private static void run(FederatedInventory inventory, int queries, LatencyHistogram latency, long[] totals) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < queries; i++) {
+            BloodType recipient = BloodType.parse(TYPES[random.nextInt(TYPES.length)]);
+            long start = System.nanoTime();
+            FederatedInventory.Search search = inventory.findCompatible(recipient, null, UNITS_PER_QUERY);
+            if (latency != null) {
+                latency.record(System.nanoTime() - start);
+            }
+            totals[0] += search.isPartial() ? 1 : 0;
+            totals[1] += search.matches().size();
+        }
+    }
+
+    // Unexpired whole blood and platelets collected over the last few days, one donor per unit
+    private static List<BloodDonation> inventory(int site, int units) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long now = System.currentTimeMillis();
+        List<BloodDonation> donations = new ArrayList<>(units);
+        for (int i = 0; i < units; i++) {
+            String type = TYPES[random.nextInt(TYPES.length)];
+            BloodComponent component = random.nextInt(4) == 0 ? BloodComponent.PLATELETS : BloodComponent.WHOLE_BLOOD;
+            long collectedAt = now - random.nextLong(TimeUnit.DAYS.toMillis(4));
+            String donor = "Donor " + site + "-" + i;
+            donations.add(random.nextInt(10) == 0
+                    ? new EmergencyDonation(donor, type, 450, true, component, collectedAt)
+                    : new RegularDonation(donor, type, 450, 18 + random.nextInt(40), component, collectedAt));
+        }
+        return donations;
+    }
+
+    // A site that answers late, to exercise the per-site timeout
+    private static class DelayedNode implements FederatedInventory.Node {
+        private final FederatedInventory.Node node;
+        private final long delayMillis;
+
+        DelayedNode(FederatedInventory.Node node, long delayMillis) {
+            this.node = node;
+            this.delayMillis = delayMillis;
+        }
+
+        @Override
+        public List<BloodDonation> findCompatible(BloodType recipientType, DonationKind kind, int limit) throws IOException {
+            pause();
+            return node.findCompatible(recipientType, kind, limit);
+        }
+
+        @Override
+        public FederatedInventory.Stock stock() throws IOException {
+            pause();
+            return node.stock();
+        }
+
+        @Override
+        public void close() throws IOException {
+            node.close();
+        }
+
+        private void pause() throws IOException {
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted");
+            }
+        }
+    }
+}
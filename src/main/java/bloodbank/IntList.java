@@ -0,0 +1,37 @@
+package bloodbank;
+
+import java.nio.IntBuffer;
+import java.util.*;
+
+// =================================================== Int List ===================================================
+// Growable int array, optionally continuing a read-only mapped prefix
+class IntList {
+    private final IntBuffer prefix;
+    private final int prefixSize;
+    private int[] values = new int[8];
+    private int size;
+
+    public IntList() {
+        this(null);
+    }
+
+    public IntList(IntBuffer prefix) {
+        this.prefix = prefix;
+        this.prefixSize = prefix == null ? 0 : prefix.limit();
+    }
+
+    public void add(int value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size++] = value;
+    }
+
+    public int get(int index) {
+        return index < prefixSize ? prefix.get(index) : values[index - prefixSize];
+    }
+
+    public int size() {
+        return prefixSize + size;
+    }
+}
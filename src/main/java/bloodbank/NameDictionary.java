@@ -0,0 +1,76 @@
+package bloodbank;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+// =================================================== Name Dictionary ===================================================
+// Each distinct donor name is stored once and referenced by an int id. Names from a snapshot are decoded
+// on first use; they are not added to the lookup map, so a name repeated after loading gets a second id
+// until the next snapshot deduplicates it again.
+// Thread-safe: lookups of known names are lock-free, only a new name takes the dictionary lock.
+class NameDictionary {
+    private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+    private final ByteBuffer mappedBlob;
+    private final IntBuffer mappedOffsets;
+    private final int mappedCount;
+    private volatile String[] names;
+    private int size;
+
+    public NameDictionary() {
+        this(null, null, 0);
+    }
+
+    // mappedOffsets holds mappedCount + 1 byte offsets into mappedBlob
+    public NameDictionary(ByteBuffer mappedBlob, IntBuffer mappedOffsets, int mappedCount) {
+        this.mappedBlob = mappedBlob;
+        this.mappedOffsets = mappedOffsets;
+        this.mappedCount = mappedCount;
+        this.names = new String[Math.max(16, mappedCount)];
+        this.size = mappedCount;
+    }
+
+    public int intern(String name) {
+        Integer id = ids.get(name);
+        if (id != null) {
+            return id;
+        }
+        synchronized (this) {
+            id = ids.get(name);
+            if (id != null) {
+                return id;
+            }
+            String[] current = names;
+            if (size == current.length) {
+                current = Arrays.copyOf(current, size * 2);
+            }
+            current[size] = name;
+            names = current;
+            ids.put(name, size);
+            return size++;
+        }
+    }
+
+    // Ids are handed out through the store's partition locks, so the slot is visible to any reader holding an id.
+    // Decoding a mapped name twice under a race is harmless: both threads store equal strings.
+    public String get(int id) {
+        String[] current = names;
+        String name = current[id];
+        if (name == null && id < mappedCount) {
+            int start = mappedOffsets.get(id);
+            byte[] bytes = new byte[mappedOffsets.get(id + 1) - start];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = mappedBlob.get(start + i);
+            }
+            name = new String(bytes, StandardCharsets.UTF_8);
+            current[id] = name;
+        }
+        return name;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+}
@@ -0,0 +1,29 @@
+package bloodbank;
+
+// =================================================== Regular Donation Class ===================================================
+class RegularDonation extends BloodDonation {
+    private int age;
+
+    public RegularDonation(String donorName, String bloodType, int donationAmount, int age) {
+        super(donorName, bloodType, donationAmount);
+        this.age = age;
+    }
+
+    public RegularDonation(String donorName, String bloodType, int donationAmount, int age, BloodComponent component, long collectedAt) {
+        super(donorName, bloodType, donationAmount, component, collectedAt);
+        this.age = age;
+    }
+
+    @Override
+    public boolean isEligibleToDonate() {
+        return age >= 18 && age <= 65 && hasValidAmount();
+    }
+
+    public int getAge() { return age; }
+
+    public void displayEligibilityMessage() {
+        System.out.println(isEligibleToDonate() 
+            ? "\t\t\t\tDonor is eligible for donation" 
+            : TextColor.RED + "\t\t\t\tDonor is not eligible for donation" + TextColor.RESET);
+    }
+}
@@ -0,0 +1,85 @@
+package bloodbank;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// =================================================== Stock Levels ===================================================
+// Running totals of the available stock (units and ml) per blood type and donation kind, kept by DonationStore as
+// rows become available or leave the available stock (expiry, reservation, issue). Reading a level is O(1) and
+// takes no lock; the counters are LongAdders, so the partitions of different blood types updating at the same time
+// never contend on a shared cache line.
+//
+// Each blood type can have a low-stock threshold in ml (over both kinds). The store checks it on every change of
+// that type's stock and calls the listener only when the level crosses it, downwards (low) or back up (restocked);
+// nothing ever scans the inventory for it.
+class StockLevels {
+    // Called under the blood type's partition lock: must not block or call back into the store (hand off instead)
+    interface Listener {
+        void crossed(BloodType type, long availableMl, long thresholdMl, boolean low);
+    }
+
+    private static final int KINDS = DonationKind.values().length;
+
+    private final LongAdder[] units = new LongAdder[BloodType.values().length * KINDS];
+    private final LongAdder[] ml = new LongAdder[units.length];
+    // Threshold in ml per blood type; 0 = no alert
+    private final AtomicLongArray thresholds = new AtomicLongArray(BloodType.values().length);
+    private volatile Listener listener;
+
+    StockLevels() {
+        for (int i = 0; i < units.length; i++) {
+            units[i] = new LongAdder();
+            ml[i] = new LongAdder();
+        }
+    }
+
+    public long units(BloodType type, DonationKind kind) {
+        return units[type.ordinal() * KINDS + kind.ordinal()].sum();
+    }
+
+    public long ml(BloodType type, DonationKind kind) {
+        return ml[type.ordinal() * KINDS + kind.ordinal()].sum();
+    }
+
+    public long units(BloodType type) {
+        long total = 0;
+        for (int k = 0; k < KINDS; k++) {
+            total += units[type.ordinal() * KINDS + k].sum();
+        }
+        return total;
+    }
+
+    public long ml(BloodType type) {
+        long total = 0;
+        for (int k = 0; k < KINDS; k++) {
+            total += ml[type.ordinal() * KINDS + k].sum();
+        }
+        return total;
+    }
+
+    public long threshold(BloodType type) {
+        return thresholds.get(type.ordinal());
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    // ======================================== Updates (DonationStore, under the partition lock) ========================================
+    void add(BloodType type, int kind, int unitDelta, long mlDelta) {
+        int index = type.ordinal() * KINDS + kind;
+        units[index].add(unitDelta);
+        ml[index].add(mlDelta);
+    }
+
+    void setThreshold(BloodType type, long thresholdMl) {
+        thresholds.set(type.ordinal(), thresholdMl);
+    }
+
+    void fire(BloodType type, long availableMl, long thresholdMl, boolean low) {
+        Listener current = listener;
+        if (current != null) {
+            current.crossed(type, availableMl, thresholdMl, low);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package bloodbank;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+// =================================================== Command Session Tests ===================================================
+// Input validation of the server protocol: malformed commands get an ERR reply and change nothing, and the
+// session stays open after every one of them.
+class CommandSessionTest {
+    private BloodBank bloodBank;
+    private CommandSession session;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        bloodBank = new BloodBank();
+        session = new CommandSession(bloodBank, true, true);
+    }
+
+    @Test
+    void requiresALoginBeforeAnyBankCommand() throws IOException {
+        assertEquals("ERR login required", run("STOCK"));
+        assertEquals("ERR login required", run("ADD REGULAR A+ 450 30 Ann Lee"));
+        assertEquals("ERR usage: LOGIN <user> <password>", run("LOGIN onlyuser"));
+        assertEquals("ERR invalid or expired session", run("RESUME not-a-token"));
+        String user = "session-" + System.nanoTime();
+        assertEquals("OK registered", run("REGISTER " + user + " secret"));
+        assertEquals("ERR invalid credentials", run("LOGIN " + user + " wrong"));
+        assertTrue(run("LOGIN " + user + " secret").startsWith("OK logged in "));
+        assertTrue(run("STOCK").endsWith("OK " + BloodType.values().length));
+        assertEquals("OK logged out", run("LOGOUT"));
+        assertEquals("ERR login required", run("STOCK"));
+    }
+
+    @Test
+    void rejectsMalformedDonations() throws IOException {
+        login();
+        assertEquals("ERR usage: ADD <REGULAR|EMERGENCY> <type> <ml> <age|urgent> <donor name>", run("ADD REGULAR A+ 450 30"));
+        assertEquals("ERR invalid donation kind or blood type", run("ADD REGULAR C+ 450 30 Ann Lee"));
+        assertEquals("ERR invalid donation kind or blood type", run("ADD WEEKLY A+ 450 30 Ann Lee"));
+        assertEquals("ERR amount must be numeric", run("ADD REGULAR A+ lots 30 Ann Lee"));
+        assertEquals("ERR age must be numeric", run("ADD REGULAR A+ 450 old Ann Lee"));
+        assertEquals("ERR urgent must be true or false", run("ADD EMERGENCY A+ 450 yes Ann Lee"));
+        assertEquals("ERR donation not eligible", run("ADD REGULAR A+ -450 30 Ann Lee"));
+        assertEquals("ERR donation not eligible", run("ADD REGULAR A+ 0 30 Ann Lee"));
+        assertEquals(0, bloodBank.getStockLevels().ml(BloodType.A_POS));
+        assertEquals("OK donation added", run("ADD REGULAR A+ 450 30 Ann Lee"));
+        assertEquals(450, bloodBank.getStockLevels().ml(BloodType.A_POS));
+    }
+
+    @Test
+    void rejectsMalformedArguments() throws IOException {
+        login();
+        assertEquals("ERR empty command", run("   "));
+        assertEquals("ERR unknown command FROB", run("frob 1 2"));
+        assertEquals("ERR usage: RESERVE <type> <ml> [EMERGENCY] [seconds]", run("RESERVE A+ -1"));
+        assertEquals("ERR usage: RESERVE <type> <ml> [EMERGENCY] [seconds]", run("RESERVE A+ 450 EMERGENCY 0"));
+        assertEquals("ERR usage: RESERVE <type> <ml> [EMERGENCY] [seconds]", run("RESERVE Q 450"));
+        assertEquals("ERR usage: COMMIT <id>", run("COMMIT abc"));
+        assertEquals("ERR reservation unknown, timed out or expired", run("COMMIT 12345"));
+        assertEquals("ERR usage: RELEASE <id>", run("RELEASE"));
+        assertEquals("ERR usage: EVENTS <sequence> [max]", run("EVENTS -5"));
+        assertEquals("ERR usage: EVENTS <sequence> [max]", run("EVENTS 0 zero"));
+        assertEquals("ERR usage: METRICS [ON|OFF|RESET]", run("METRICS LOUD"));
+        assertEquals("ERR usage: LIST <REGULAR|EMERGENCY>", run("LIST WEEKLY"));
+        // Still open after all of them
+        assertEquals(12, session.errorCount());
+        assertFalse(session.execute("QUIT", new StringWriter()));
+    }
+
+    @Test
+    void acceptsOnlyValidServerPorts() {
+        assertEquals(5050, BloodBankManagementSystem.parsePort("5050"));
+        assertEquals(0, BloodBankManagementSystem.parsePort(" 0 "));
+        assertEquals(65535, BloodBankManagementSystem.parsePort("65535"));
+        assertEquals(-1, BloodBankManagementSystem.parsePort("65536"));
+        assertEquals(-1, BloodBankManagementSystem.parsePort("-1"));
+        assertEquals(-1, BloodBankManagementSystem.parsePort("http"));
+    }
+
+    private void login() throws IOException {
+        String user = "session-" + System.nanoTime();
+        run("REGISTER " + user + " secret");
+        assertTrue(run("LOGIN " + user + " secret").startsWith("OK logged in "));
+    }
+
+    // The reply without its final newline
+    private String run(String line) throws IOException {
+        StringWriter out = new StringWriter();
+        assertTrue(session.execute(line, out));
+        String reply = out.toString();
+        return reply.substring(0, reply.length() - 1);
+    }
+}
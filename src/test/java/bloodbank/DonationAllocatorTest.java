@@ -0,0 +1,93 @@
+package bloodbank;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+// =================================================== Donation Allocator Tests ===================================================
+// Reservations end exactly once: committed, released or timed out, and every way but a successful commit puts
+// the units back in stock.
+class DonationAllocatorTest {
+    private static final long NOW = System.currentTimeMillis();
+
+    private DonationStore store;
+    private DonationAllocator allocator;
+
+    @BeforeEach
+    void setUp() {
+        store = new DonationStore();
+        for (int i = 0; i < 4; i++) {
+            store.add(BloodType.A_POS, DonationKind.REGULAR, "a" + i, 450, 30, BloodComponent.WHOLE_BLOOD, NOW - (i + 1) * 3_600_000L);
+        }
+        store.add(BloodType.O_NEG, DonationKind.REGULAR, "o", 450, 30, BloodComponent.WHOLE_BLOOD, NOW - 3_600_000L);
+        allocator = new DonationAllocator(store);
+    }
+
+    @Test
+    void reservesOwnTypeFirstAndSoonestExpiryFirst() {
+        DonationAllocator.Reservation reservation = allocator.reserve(BloodType.A_POS, 900, false, 60_000);
+        assertNotNull(reservation);
+        List<String> donors = new ArrayList<>();
+        for (BloodDonation unit : allocator.units(reservation)) {
+            donors.add(unit.getDonorName());
+        }
+        assertEquals("[a3, a2]", donors.toString());
+        assertEquals(2, store.availableCount(BloodType.A_POS, DonationKind.REGULAR));
+        assertEquals(1, store.availableCount(BloodType.O_NEG, DonationKind.REGULAR));
+    }
+
+    @Test
+    void reservesNothingWhenStockIsShort() {
+        assertNull(allocator.reserve(BloodType.A_POS, 450 * 6, false, 60_000));
+        assertEquals(4, store.availableCount(BloodType.A_POS, DonationKind.REGULAR));
+        assertEquals(1, store.availableCount(BloodType.O_NEG, DonationKind.REGULAR));
+        assertEquals(0, allocator.pendingCount());
+    }
+
+    @Test
+    void commitsOnlyOnce() {
+        DonationAllocator.Reservation reservation = allocator.reserve(BloodType.A_POS, 900, false, 60_000);
+        List<Integer> journaled = new ArrayList<>();
+        assertTrue(allocator.commit(reservation.getId(), (type, sequence) -> journaled.add(sequence)));
+        assertFalse(allocator.commit(reservation.getId(), (type, sequence) -> journaled.add(sequence)));
+        assertFalse(allocator.release(reservation.getId()));
+        assertEquals(2, journaled.size());
+        assertEquals(0, store.reservedCount(BloodType.A_POS, DonationKind.REGULAR));
+        assertEquals(2, store.availableCount(BloodType.A_POS, DonationKind.REGULAR));
+    }
+
+    @Test
+    void refusesACommitAfterTheTimeoutAndReturnsTheUnits() throws InterruptedException {
+        DonationAllocator.Reservation reservation = allocator.reserve(BloodType.A_POS, 900, false, 1);
+        Thread.sleep(20);
+        assertFalse(allocator.commit(reservation.getId(), null));
+        assertFalse(reservation.isPending());
+        assertEquals(4, store.availableCount(BloodType.A_POS, DonationKind.REGULAR));
+        assertEquals(0, store.reservedCount(BloodType.A_POS, DonationKind.REGULAR));
+        assertEquals(0, allocator.pendingCount());
+    }
+
+    @Test
+    void returnsTheUnitsWhenTheIssueCannotBeJournaled() {
+        DonationAllocator.Reservation reservation = allocator.reserve(BloodType.A_POS, 450 * 5, false, 60_000);
+        assertEquals(5, reservation.getUnitCount());
+        int[] calls = new int[1];
+        assertThrows(IllegalStateException.class, () -> allocator.commit(reservation.getId(), (type, sequence) -> {
+            if (++calls[0] == 5) {
+                throw new IllegalStateException("journal closed");
+            }
+        }));
+        assertEquals(4, store.availableCount(BloodType.A_POS, DonationKind.REGULAR));
+        assertEquals(1, store.availableCount(BloodType.O_NEG, DonationKind.REGULAR));
+        assertEquals(450 * 5, store.stock().ml(BloodType.A_POS) + store.stock().ml(BloodType.O_NEG));
+        assertFalse(allocator.commit(reservation.getId(), null));
+    }
+}
@@ -0,0 +1,134 @@
+package bloodbank;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import org.junit.jupiter.api.Test;
+
+// =================================================== Donation Events Tests ===================================================
+// Concurrent publishers never tear or reorder events, a lapped DROP_OLDEST consumer counts what it missed, and a
+// BACKPRESSURE consumer that falls a ring behind has new events refused until it catches up.
+class DonationEventsTest {
+    private static final int PUBLISHERS = 8;
+
+    @Test
+    void deliversEveryEventWholeAndInOrderFromConcurrentPublishers() throws InterruptedException {
+        DonationEvents events = new DonationEvents(1 << 16);
+        Thread[] publishers = new Thread[PUBLISHERS];
+        for (int t = 0; t < PUBLISHERS; t++) {
+            publishers[t] = new Thread(() -> {
+                for (int i = 0; i < 5_000; i++) {
+                    publish(events, i);
+                }
+            });
+            publishers[t].start();
+        }
+        for (Thread publisher : publishers) {
+            publisher.join();
+        }
+
+        AtomicLong read = new AtomicLong();
+        AtomicLong broken = new AtomicLong();
+        AtomicLong previous = new AtomicLong(-1);
+        long next = events.read(0, Integer.MAX_VALUE, new DonationEvents.DonationEvent(), (event, endOfBatch) -> {
+            read.incrementAndGet();
+            if (event.amount() != event.extra() % 470 + 1 || event.sequence() != previous.get() + 1) {
+                broken.incrementAndGet();
+            }
+            previous.set(event.sequence());
+        });
+        assertEquals(PUBLISHERS * 5_000, next);
+        assertEquals(PUBLISHERS * 5_000, read.get());
+        assertEquals(0, broken.get());
+    }
+
+    @Test
+    void lappedDropOldestConsumerSkipsAheadAndCountsWhatItMissed() throws InterruptedException {
+        DonationEvents events = new DonationEvents(16);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicLong delivered = new AtomicLong();
+        DonationEvents.Consumer consumer = events.subscribe("slow", 0, 1, DonationEvents.Policy.DROP_OLDEST, (event, endOfBatch) -> {
+            started.countDown();
+            await(release);
+            delivered.incrementAndGet();
+        });
+        publish(events, 0);
+        // Held inside the handler of event 0 while the ring wraps around it several times
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        for (int i = 1; i < 100; i++) {
+            assertTrue(publish(events, i) >= 0);
+        }
+        release.countDown();
+        waitFor(() -> consumer.sequence() == 100);
+        consumer.close();
+        assertEquals(100, delivered.get() + consumer.missed());
+        assertTrue(consumer.missed() > 0);
+        assertEquals(0, events.refusedAtIntake());
+    }
+
+    @Test
+    void backpressureConsumerHasEventsRefusedOnceARingBehind() throws InterruptedException {
+        DonationEvents events = new DonationEvents(16);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicLong previous = new AtomicLong(-1);
+        AtomicLong gaps = new AtomicLong();
+        DonationEvents.Consumer consumer = events.subscribe("gated", 0, 4, DonationEvents.Policy.BACKPRESSURE, (event, endOfBatch) -> {
+            await(release);
+            if (event.sequence() != previous.get() + 1) {
+                gaps.incrementAndGet();
+            }
+            previous.set(event.sequence());
+        });
+        int accepted = 0;
+        for (int i = 0; i < 100; i++) {
+            if (publish(events, i) >= 0) {
+                accepted++;
+            }
+        }
+        // The consumer holds at most one batch, so at most a ring and a batch are accepted before refusals start
+        assertTrue(accepted >= 16 && accepted <= 20, "accepted " + accepted);
+        assertEquals(100 - accepted, events.refusedAtIntake());
+
+        release.countDown();
+        long end = events.nextSequence();
+        waitFor(() -> consumer.sequence() == end);
+        assertEquals(0, consumer.missed());
+        assertEquals(0, gaps.get());
+        assertTrue(publish(events, 100) >= 0);
+
+        // Without a gating consumer nothing is refused
+        consumer.close();
+        long refused = events.refusedAtIntake();
+        for (int i = 0; i < 100; i++) {
+            assertTrue(publish(events, i) >= 0);
+        }
+        assertEquals(refused, events.refusedAtIntake());
+    }
+
+    // amount is derived from extra, so a reader can tell an event assembled from two different writes
+    private static long publish(DonationEvents events, int i) {
+        return events.publish(null, BloodType.A_POS, DonationKind.REGULAR, "donor", i % 470 + 1, i, BloodComponent.WHOLE_BLOOD,
+                1_700_000_000_000L);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "timed out");
+            Thread.sleep(1);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package bloodbank;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// =================================================== Donation Journal Tests ===================================================
+// Replay after a crash: a torn or corrupt tail is dropped, everything before it is replayed, and appends continue
+// from the last intact record.
+class DonationJournalTest {
+    private static final long COLLECTED_AT = 1_700_000_040_000L;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void replaysEveryRecordOfACleanJournal() throws IOException {
+        Path file = dir.resolve("journal");
+        writeJournal(file, 3);
+
+        Recorder replayed = replay(file);
+        assertEquals(3, replayed.donations.size());
+        assertEquals("A+ REGULAR donor0 450 30 WHOLE_BLOOD " + COLLECTED_AT + " 0", replayed.donations.get(0));
+        assertEquals(1, replayed.accounts.size());
+        assertEquals("O- 1", replayed.issues.get(0));
+    }
+
+    @Test
+    void dropsATornTailAndAppendsAfterTheLastIntactRecord() throws IOException {
+        Path file = dir.resolve("journal");
+        writeJournal(file, 3);
+        long intact = Files.size(file);
+        // A record cut off by a crash: its length and type made it to disk, half of its payload did not
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.wrap(new byte[] { 0, 0, 0, 40, 4, 1, 2, 3, 4, 5 }));
+        }
+
+        DonationJournal journal = new DonationJournal(file, 0, Long.MAX_VALUE);
+        Recorder replayed = new Recorder();
+        journal.open(replayed, 0);
+        assertEquals(3, replayed.donations.size());
+        assertEquals(intact, Files.size(file));
+        journal.appendDonation(BloodType.B_POS, DonationKind.EMERGENCY, "late", 300, 1, BloodComponent.PLASMA, COLLECTED_AT, 7);
+        journal.close();
+
+        Recorder again = replay(file);
+        assertEquals(4, again.donations.size());
+        assertEquals("B+ EMERGENCY late 300 1 PLASMA " + COLLECTED_AT + " 7", again.donations.get(3));
+    }
+
+    @Test
+    void stopsAtARecordWhoseChecksumDoesNotMatch() throws IOException {
+        Path file = dir.resolve("journal");
+        writeJournal(file, 3);
+        // The last record is the issue: flip a byte of its payload, in front of its 4-byte crc
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long position = channel.size() - 5;
+            ByteBuffer one = ByteBuffer.allocate(1);
+            channel.read(one, position);
+            one.put(0, (byte) (one.get(0) ^ 0x55));
+            one.rewind();
+            channel.write(one, position);
+        }
+
+        Recorder replayed = replay(file);
+        assertEquals(3, replayed.donations.size());
+        assertEquals(1, replayed.accounts.size());
+        assertEquals(0, replayed.issues.size());
+    }
+
+    @Test
+    void skipsAJournalOlderThanTheSnapshot() throws IOException {
+        Path file = dir.resolve("journal");
+        writeJournal(file, 2);
+
+        DonationJournal journal = new DonationJournal(file, 0, Long.MAX_VALUE);
+        Recorder replayed = new Recorder();
+        journal.open(replayed, 1);
+        journal.close();
+        assertEquals(0, replayed.donations.size());
+        assertEquals(0, replay(file).donations.size());
+    }
+
+    // count donations, one account, then one issue (the last record)
+    private static void writeJournal(Path file, int count) throws IOException {
+        DonationJournal journal = new DonationJournal(file, 0, Long.MAX_VALUE);
+        journal.open(new Recorder(), 0);
+        for (int i = 0; i < count; i++) {
+            journal.appendDonation(BloodType.A_POS, DonationKind.REGULAR, "donor" + i, 450, 30, BloodComponent.WHOLE_BLOOD, COLLECTED_AT, i);
+        }
+        journal.appendAccount("donor0", "credential");
+        journal.appendIssue(BloodType.O_NEG, 1);
+        journal.close();
+    }
+
+    private static Recorder replay(Path file) throws IOException {
+        DonationJournal journal = new DonationJournal(file, 0, Long.MAX_VALUE);
+        Recorder replayed = new Recorder();
+        journal.open(replayed, 0);
+        journal.close();
+        return replayed;
+    }
+
+    private static class Recorder implements DonationJournal.Listener {
+        final List<String> donations = new ArrayList<>();
+        final List<String> accounts = new ArrayList<>();
+        final List<String> issues = new ArrayList<>();
+
+        @Override
+        public void donation(BloodType type, DonationKind kind, String donorName, int amount, int extra, BloodComponent component,
+                long collectedAt, int sequence) {
+            donations.add(type.label() + " " + kind + " " + donorName + " " + amount + " " + extra + " " + component + " " + collectedAt
+                    + " " + sequence);
+        }
+
+        @Override
+        public void account(String username, String credential) {
+            accounts.add(username + " " + credential);
+        }
+
+        @Override
+        public void issued(BloodType type, int sequence) {
+            issues.add(type.label() + " " + sequence);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package bloodbank;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// =================================================== Script Mode Tests ===================================================
+// A script with bad donations in it: each bad line gets its own ERR reply, the good ones are still added, and the
+// summary counts the errors.
+class ScriptModeTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void rejectsBadAmountsAndUrgencyLineByLine() throws IOException {
+        Path script = dir.resolve("day.txt");
+        Files.write(script, Arrays.asList(
+                "# intake of the day",
+                "ADD REGULAR A+ 450 30 Ann Lee",
+                "ADD REGULAR A+ -450 30 Negative Amount",
+                "ADD REGULAR A+ 0 30 Zero Amount",
+                "ADD REGULAR A+ 471 30 Over Limit",
+                "ADD EMERGENCY O- 0 true Zero Urgent",
+                "",
+                "ADD EMERGENCY O- 300 maybe Bad Urgency",
+                "ADD EMERGENCY O- 300 TRUE Bob Ray",
+                "STOCK"), StandardCharsets.UTF_8);
+        BloodBank bloodBank = new BloodBank();
+
+        ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+        ByteArrayOutputStream stderr = new ByteArrayOutputStream();
+        PrintStream out = System.out;
+        PrintStream err = System.err;
+        try {
+            System.setOut(new PrintStream(stdout, true, "UTF-8"));
+            System.setErr(new PrintStream(stderr, true, "UTF-8"));
+            BloodBankManagementSystem.runScript(bloodBank, script.toString());
+        } finally {
+            System.setOut(out);
+            System.setErr(err);
+        }
+
+        List<String> replies = Arrays.asList(new String(stdout.toByteArray(), StandardCharsets.UTF_8).split("\n"));
+        assertEquals(Arrays.asList(
+                "OK donation added",
+                "ERR donation not eligible",
+                "ERR donation not eligible",
+                "ERR donation not eligible",
+                "ERR donation not eligible",
+                "ERR urgent must be true or false",
+                "OK donation added"), replies.subList(0, 7));
+        assertTrue(replies.contains("STOCK A+ 1 450 0 0"), replies.toString());
+        assertTrue(replies.contains("STOCK O- 0 0 1 300"), replies.toString());
+        assertTrue(new String(stderr.toByteArray(), StandardCharsets.UTF_8).startsWith("Script: 8 commands, 5 errors"));
+
+        BankMetrics metrics = bloodBank.getMetrics();
+        assertEquals(3, metrics.rejections(BankMetrics.Rejection.INVALID_AMOUNT));
+        assertEquals(1, metrics.rejections(BankMetrics.Rejection.OVER_AMOUNT_LIMIT));
+    }
+}